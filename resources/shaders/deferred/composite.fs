@@ -0,0 +1,36 @@
+#version 330
+
+in vec2 outTexCoord;
+
+out vec4 fragColor;
+
+struct Fog
+{
+    vec3 color;
+    float density;
+};
+
+uniform sampler2D accumulationSampler;
+uniform sampler2D depthSampler;
+uniform mat4 invProjectionMatrix;
+uniform vec3 fogLightColor;
+
+uniform Fog fog;
+
+void main()
+{
+    float depth = texture(depthSampler, outTexCoord).r;
+    if (depth >= 1.0) discard;
+
+    vec3 color = texture(accumulationSampler, outTexCoord).rgb;
+
+#ifdef FOG
+    vec4 position = invProjectionMatrix * vec4(vec3(outTexCoord, depth) * 2.0 - 1.0, 1.0);
+    float distance = length(position.xyz / position.w);
+    float fogFactor = clamp(1.0 / exp((distance * fog.density) * (distance * fog.density)), 0.0, 1.0);
+    color = mix(fog.color * fogLightColor, color, fogFactor);
+#endif
+
+    fragColor = vec4(color, 1.0);
+    gl_FragDepth = depth;
+}
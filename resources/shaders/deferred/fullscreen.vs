@@ -0,0 +1,11 @@
+#version 330
+
+out vec2 outTexCoord;
+
+void main()
+{
+    // a single triangle covering the screen, generated without vertex buffers
+    vec2 position = vec2((gl_VertexID << 1) & 2, gl_VertexID & 2);
+    outTexCoord = position;
+    gl_Position = vec4(position * 2.0 - 1.0, 0.0, 1.0);
+}
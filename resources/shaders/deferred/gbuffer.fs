@@ -0,0 +1,99 @@
+#version 330
+
+in vec3 outViewPosition;
+in vec4 outWorldPosition;
+in vec3 outNormal;
+in vec3 outTangent;
+in vec3 outBitangent;
+in vec2 outTexCoord;
+
+layout (location=0) out vec4 albedo;
+layout (location=1) out vec2 packedNormal;
+layout (location=2) out vec4 materialParams;
+layout (location=3) out vec4 accumulation;
+
+struct Material
+{
+    vec4 ambient;
+    vec4 diffuse;
+    vec4 specular;
+    float glossiness;
+};
+struct AmbientLight
+{
+    float factor;
+    vec3 color;
+};
+
+#ifdef TEXTURE_ARRAY
+uniform sampler2DArray texSampler;
+uniform float texLayer;
+#else
+uniform sampler2D texSampler;
+#endif
+#ifdef NORMAL_MAP
+#ifdef TEXTURE_ARRAY
+uniform sampler2DArray normalTexSampler;
+uniform float normalTexLayer;
+#else
+uniform sampler2D normalTexSampler;
+#endif
+#endif
+uniform int billboard;
+
+uniform Material material;
+uniform AmbientLight ambientLight;
+
+// octahedral encoding keeps a unit normal in two channels
+vec2 encodeNormal(vec3 n)
+{
+    n /= abs(n.x) + abs(n.y) + abs(n.z);
+    vec2 e = n.xy;
+    if (n.z < 0.0) e = (1.0 - abs(n.yx)) * vec2(n.x >= 0.0 ? 1.0 : -1.0, n.y >= 0.0 ? 1.0 : -1.0);
+    return e;
+}
+
+// packed levels sample a layer of a texture array, chosen per draw
+vec4 sampleTexture(vec2 texCoords)
+{
+#ifdef TEXTURE_ARRAY
+    return texture(texSampler, vec3(texCoords, texLayer));
+#else
+    return texture(texSampler, texCoords);
+#endif
+}
+
+#ifdef NORMAL_MAP
+vec3 calcNormal(vec3 normal, vec3 tangent, vec3 bitangent, vec2 texCoords)
+{
+    mat3 TBN = mat3(tangent, bitangent, normal);
+#ifdef TEXTURE_ARRAY
+    vec3 n = texture(normalTexSampler, vec3(texCoords, normalTexLayer)).rgb;
+#else
+    vec3 n = texture(normalTexSampler, texCoords).rgb;
+#endif
+    n = normalize(n * 2.0 - 1.0);
+    n = normalize(TBN * n);
+    return n;
+}
+#endif
+
+void main()
+{
+    vec4 texColor = sampleTexture(outTexCoord);
+
+#ifdef NORMAL_MAP
+    vec3 normal = calcNormal(outNormal, outTangent, outBitangent, outTexCoord);
+#else
+    vec3 normal = normalize(outNormal);
+#endif
+
+    // colors are texture + material tint and can reach 2.0; store them at half scale
+    albedo = vec4(clamp((texColor.rgb + material.diffuse.rgb) * 0.5, 0.0, 1.0), float(billboard));
+    packedNormal = encodeNormal(normal);
+    materialParams = vec4(clamp((texColor.rgb + material.specular.rgb) * 0.5, 0.0, 1.0), clamp(material.glossiness, 0.0, 1.0));
+
+    // ambient is resolved here so the light passes only add direct lighting
+    if (billboard == 1) accumulation = vec4(texColor.rgb, 1.0);
+    else accumulation = vec4(ambientLight.factor * ambientLight.color * (texColor.rgb + material.ambient.rgb), 1.0);
+}
@@ -0,0 +1,96 @@
+#version 330
+
+const float SPECULAR_POWER = 10;
+
+in vec2 outTexCoord;
+
+out vec4 fragColor;
+
+struct Attenuation
+{
+    float constant;
+    float linear;
+    float exponent;
+};
+struct Light
+{
+    vec3 position;
+    vec3 direction;
+    vec3 color;
+    float intensity;
+    Attenuation attenuation;
+    float innerCutoff;
+    float outerCutoff;
+};
+
+uniform sampler2D albedoSampler;
+uniform sampler2D normalSampler;
+uniform sampler2D materialSampler;
+uniform sampler2D depthSampler;
+uniform mat4 invProjectionMatrix;
+
+uniform Light light;
+
+vec3 decodeNormal(vec2 e)
+{
+    vec3 n = vec3(e.xy, 1.0 - abs(e.x) - abs(e.y));
+    if (n.z < 0.0) n.xy = (1.0 - abs(n.yx)) * vec2(n.x >= 0.0 ? 1.0 : -1.0, n.y >= 0.0 ? 1.0 : -1.0);
+    return normalize(n);
+}
+
+vec3 viewPosition(vec2 uv, float depth)
+{
+    vec4 position = invProjectionMatrix * vec4(vec3(uv, depth) * 2.0 - 1.0, 1.0);
+    return position.xyz / position.w;
+}
+
+vec3 calcLighting(vec3 diffuse, vec3 specular, float glossiness, float lightIntensity, vec3 toLightDir, vec3 fragPosition, vec3 fragNormal)
+{
+    float diffuseFactor = max(dot(fragNormal, toLightDir), 0.0);
+    vec3 diffuseColor = diffuse * light.color * lightIntensity * diffuseFactor;
+
+    vec3 viewDirection = normalize(-fragPosition);
+    vec3 reflectedLightDirection = reflect(-toLightDir, fragNormal);
+    float specularFactor = pow(max(dot(viewDirection, reflectedLightDirection), 0.0), SPECULAR_POWER);
+    vec3 specularColor = specular * lightIntensity * specularFactor * glossiness * light.color;
+
+    return diffuseColor + specularColor;
+}
+
+float calcAttenuation(float distance)
+{
+    return 1.0 / (light.attenuation.constant + light.attenuation.linear * distance + light.attenuation.exponent * (distance * distance));
+}
+
+void main()
+{
+    vec4 albedo = texture(albedoSampler, outTexCoord);
+    float depth = texture(depthSampler, outTexCoord).r;
+    if (depth >= 1.0 || albedo.a > 0.5) discard;
+
+    vec4 materialParams = texture(materialSampler, outTexCoord);
+    vec3 diffuse = albedo.rgb * 2.0;
+    vec3 specular = materialParams.rgb * 2.0;
+    float glossiness = materialParams.a;
+
+    vec3 position = viewPosition(outTexCoord, depth);
+    vec3 normal = decodeNormal(texture(normalSampler, outTexCoord).xy);
+
+#ifdef DIRECTIONAL_LIGHT
+    vec3 color = calcLighting(diffuse, specular, glossiness, light.intensity, normalize(light.direction), position, normal);
+#endif
+#ifdef POINT_LIGHT
+    vec3 toLight = light.position - position;
+    vec3 color = calcLighting(diffuse, specular, glossiness, light.intensity, normalize(toLight), position, normal) * calcAttenuation(length(toLight));
+#endif
+#ifdef SPOT_LIGHT
+    vec3 toLight = light.position - position;
+    float theta = dot(normalize(toLight), -light.direction);
+    float inner = min(light.innerCutoff, light.outerCutoff);
+    float outer = max(light.innerCutoff, light.outerCutoff);
+    float cone = smoothstep(cos(radians(outer)), cos(radians(inner)), theta);
+    vec3 color = calcLighting(diffuse, specular, glossiness, cone * light.intensity, normalize(toLight), position, normal) * calcAttenuation(length(toLight));
+#endif
+
+    fragColor = vec4(color, 1.0);
+}
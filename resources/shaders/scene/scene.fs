@@ -25,7 +25,6 @@ struct Material
     vec4 diffuse;
     vec4 specular;
     float glossiness;
-    int hasNormalMap;
 };
 struct AmbientLight
 {
@@ -55,13 +54,24 @@ struct DirectionalLight
 };
 struct Fog
 {
-    int fogActive;
     vec3 color;
     float density;
 };
 
+#ifdef TEXTURE_ARRAY
+uniform sampler2DArray texSampler;
+uniform float texLayer;
+#else
 uniform sampler2D texSampler;
+#endif
+#ifdef NORMAL_MAP
+#ifdef TEXTURE_ARRAY
+uniform sampler2DArray normalTexSampler;
+uniform float normalTexLayer;
+#else
 uniform sampler2D normalTexSampler;
+#endif
+#endif
 uniform float timeElapsed;
 uniform vec2 resolution;
 uniform int billboard;
@@ -133,6 +143,7 @@ vec4 calcDirectionalLight(vec4 materialDiffuse, vec4 materialSpecular, Direction
     return calcLighting(materialDiffuse, materialSpecular, light.color, light.intensity, normalize(light.direction), fragPosition, fragNormal);
 }
 
+#ifdef FOG
 vec4 calcFog(vec3 fragPosition, vec4 color, Fog fog, vec3 ambientLight, DirectionalLight directionalLight)
 {
     vec3 fogColor = fog.color * (ambientLight + directionalLight.color * directionalLight.intensity);
@@ -143,25 +154,45 @@ vec4 calcFog(vec3 fragPosition, vec4 color, Fog fog, vec3 ambientLight, Directio
     vec3 resultColor = mix(fogColor, color.rgb, fogFactor);
     return vec4(resultColor, color.w);
 }
+#endif
 
+// packed levels sample a layer of a texture array, chosen per draw
+vec4 sampleTexture(vec2 texCoords)
+{
+#ifdef TEXTURE_ARRAY
+    return texture(texSampler, vec3(texCoords, texLayer));
+#else
+    return texture(texSampler, texCoords);
+#endif
+}
+
+#ifdef NORMAL_MAP
 vec3 calcNormal(vec3 normal, vec3 tangent, vec3 bitangent, vec2 texCoords)
 {
     mat3 TBN = mat3(tangent, bitangent, normal);
+#ifdef TEXTURE_ARRAY
+    vec3 n = texture(normalTexSampler, vec3(texCoords, normalTexLayer)).rgb;
+#else
     vec3 n = texture(normalTexSampler, texCoords).rgb;
+#endif
     n = normalize(n * 2.0 - 1.0);
     n = normalize(TBN * n);
     return n;
 }
+#endif
 
 void main()
 {
-    vec4 texColor = texture(texSampler, outTexCoord);
+    vec4 texColor = sampleTexture(outTexCoord);
     vec4 ambient = calcAmbient(ambientLight, texColor + material.ambient);
     vec4 diffuse = texColor + material.diffuse;
     vec4 specular = texColor + material.specular;
 
+#ifdef NORMAL_MAP
+    vec3 normal = calcNormal(outNormal, outTangent, outBitangent, outTexCoord);
+#else
     vec3 normal = outNormal;
-    if (material.hasNormalMap > 0) normal = calcNormal(outNormal, outTangent, outBitangent, outTexCoord);
+#endif
 
     vec4 diffuseSpecularComp = calcDirectionalLight(diffuse, specular, directionalLight, outViewPosition, normal);
 
@@ -180,5 +211,7 @@ void main()
     vec4 color = ambient + diffuseSpecularComp;
     if (billboard == 0) fragColor = vec4(color.rgb, texColor.a);
     else fragColor = texColor;
-    if (fog.fogActive == 1) fragColor = calcFog(outViewPosition, fragColor, fog, ambientLight.color, directionalLight);
+#ifdef FOG
+    fragColor = calcFog(outViewPosition, fragColor, fog, ambientLight.color, directionalLight);
+#endif
 }
\ No newline at end of file
@@ -21,10 +21,16 @@ out vec2 outTexCoord;
 uniform mat4 projectionMatrix;
 uniform mat4 viewMatrix;
 uniform mat4 modelMatrix;
+#ifdef SKINNING
 uniform mat4 boneMatrices[MAX_BONES];
+#endif
+
+// the depth pre-pass reuses this shader; keep positions bit-identical between passes
+invariant gl_Position;
 
 void main()
 {
+#ifdef SKINNING
     vec4 initPos = vec4(0.0, 0.0, 0.0, 0.0);
     vec4 initNormal = vec4(0.0, 0.0, 0.0, 0.0);
     vec4 initTangent = vec4(0.0, 0.0, 0.0, 0.0);
@@ -56,6 +62,12 @@ void main()
         initTangent = vec4(tangent, 0.0);
         initBitangent = vec4(bitangent, 0.0);
     }
+#else
+    vec4 initPos = vec4(position, 1.0);
+    vec4 initNormal = vec4(normal, 0.0);
+    vec4 initTangent = vec4(tangent, 0.0);
+    vec4 initBitangent = vec4(bitangent, 0.0);
+#endif
 
     mat4 modelViewMatrix = viewMatrix * modelMatrix;
     vec4 mvPosition = modelViewMatrix * initPos;
@@ -12,6 +12,8 @@ uniform mat4 modelMatrix;
 
 void main()
 {
-    gl_Position = projectionMatrix * viewMatrix * modelMatrix * vec4(position, 1.0);
+    vec4 clipPosition = projectionMatrix * viewMatrix * modelMatrix * vec4(position, 1.0);
+    // z = w puts the skybox on the far plane, so it is drawn last and only where nothing else is
+    gl_Position = clipPosition.xyww;
     outTexCoord = texCoord;
 }
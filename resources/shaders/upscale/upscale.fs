@@ -0,0 +1,16 @@
+#version 330
+
+in vec2 outTexCoord;
+
+out vec4 fragColor;
+
+uniform sampler2D colorSampler;
+uniform vec2 uvScale;
+uniform vec2 uvClamp;
+
+void main()
+{
+    // only the scaled sub-rectangle holds this frame; clamp so bilinear taps never reach past it
+    vec2 uv = min(outTexCoord * uvScale, uvClamp);
+    fragColor = vec4(texture(colorSampler, uv).rgb, 1.0);
+}
@@ -0,0 +1,78 @@
+package engine.graph.render;
+
+import engine.Backends;
+import engine.OffscreenContext;
+import engine.Window;
+import engine.graph.render.deferred.DeferredRender;
+import engine.level.Level;
+import engine.scene.Scene;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.opengl.GL11.glFinish;
+import static org.lwjgl.opengl.GL11.glFlush;
+
+// level1 drawn into an offscreen pbuffer; submit measures the cpu side only, finish waits for the gpu as well
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SceneRenderBenchmark {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Param({ "FORWARD", "DEFERRED" })
+    public Window.RendererType renderer;
+
+    @Param({ "resources/levels/level1/level1.poop" })
+    public String levelPath;
+
+    private OffscreenContext context;
+    private IRenderer render;
+    private Scene scene;
+
+    @Setup
+    public void setup() {
+        // as in RenderBenchmark, no audio device is opened
+        Backends.setAL(false);
+        context = new OffscreenContext(WIDTH, HEIGHT);
+        Window.WindowOptions opts = new Window.WindowOptions(WIDTH, HEIGHT);
+        opts.antiAliasing = false;
+        opts.shaderCacheDir = null;
+        opts.renderer = renderer;
+        render = renderer == Window.RendererType.DEFERRED ? new DeferredRender(opts) : new Render(opts);
+
+        Level level = new Level(levelPath);
+        level.load(WIDTH, HEIGHT);
+        scene = level.getScene();
+        render.resize(WIDTH, HEIGHT);
+        render.warmUp(scene);
+        glFinish();
+    }
+
+    @TearDown
+    public void tearDown() {
+        render.cleanup();
+        scene.cleanup();
+        context.cleanup();
+    }
+
+    @Benchmark
+    public void submit() {
+        render.update(1000.0f / 60.0f, WIDTH, HEIGHT);
+        render.render(scene);
+        glFlush();
+    }
+
+    @Benchmark
+    public void finish() {
+        render.update(1000.0f / 60.0f, WIDTH, HEIGHT);
+        render.render(scene);
+        glFinish();
+    }
+
+}
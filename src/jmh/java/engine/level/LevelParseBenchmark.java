@@ -0,0 +1,34 @@
+package engine.level;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+// json mapping only; building the scene from the parsed data is covered by the loader benchmarks
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelParseBenchmark {
+
+    @Param({ "resources/levels/level1/level1.poop" })
+    public String path;
+
+    private String json;
+
+    @Setup
+    public void setup() throws IOException {
+        json = new String(Files.readAllBytes(Paths.get(path)));
+    }
+
+    @Benchmark
+    public Object parse() throws IOException {
+        return Level.parse(json);
+    }
+
+}
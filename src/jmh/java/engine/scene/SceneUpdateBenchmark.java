@@ -0,0 +1,64 @@
+package engine.scene;
+
+import engine.Backends;
+import engine.OffscreenContext;
+import engine.graph.model.Model;
+import engine.scene.model.BillboardEntity;
+import engine.scene.model.Entity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the scene owns a texture cache and a sound device, so both are opened even though update itself is cpu only
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneUpdateBenchmark {
+
+    private static final int MODELS = 8;
+
+    @Param({ "100", "1000", "10000" })
+    public int entities;
+
+    @Param({ "false", "true" })
+    public boolean billboards;
+
+    private OffscreenContext context;
+    private Scene scene;
+
+    @Setup
+    public void setup() {
+        // nothing here plays sound, so the scene opens no audio device
+        Backends.setAL(false);
+        context = new OffscreenContext(64, 64);
+        scene = new Scene(64, 64);
+        for (int m = 0; m < MODELS; m++) scene.addModel(new Model("model" + m, new ArrayList<>(), new ArrayList<>()));
+
+        Random random = new Random(42);
+        for (int i = 0; i < entities; i++) {
+            String modelID = "model" + (i % MODELS);
+            Entity entity = billboards ? new BillboardEntity(scene.getCamera(), "entity" + i, modelID, false, true) : new Entity("entity" + i, modelID);
+            entity.setPosition(random.nextFloat() * 200.0f - 100.0f, random.nextFloat() * 10.0f, random.nextFloat() * 200.0f - 100.0f);
+            scene.addEntity(entity);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scene.cleanup();
+        context.cleanup();
+    }
+
+    @Benchmark
+    public Scene update() {
+        scene.getCamera().moveRight(0.01f);
+        scene.update(1000.0f / 60.0f);
+        return scene;
+    }
+
+}
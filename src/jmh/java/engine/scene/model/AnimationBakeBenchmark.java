@@ -0,0 +1,43 @@
+package engine.scene.model;
+
+import engine.graph.model.Model;
+import org.lwjgl.assimp.AIScene;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.assimp.Assimp.aiImportFile;
+import static org.lwjgl.assimp.Assimp.aiReleaseImport;
+
+// isolates the per-frame bone matrix bake from import and upload; needs no gl context
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnimationBakeBenchmark {
+
+    @Param({ "resources/levels/level1/models/bob/boblamp.md5mesh" })
+    public String path;
+
+    private AIScene aiScene;
+
+    @Setup
+    public void setup() {
+        aiScene = aiImportFile(path, ModelLoader.DEFAULT_FLAGS);
+        if (aiScene == null) throw new RuntimeException("Failed to load model: \"" + path + "\"");
+    }
+
+    @TearDown
+    public void tearDown() {
+        aiReleaseImport(aiScene);
+    }
+
+    @Benchmark
+    public List<Model.Animation> bake() {
+        return ModelLoader.bakeAnimations(aiScene);
+    }
+
+}
@@ -0,0 +1,40 @@
+package engine.scene.model;
+
+import engine.scene.view.Camera;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BillboardEntityBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean x;
+
+    private Camera camera;
+    private BillboardEntity entity;
+    private int step;
+
+    @Setup
+    public void setup() {
+        camera = new Camera();
+        camera.setPosition(0.0f, 2.0f, 0.0f);
+        entity = new BillboardEntity(camera, "bench", "bench", x, true);
+        entity.setPosition(4.0f, 0.0f, -6.0f);
+    }
+
+    @Benchmark
+    public Matrix4f update() {
+        // keep the camera moving so the rotation never settles into a constant
+        camera.moveRight(++step % 2 == 0 ? 0.01f : -0.01f);
+        entity.update();
+        return entity.getModelMatrix();
+    }
+
+}
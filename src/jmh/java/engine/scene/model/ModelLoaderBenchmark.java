@@ -0,0 +1,48 @@
+package engine.scene.model;
+
+import engine.OffscreenContext;
+import engine.graph.model.Model;
+import engine.graph.texture.TextureCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// full import including mesh upload; textures are cached per trial so repeat loads measure geometry and animation work
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelLoaderBenchmark {
+
+    @Param({ "resources/levels/level1/models/testmap/testmap.obj", "resources/levels/level1/models/bob/boblamp.md5mesh" })
+    public String path;
+
+    @Param({ "false", "true" })
+    public boolean animation;
+
+    private OffscreenContext context;
+    private TextureCache textureCache;
+
+    @Setup
+    public void setup() {
+        context = new OffscreenContext(64, 64);
+        textureCache = new TextureCache();
+    }
+
+    @TearDown
+    public void tearDown() {
+        textureCache.cleanup();
+        context.cleanup();
+    }
+
+    @Benchmark
+    public Model load() throws IOException {
+        Model model = ModelLoader.loadModel("bench", path, textureCache, animation);
+        model.cleanup();
+        return model;
+    }
+
+}
@@ -0,0 +1,39 @@
+package engine.scene.view;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraBenchmark {
+
+    private Camera camera;
+
+    @Setup
+    public void setup() {
+        camera = new Camera();
+        camera.setPosition(0.0f, 1.5f, 0.0f);
+    }
+
+    @Benchmark
+    public Matrix4f rotate() {
+        camera.addRotation(0.001f, 0.002f);
+        return camera.getViewMatrix();
+    }
+
+    // one frame of camera input: look plus a diagonal strafe, each of which recalculates the view
+    @Benchmark
+    public Matrix4f move() {
+        camera.addRotation(0.001f, 0.002f);
+        camera.moveForward(0.05f);
+        camera.moveLeft(0.05f);
+        return camera.getViewMatrix();
+    }
+
+}
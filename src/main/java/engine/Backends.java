@@ -0,0 +1,21 @@
+package engine;
+
+// process-wide switches for the native backends; must be set before any scene or resource is created
+public class Backends {
+
+    private static boolean gl = true;
+    private static boolean al = true;
+
+    public static boolean hasGL() { return gl; }
+    public static boolean hasAL() { return al; }
+
+    public static void setGL(boolean enabled) { gl = enabled; }
+    public static void setAL(boolean enabled) { al = enabled; }
+
+    // resources keep their cpu-side state but skip every gl and al call
+    public static void headless() {
+        gl = false;
+        al = false;
+    }
+
+}
@@ -1,8 +1,21 @@
 package engine;
 
+import engine.graph.render.IRenderer;
 import engine.graph.render.Render;
+import engine.graph.render.deferred.DeferredRender;
+import engine.graph.texture.TextureCache;
+import engine.input.InputRecorder;
+import engine.input.InputReplay;
 import engine.level.Level;
 import engine.scene.Scene;
+import engine.telemetry.CsvExporter;
+import engine.telemetry.LogExporter;
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.Telemetry;
+import engine.telemetry.TelemetryExporter;
+
+import java.util.Arrays;
+import java.util.List;
 
 public class Engine {
 
@@ -10,11 +23,20 @@ public class Engine {
 
     private final IAppLogic appLogic;
     private final Window window;
-    private Render render;
+    private final Telemetry telemetry;
+    private final InputRecorder inputRecorder;
+    private final InputReplay inputReplay;
+    private final boolean replayRealtime;
+    private final TextureCache textureCache;
+    private IRenderer render;
     private Level level;
     private boolean running;
     private int targetFPS;
     private int targetUPS;
+    // recording and replay advance the simulation by these constant steps, so it never depends on the wall clock
+    private final boolean fixedStep;
+    private final long updateStepMillis;
+    private final long inputStepMillis;
 
     public Engine(String windowTitle, Window.WindowOptions opts, IAppLogic appLogic, Level level) {
         window = new Window(windowTitle, opts, () -> {
@@ -26,8 +48,35 @@ public class Engine {
         targetUPS = opts.ups;
         this.appLogic = appLogic;
         this.level = level;
-        render = new Render();
-        this.level.load(window.getWidth(), window.getHeight());
+        // gpu profiler results are reported through the telemetry exporters, so asking for the profiler turns them on
+        boolean exports = opts.telemetry || opts.gpuProfiler;
+        TelemetryExporter exporter = !exports ? null : opts.telemetryCsvPath != null ? new CsvExporter(opts.telemetryCsvPath) : new LogExporter();
+        boolean allocationChecks = opts.allocationTracking || opts.allocationBudgetBytes >= 0;
+        telemetry = new Telemetry(exports || allocationChecks, opts.telemetryWindow, exporter, opts.telemetryExportInterval);
+        telemetry.setAllocationTracking(allocationChecks);
+        telemetry.setAllocationBudget(opts.allocationBudgetBytes, opts.allocationWarmupFrames);
+        inputReplay = opts.inputReplayPath != null ? new InputReplay(opts.inputReplayPath) : null;
+        if (inputReplay == null && opts.inputRecordPath != null && targetFPS <= 0) {
+            // an uncapped frame has no fixed length to step input by
+            System.err.println("Input recording caps the frame rate at " + targetUPS + " fps.");
+            targetFPS = targetUPS;
+        }
+        inputRecorder = inputReplay == null && opts.inputRecordPath != null ? new InputRecorder(opts.inputRecordPath, targetUPS, targetFPS) : null;
+        fixedStep = inputRecorder != null || inputReplay != null;
+        int stepUPS = inputReplay != null ? inputReplay.getUPS() : targetUPS;
+        int stepFPS = inputReplay != null ? inputReplay.getFPS() : targetFPS;
+        updateStepMillis = Math.max(1, 1000 / stepUPS);
+        inputStepMillis = Math.max(1, 1000 / (stepFPS > 0 ? stepFPS : stepUPS));
+        replayRealtime = opts.replayRealtime;
+        window.setInputReplay(inputReplay);
+        window.setInputRecorder(inputRecorder);
+        render = opts.renderer == Window.RendererType.DEFERRED ? new DeferredRender(opts) : new Render(opts);
+        if (opts.gpuProfiler) telemetry.setGpuProfiler(render.getGpuProfiler());
+        textureCache = new TextureCache(opts.textureBudgetBytes, opts.textureDecodeThreads, opts.textureUploadBytesPerFrame);
+        textureCache.setStreaming(opts.textureStreaming);
+        this.level.load(window.getWidth(), window.getHeight(), textureCache, opts.textureArrays);
+        render.warmUp(this.level.getScene());
+        checkResources(opts);
         appLogic.init(window, this.level.getScene(), render);
         running = true;
     }
@@ -36,7 +85,21 @@ public class Engine {
         appLogic.cleanup();
         render.cleanup();
         level.getScene().cleanup();
+        textureCache.cleanup();
         window.cleanup();
+        telemetry.close();
+        if (inputRecorder != null) inputRecorder.close();
+        ResourceRegistry.reportLeaks();
+    }
+
+    private void checkResources(Window.WindowOptions opts) {
+        if (opts.resourceReportPath == null && opts.resourceBudgetPath == null) return;
+        System.out.println(ResourceRegistry.summary());
+        System.out.println(textureCache.summary());
+        if (opts.resourceReportPath != null) ResourceRegistry.writeReport(opts.resourceReportPath);
+        if (opts.resourceBudgetPath == null) return;
+        List<String> violations = ResourceRegistry.checkBudget(opts.resourceBudgetPath);
+        if (!violations.isEmpty()) throw new IllegalStateException("Resource budget \"" + opts.resourceBudgetPath + "\" exceeded:\n  " + String.join("\n  ", violations));
     }
 
     private void resize() {
@@ -57,42 +120,149 @@ public class Engine {
 
         long updateTime = time;
         while (running && !window.windowShouldClose()) {
+            if (inputRecorder != null) inputRecorder.beginFrame();
+            long phase = telemetry.begin(Telemetry.Phase.POLL_EVENTS);
             window.pollEvents();
+            telemetry.end(Telemetry.Phase.POLL_EVENTS, phase);
 
             long now = System.currentTimeMillis();
             deltaUpdate += (now - time) / timeU;
             deltaFPS += (now - time) / timeR;
 
             if (targetFPS <= 0 || deltaFPS >= 1) {
+                phase = telemetry.begin(Telemetry.Phase.MOUSE_INPUT);
                 window.getMouseInput().input();
-                appLogic.input(window, scene, now - time, false);
+                telemetry.end(Telemetry.Phase.MOUSE_INPUT, phase);
+                phase = telemetry.begin(Telemetry.Phase.APP_INPUT);
+                appLogic.input(window, scene, fixedStep ? inputStepMillis : now - time, false);
+                telemetry.end(Telemetry.Phase.APP_INPUT, phase);
+                if (inputRecorder != null) inputRecorder.input(now - time);
             }
 
             if (deltaUpdate >= 1) {
-                long diffTimeMillis = now - updateTime;
+                long diffTimeMillis = fixedStep ? updateStepMillis : now - updateTime;
+                phase = telemetry.begin(Telemetry.Phase.SCENE_UPDATE);
                 scene.update(diffTimeMillis);
+                telemetry.end(Telemetry.Phase.SCENE_UPDATE, phase);
+                phase = telemetry.begin(Telemetry.Phase.APP_UPDATE);
                 appLogic.update(window, scene, diffTimeMillis);
+                telemetry.end(Telemetry.Phase.APP_UPDATE, phase);
                 render.update(diffTimeMillis, window.getWidth(), window.getHeight());
+                if (inputRecorder != null) inputRecorder.update(now - updateTime);
                 updateTime = now;
                 deltaUpdate--;
             }
 
             if (targetFPS <= 0 || deltaFPS >= 1) {
+                phase = telemetry.begin(Telemetry.Phase.RENDER);
                 render.resize(window.getWidth(), window.getHeight());
+                render.setCpuFrameMillis(telemetry.getLastFrameWorkMillis());
                 render.render(scene);
+                telemetry.end(Telemetry.Phase.RENDER, phase);
                 deltaFPS--;
+                phase = telemetry.begin(Telemetry.Phase.SWAP);
                 window.update();
+                telemetry.end(Telemetry.Phase.SWAP, phase);
+                telemetry.endFrame();
             }
 
+            if (inputRecorder != null) inputRecorder.endFrame(window.getMouseInput());
             time = now;
         }
 
         cleanup();
     }
 
+    // every recorded frame is fed through the same input and update path with the fixed steps it was recorded with, independent of the
+    // wall clock; the recorded timings are only reported
+    private void runReplay() {
+        Scene scene = level.getScene();
+        long frameNanos = inputStepMillis * 1_000_000L;
+        float[] frameMillis = new float[inputReplay.getFrameCount()];
+        float[] recordedMillis = new float[inputReplay.getFrameCount()];
+        int frames = 0;
+
+        long nextFrame = System.nanoTime();
+        while (running && !window.windowShouldClose() && inputReplay.next()) {
+            long frameStart = System.nanoTime();
+            long phase = telemetry.begin(Telemetry.Phase.POLL_EVENTS);
+            window.pollEvents();
+            telemetry.end(Telemetry.Phase.POLL_EVENTS, phase);
+
+            if (inputReplay.hasInput()) {
+                phase = telemetry.begin(Telemetry.Phase.MOUSE_INPUT);
+                window.getMouseInput().input();
+                inputReplay.apply(window.getMouseInput());
+                telemetry.end(Telemetry.Phase.MOUSE_INPUT, phase);
+                phase = telemetry.begin(Telemetry.Phase.APP_INPUT);
+                appLogic.input(window, scene, inputStepMillis, false);
+                telemetry.end(Telemetry.Phase.APP_INPUT, phase);
+                recordedMillis[frames] = inputReplay.getInputMillis();
+            }
+
+            if (inputReplay.hasUpdate()) {
+                long diffTimeMillis = updateStepMillis;
+                phase = telemetry.begin(Telemetry.Phase.SCENE_UPDATE);
+                scene.update(diffTimeMillis);
+                telemetry.end(Telemetry.Phase.SCENE_UPDATE, phase);
+                phase = telemetry.begin(Telemetry.Phase.APP_UPDATE);
+                appLogic.update(window, scene, diffTimeMillis);
+                telemetry.end(Telemetry.Phase.APP_UPDATE, phase);
+                render.update(diffTimeMillis, window.getWidth(), window.getHeight());
+            }
+
+            // the live loop renders exactly when it handles input
+            if (!inputReplay.hasInput()) continue;
+            phase = telemetry.begin(Telemetry.Phase.RENDER);
+            render.resize(window.getWidth(), window.getHeight());
+            render.setCpuFrameMillis(telemetry.getLastFrameWorkMillis());
+            render.render(scene);
+            telemetry.end(Telemetry.Phase.RENDER, phase);
+            phase = telemetry.begin(Telemetry.Phase.SWAP);
+            window.update();
+            telemetry.end(Telemetry.Phase.SWAP, phase);
+            telemetry.endFrame();
+            frameMillis[frames++] = (System.nanoTime() - frameStart) / 1_000_000.0f;
+
+            if (replayRealtime) {
+                nextFrame += frameNanos;
+                long wait = nextFrame - System.nanoTime();
+                if (wait > 0) {
+                    try { Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000)); }
+                    catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+                }
+            }
+        }
+
+        reportReplay(scene, Arrays.copyOf(frameMillis, frames), Arrays.copyOf(recordedMillis, frames));
+        cleanup();
+    }
+
+    // recorded frame times are the live session's loop intervals, printed next to the replay's for comparison
+    private void reportReplay(Scene scene, float[] frameMillis, float[] recordedMillis) {
+        System.out.printf("replayed %d/%d entries, %d frames, state checksum %016x%n", inputReplay.getFrameIndex() + 1, inputReplay.getFrameCount(), frameMillis.length, InputReplay.stateChecksum(scene));
+        if (frameMillis.length == 0) return;
+        reportFrameMillis("frame ms", frameMillis);
+        reportFrameMillis("recorded frame ms", recordedMillis);
+    }
+
+    private static void reportFrameMillis(String label, float[] frameMillis) {
+        double sum = 0;
+        for (float millis : frameMillis) sum += millis;
+        Arrays.sort(frameMillis);
+        System.out.printf("%s: avg=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f%n", label, sum / frameMillis.length,
+                percentile(frameMillis, 0.5f), percentile(frameMillis, 0.95f), percentile(frameMillis, 0.99f), frameMillis[frameMillis.length - 1]);
+    }
+
+    private static float percentile(float[] sorted, float percentile) {
+        int index = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1));
+        return sorted[index];
+    }
+
     public void start() {
         running = true;
-        run();
+        if (inputReplay != null) runReplay();
+        else run();
     }
 
     public void stop() {
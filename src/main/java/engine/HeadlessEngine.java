@@ -0,0 +1,117 @@
+package engine;
+
+import engine.level.Level;
+import engine.scene.Scene;
+import engine.telemetry.CsvExporter;
+import engine.telemetry.LogExporter;
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.Telemetry;
+import engine.telemetry.TelemetryExporter;
+
+// runs the simulation without a window, renderer or audio device; app logic receives a null window and renderer
+public class HeadlessEngine {
+
+    private final IAppLogic appLogic;
+    private final Level level;
+    private final Telemetry telemetry;
+    private final int targetUPS;
+    private final boolean fixedRate;
+    private final long maxTicks;
+    private volatile boolean running;
+    private long ticks;
+    private long elapsedNanos;
+
+    public HeadlessEngine(HeadlessOptions opts, IAppLogic appLogic, Level level) {
+        Backends.headless();
+
+        targetUPS = opts.ups;
+        fixedRate = opts.fixedRate;
+        maxTicks = opts.maxTicks;
+        this.appLogic = appLogic;
+        this.level = level;
+        TelemetryExporter exporter = !opts.telemetry ? null : opts.telemetryCsvPath != null ? new CsvExporter(opts.telemetryCsvPath) : new LogExporter();
+        boolean allocationChecks = opts.allocationTracking || opts.allocationBudgetBytes >= 0;
+        telemetry = new Telemetry(opts.telemetry || allocationChecks, opts.telemetryWindow, exporter, opts.telemetryExportInterval);
+        telemetry.setAllocationTracking(allocationChecks);
+        telemetry.setAllocationBudget(opts.allocationBudgetBytes, opts.allocationWarmupFrames);
+        this.level.load(opts.width, opts.height);
+        appLogic.init(null, this.level.getScene(), null);
+        running = true;
+    }
+
+    private void cleanup() {
+        appLogic.cleanup();
+        level.getScene().cleanup();
+        telemetry.close();
+        ResourceRegistry.reportLeaks();
+    }
+
+    // every tick advances the simulation by the same step; fixed rate paces ticks in real time, otherwise they run back to back
+    private void run() {
+        long stepMillis = Math.max(1, 1000 / targetUPS);
+        long stepNanos = 1_000_000_000L / targetUPS;
+        Scene scene = level.getScene();
+
+        long start = System.nanoTime();
+        long nextTick = start;
+        while (running && (maxTicks <= 0 || ticks < maxTicks)) {
+            if (fixedRate) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    try { Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000)); }
+                    catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+                }
+                nextTick += stepNanos;
+            }
+
+            long phase = telemetry.begin(Telemetry.Phase.SCENE_UPDATE);
+            scene.update(stepMillis);
+            telemetry.end(Telemetry.Phase.SCENE_UPDATE, phase);
+            phase = telemetry.begin(Telemetry.Phase.APP_UPDATE);
+            appLogic.update(null, scene, stepMillis);
+            telemetry.end(Telemetry.Phase.APP_UPDATE, phase);
+            telemetry.endFrame();
+            ticks++;
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        cleanup();
+    }
+
+    public void start() {
+        running = true;
+        run();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long getTicks() { return ticks; }
+    public Telemetry getTelemetry() { return telemetry; }
+    public double getTicksPerSecond() { return elapsedNanos > 0 ? ticks * 1_000_000_000.0 / elapsedNanos : 0.0; }
+
+    public static class HeadlessOptions {
+        public int ups = Engine.TARGET_UPS;
+        public boolean fixedRate = false; // false runs ticks as fast as possible
+        public long maxTicks = 0; // 0 runs until stop() is called
+        public int width = 1280; // only used for the scene projection
+        public int height = 720;
+        public boolean telemetry = false;
+        public int telemetryWindow = 600;
+        public int telemetryExportInterval = 300;
+        public String telemetryCsvPath = null; // null logs to stdout instead
+        public boolean allocationTracking = false;
+        public long allocationBudgetBytes = -1; // >= 0 fails the run when a tick past the warm-up allocates more
+        public int allocationWarmupFrames = 300;
+
+        public HeadlessOptions() {}
+
+        public HeadlessOptions(int ups, boolean fixedRate, long maxTicks) {
+            this.ups = ups;
+            this.fixedRate = fixedRate;
+            this.maxTicks = maxTicks;
+        }
+    }
+
+}
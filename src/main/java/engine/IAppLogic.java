@@ -1,13 +1,13 @@
 package engine;
 
-import engine.graph.render.Render;
+import engine.graph.render.IRenderer;
 import engine.scene.Scene;
 
 public interface IAppLogic {
 
     void cleanup();
 
-    void init(Window window, Scene scene, Render render);
+    void init(Window window, Scene scene, IRenderer render);
 
     void input(Window window, Scene scene, long diffTimeMillis, boolean inputConsumed);
 
@@ -0,0 +1,102 @@
+package engine;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.egl.EGL10.*;
+import static org.lwjgl.egl.EGL12.*;
+import static org.lwjgl.egl.EGL14.*;
+import static org.lwjgl.egl.EGL15.*;
+import static org.lwjgl.egl.EXTPlatformBase.eglGetPlatformDisplayEXT;
+import static org.lwjgl.opengl.GL11.*;
+
+// gl context on an egl pbuffer, no window system needed; works with mesa's llvmpipe on cpu-only machines
+public class OffscreenContext {
+
+    // EGL_MESA_platform_surfaceless, not exposed by lwjgl
+    private static final int EGL_PLATFORM_SURFACELESS_MESA = 0x31DD;
+
+    private final long display;
+    private final long surface;
+    private final long context;
+    private final int width;
+    private final int height;
+
+    public OffscreenContext(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        // gl entry points have to come from egl rather than glx; only possible before GL is first touched
+        Configuration.OPENGL_EXPLICIT_INIT.set(true);
+
+        String clientExtensions = eglQueryString(EGL_NO_DISPLAY, EGL_EXTENSIONS);
+        if (clientExtensions != null && clientExtensions.contains("EGL_MESA_platform_surfaceless")) display = eglGetPlatformDisplayEXT(EGL_PLATFORM_SURFACELESS_MESA, EGL_DEFAULT_DISPLAY, (IntBuffer) null);
+        else display = eglGetDisplay(EGL_DEFAULT_DISPLAY);
+        if (display == EGL_NO_DISPLAY) throw new RuntimeException("Failed to get an EGL display.");
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer major = stack.mallocInt(1);
+            IntBuffer minor = stack.mallocInt(1);
+            if (!eglInitialize(display, major, minor)) throw new RuntimeException("Failed to initialize EGL: 0x" + Integer.toHexString(eglGetError()));
+            EGL.createDisplayCapabilities(display, major.get(0), minor.get(0));
+            if (!eglBindAPI(EGL_OPENGL_API)) throw new RuntimeException("EGL display does not support desktop OpenGL.");
+
+            IntBuffer configAttribs = stack.ints(
+                    EGL_SURFACE_TYPE, EGL_PBUFFER_BIT,
+                    EGL_RENDERABLE_TYPE, EGL_OPENGL_BIT,
+                    EGL_RED_SIZE, 8, EGL_GREEN_SIZE, 8, EGL_BLUE_SIZE, 8, EGL_ALPHA_SIZE, 8,
+                    EGL_DEPTH_SIZE, 24,
+                    EGL_NONE);
+            PointerBuffer configs = stack.mallocPointer(1);
+            IntBuffer numConfigs = stack.mallocInt(1);
+            if (!eglChooseConfig(display, configAttribs, configs, numConfigs) || numConfigs.get(0) == 0) throw new RuntimeException("No EGL config with an OpenGL pbuffer.");
+            long config = configs.get(0);
+
+            surface = eglCreatePbufferSurface(display, config, stack.ints(EGL_WIDTH, width, EGL_HEIGHT, height, EGL_NONE));
+            if (surface == EGL_NO_SURFACE) throw new RuntimeException("Failed to create EGL pbuffer: 0x" + Integer.toHexString(eglGetError()));
+
+            // same version and profile as the window path
+            IntBuffer contextAttribs = stack.ints(
+                    EGL_CONTEXT_MAJOR_VERSION, 3,
+                    EGL_CONTEXT_MINOR_VERSION, 2,
+                    EGL_CONTEXT_OPENGL_PROFILE_MASK, EGL_CONTEXT_OPENGL_CORE_PROFILE_BIT,
+                    EGL_NONE);
+            context = eglCreateContext(display, config, EGL_NO_CONTEXT, contextAttribs);
+            if (context == EGL_NO_CONTEXT) throw new RuntimeException("Failed to create EGL context: 0x" + Integer.toHexString(eglGetError()));
+        }
+
+        if (!eglMakeCurrent(display, surface, surface, context)) throw new RuntimeException("Failed to make EGL context current: 0x" + Integer.toHexString(eglGetError()));
+
+        GL.create(EGL.getFunctionProvider());
+        GL.createCapabilities();
+    }
+
+    public void cleanup() {
+        eglMakeCurrent(display, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+        eglDestroyContext(display, context);
+        eglDestroySurface(display, surface);
+        eglTerminate(display);
+        GL.destroy();
+    }
+
+    // rgba rows bottom to top, as gl returns them
+    public ByteBuffer readPixels() {
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+        glFinish();
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        return pixels;
+    }
+
+    public String getRenderer() { return glGetString(GL_RENDERER); }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+}
@@ -3,6 +3,8 @@ package engine;
 import org.lwjgl.glfw.*;
 import org.lwjgl.system.MemoryUtil;
 
+import engine.input.InputRecorder;
+import engine.input.InputReplay;
 import engine.input.MouseInput;
 
 import java.util.concurrent.Callable;
@@ -19,6 +21,8 @@ public class Window {
     private int height;
     private Callable<Void> resizeFunc;
     private MouseInput mouseInput;
+    private InputRecorder inputRecorder;
+    private InputReplay inputReplay;
 
     public Window(String title, WindowOptions opts, Callable<Void> resizeFunc) {
         this.resizeFunc = resizeFunc;
@@ -91,7 +95,16 @@ public class Window {
     public long getHandle() { return handle; }
     public MouseInput getMouseInput() { return mouseInput; }
 
-    public boolean isKeyPressed(int key) { return glfwGetKey(handle, key) == GLFW_PRESS; }
+    public boolean isKeyPressed(int key) {
+        if (inputReplay != null) return inputReplay.isKeyPressed(key);
+        boolean pressed = glfwGetKey(handle, key) == GLFW_PRESS;
+        if (inputRecorder != null) inputRecorder.keyQueried(key, pressed);
+        return pressed;
+    }
+
+    public void setInputRecorder(InputRecorder inputRecorder) { this.inputRecorder = inputRecorder; }
+    public void setInputReplay(InputReplay inputReplay) { this.inputReplay = inputReplay; }
+
     public void keyCallBack(int key, int action) {
         if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE) {
             glfwSetWindowShouldClose(handle, true);
@@ -113,6 +126,8 @@ public class Window {
 
     public boolean windowShouldClose() { return glfwWindowShouldClose(handle); }
 
+    public enum RendererType { FORWARD, DEFERRED }
+
     public static class WindowOptions {
         public boolean compatibleProfile = false;
         public int fps = 60;
@@ -120,6 +135,33 @@ public class Window {
         public int width = 640;
         public int height = 480;
         public boolean antiAliasing = true;
+        public boolean depthPrePass = false;
+        public boolean fragmentStats = false;
+        public String shaderCacheDir = "cache/shaders";
+        public RendererType renderer = RendererType.FORWARD;
+        public boolean dynamicResolution = false;
+        public float minResolutionScale = 0.5f;
+        public float maxResolutionScale = 1.0f;
+        public float targetFrameMillis = 0.0f; // 0 derives the target from fps
+        public boolean gpuProfiler = false; // times render passes with gpu queries and reports them through the telemetry exporters
+        public boolean gpuProfilerBatches = false;
+        public boolean telemetry = false;
+        public int telemetryWindow = 600;
+        public int telemetryExportInterval = 300;
+        public String telemetryCsvPath = null; // null logs to stdout instead
+        public boolean allocationTracking = false;
+        public long allocationBudgetBytes = -1; // >= 0 fails the run when a frame past the warm-up allocates more
+        public int allocationWarmupFrames = 300;
+        public String inputRecordPath = null; // records every frame's input and timing to this file
+        public String inputReplayPath = null; // replays a recorded file instead of reading the keyboard and mouse
+        public boolean replayRealtime = false; // false replays frames back to back
+        public String resourceReportPath = null; // writes a json dump of gpu and native resource usage once the level is loaded
+        public String resourceBudgetPath = null; // fails the run when the loaded level exceeds this budget file
+        public long textureBudgetBytes = -1; // >= 0 evicts unreferenced textures once resident textures exceed it
+        public int textureDecodeThreads = 2; // 0 decodes and uploads textures synchronously while loading
+        public long textureUploadBytesPerFrame = 8L << 20;
+        public boolean textureStreaming = false; // starts textures at a coarse mip and streams finer ones by on-screen size; needs decode threads
+        public boolean textureArrays = false; // packs the level's equally sized textures into array layers so materials share texture binds
 
         public WindowOptions(int width, int height) {
             this.width = width;
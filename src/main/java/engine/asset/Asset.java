@@ -0,0 +1,30 @@
+package engine.asset;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+// the bytes of one asset, valid until closed: a stored pack entry is a view of the mapped pack, anything else a native copy freed on close
+public final class Asset implements AutoCloseable {
+
+    private final String path;
+    private final ByteBuffer data;
+    private final boolean owned;
+
+    Asset(String path, ByteBuffer data, boolean owned) {
+        this.path = path;
+        this.data = data;
+        this.owned = owned;
+    }
+
+    @Override
+    public void close() {
+        if (owned) MemoryUtil.memFree(data);
+    }
+
+    public String getPath() { return path; }
+    // a direct buffer over the whole asset; callers must not keep it past close
+    public ByteBuffer getData() { return data; }
+    public int size() { return data.remaining(); }
+
+}
@@ -0,0 +1,93 @@
+package engine.asset;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.util.lz4.LZ4.LZ4_decompress_safe;
+import static org.lwjgl.util.zstd.Zstd.*;
+
+// a read-only archive built by AssetPacker and memory-mapped whole. little endian: a 16 byte header (magic, version, entry count, index bytes),
+// then per entry its utf-8 path, codec, offset, packed size, unpacked size and content hash, then the entry data at 16 byte aligned offsets
+public final class AssetPack {
+
+    public static final int MAGIC = 0x4B504454; // "TDPK"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int ALIGNMENT = 16;
+
+    public static final byte STORED = 0;
+    public static final byte LZ4 = 1;
+    public static final byte ZSTD = 2;
+
+    record Entry(byte codec, long offset, long packedSize, long size, long hash) {}
+
+    private final String packPath;
+    private final ByteBuffer mapping;
+    private final Map<String, Entry> entries;
+
+    public AssetPack(String packPath) {
+        this.packPath = packPath;
+        try (FileChannel channel = FileChannel.open(Path.of(packPath), StandardOpenOption.READ)) {
+            // a single mapping is limited to 2 GiB; larger trees are split into several packs
+            if (channel.size() > Integer.MAX_VALUE) throw new IllegalStateException("Asset pack \"" + packPath + "\" is larger than 2 GiB.");
+            // the mapping outlives the channel and is released once the pack is unreachable
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to open asset pack \"" + packPath + "\".", e);
+        }
+
+        if (mapping.limit() < HEADER_BYTES || mapping.getInt(0) != MAGIC) throw new IllegalStateException("\"" + packPath + "\" is not an asset pack.");
+        if (mapping.getInt(4) != VERSION) throw new IllegalStateException("Asset pack \"" + packPath + "\" has version " + mapping.getInt(4) + ", expected " + VERSION + ".");
+        int count = mapping.getInt(8);
+        entries = new HashMap<>(count * 2);
+        ByteBuffer index = mapping.slice(HEADER_BYTES, mapping.getInt(12)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[Short.toUnsignedInt(index.getShort())];
+            index.get(name);
+            Entry entry = new Entry(index.get(), index.getLong(), index.getLong(), index.getLong(), index.getLong());
+            if (entry.offset + entry.packedSize > mapping.limit()) throw new IllegalStateException("Asset pack \"" + packPath + "\" is truncated.");
+            entries.put(new String(name, StandardCharsets.UTF_8), entry);
+        }
+    }
+
+    // expects a path normalized by Assets.normalize
+    Entry find(String path) {
+        return entries.get(path);
+    }
+
+    Asset open(String path, Entry entry) {
+        ByteBuffer packed = mapping.slice((int) entry.offset, (int) entry.packedSize);
+        if (entry.codec == STORED) return new Asset(path, packed, false);
+
+        ByteBuffer data = MemoryUtil.memAlloc((int) Math.max(1, entry.size));
+        long size = switch (entry.codec) {
+            case LZ4 -> LZ4_decompress_safe(packed, data);
+            case ZSTD -> {
+                long result = ZSTD_decompress(data, packed);
+                yield ZSTD_isError(result) ? -1 : result;
+            }
+            default -> -1;
+        };
+        if (size != entry.size) {
+            MemoryUtil.memFree(data);
+            throw new IllegalStateException("Failed to decompress \"" + path + "\" from asset pack \"" + packPath + "\".");
+        }
+        data.limit((int) size);
+        return new Asset(path, data, true);
+    }
+
+    public String getPath() { return packPath; }
+    public int getEntryCount() { return entries.size(); }
+    public long getBytes() { return mapping.capacity(); }
+
+}
@@ -0,0 +1,103 @@
+package engine.asset;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// the file layer every loader reads through: mounted packs first, the latest mount winning, then loose files relative to the working directory.
+// mount before loading anything; lookups are safe from decode workers
+public final class Assets {
+
+    private static final List<AssetPack> packs = new CopyOnWriteArrayList<>();
+
+    public static AssetPack mount(String packPath) {
+        AssetPack pack = new AssetPack(packPath);
+        packs.add(0, pack);
+        return pack;
+    }
+
+    public static void unmountAll() { packs.clear(); }
+
+    public static boolean isPacked(String path) {
+        return find(normalize(path)) != null;
+    }
+
+    public static boolean exists(String path) {
+        return isPacked(path) || Files.isRegularFile(Path.of(path));
+    }
+
+    // unpacked size in bytes, -1 when the asset does not exist
+    public static long size(String path) {
+        AssetPack.Entry entry = find(normalize(path));
+        if (entry != null) return entry.size();
+        try { return Files.size(Path.of(path)); }
+        catch (IOException e) { return -1; }
+    }
+
+    // the content hash stored when the asset was packed, 0 for loose files
+    public static long packedHash(String path) {
+        AssetPack.Entry entry = find(normalize(path));
+        return entry != null ? entry.hash() : 0;
+    }
+
+    public static Asset open(String path) {
+        String normalized = normalize(path);
+        for (AssetPack pack : packs) {
+            AssetPack.Entry entry = pack.find(normalized);
+            if (entry != null) return pack.open(path, entry);
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IllegalStateException("Asset \"" + path + "\" is larger than 2 GiB.");
+            ByteBuffer data = MemoryUtil.memAlloc((int) Math.max(1, size));
+            data.limit((int) size);
+            try {
+                while (data.hasRemaining() && channel.read(data) >= 0);
+            }
+            catch (IOException e) {
+                MemoryUtil.memFree(data);
+                throw e;
+            }
+            return new Asset(path, data.flip(), true);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read asset \"" + path + "\".", e);
+        }
+    }
+
+    public static String readString(String path) {
+        try (Asset asset = open(path)) {
+            return MemoryUtil.memUTF8(asset.getData());
+        }
+    }
+
+    // forward slashes with "." and ".." segments resolved, the form paths are stored in packs
+    public static String normalize(String path) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.replace('\\', '/').split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..") && !segments.isEmpty() && !segments.peekLast().equals("..")) segments.removeLast();
+            else segments.addLast(segment);
+        }
+        String normalized = String.join("/", segments);
+        return path.startsWith("/") ? "/" + normalized : normalized;
+    }
+
+    private static AssetPack.Entry find(String normalized) {
+        for (AssetPack pack : packs) {
+            AssetPack.Entry entry = pack.find(normalized);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,82 @@
+package engine.asset;
+
+import org.lwjgl.assimp.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.lwjgl.assimp.Assimp.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+// routes assimp's file access through Assets, so a model and the material libraries or animations it references can come from a pack
+public final class AssimpFileIO {
+
+    private static final class OpenFile {
+        final Asset asset;
+        long position;
+
+        OpenFile(Asset asset) { this.asset = asset; }
+    }
+
+    private static final Map<Long, OpenFile> files = new ConcurrentHashMap<>();
+    // every opened file is a copy of this one, which holds the per-file callbacks
+    private static AIFile template;
+    private static AIFileIO fileIO;
+
+    // created once and kept for the life of the process, like the callbacks it points to
+    public static synchronized AIFileIO get() {
+        if (fileIO == null) {
+            template = AIFile.calloc()
+                    .ReadProc(AIFileReadProc.create(AssimpFileIO::read))
+                    .WriteProc(AIFileWriteProc.create((pFile, pBuffer, size, count) -> 0))
+                    .TellProc(AIFileTellProc.create(pFile -> files.get(pFile).position))
+                    .FileSizeProc(AIFileTellProc.create(pFile -> files.get(pFile).asset.size()))
+                    .SeekProc(AIFileSeek.create(AssimpFileIO::seek))
+                    .FlushProc(AIFileFlushProc.create(pFile -> {}));
+            fileIO = AIFileIO.calloc()
+                    .OpenProc(AIFileOpenProc.create((pFileIO, fileName, openMode) -> open(memUTF8(fileName), memASCII(openMode))))
+                    .CloseProc(AIFileCloseProc.create(AssimpFileIO::close));
+        }
+        return fileIO;
+    }
+
+    private static long open(String path, String mode) {
+        // assets are read only, and an exception must not unwind through assimp, so failures report a missing file
+        if (mode.indexOf('w') >= 0 || mode.indexOf('a') >= 0 || !Assets.exists(path)) return NULL;
+        Asset asset;
+        try { asset = Assets.open(path); }
+        catch (RuntimeException e) { return NULL; }
+        AIFile file = AIFile.calloc().set(template);
+        files.put(file.address(), new OpenFile(asset));
+        return file.address();
+    }
+
+    private static long read(long pFile, long pBuffer, long size, long count) {
+        OpenFile file = files.get(pFile);
+        if (size == 0) return 0;
+        long items = Math.min(count, (file.asset.size() - file.position) / size);
+        memCopy(memAddress(file.asset.getData()) + file.position, pBuffer, items * size);
+        file.position += items * size;
+        return items;
+    }
+
+    private static int seek(long pFile, long offset, int origin) {
+        OpenFile file = files.get(pFile);
+        long position = switch (origin) {
+            case aiOrigin_SET -> offset;
+            case aiOrigin_CUR -> file.position + offset;
+            case aiOrigin_END -> file.asset.size() + offset;
+            default -> -1;
+        };
+        if (position < 0 || position > file.asset.size()) return aiReturn_FAILURE;
+        file.position = position;
+        return aiReturn_SUCCESS;
+    }
+
+    private static void close(long pFileIO, long pFile) {
+        OpenFile file = files.remove(pFile);
+        if (file != null) file.asset.close();
+        AIFile.create(pFile).free();
+    }
+
+}
@@ -1,5 +1,6 @@
 package engine.graph.model;
 
+import engine.graph.texture.TextureCache;
 import org.joml.Vector4f;
 
 import java.util.ArrayList;
@@ -16,6 +17,7 @@ public class Material {
     private List<Mesh> meshes;
     private String texturePath;
     private String normalMapPath;
+    private TextureCache textureCache;
 
     public Material() {
         ambientColor = DEFAULT_COLOR;
@@ -26,6 +28,22 @@ public class Material {
 
     public void cleanup() {
         meshes.forEach(Mesh::cleanup);
+        releaseTextures();
+    }
+
+    // holds a cache reference to each texture this material samples until cleanup
+    public void acquireTextures(TextureCache textureCache) {
+        releaseTextures();
+        this.textureCache = textureCache;
+        textureCache.acquire(texturePath);
+        textureCache.acquire(normalMapPath);
+    }
+
+    private void releaseTextures() {
+        if (textureCache == null) return;
+        textureCache.release(texturePath);
+        textureCache.release(normalMapPath);
+        textureCache = null;
     }
 
     public Vector4f getAmbientColor() { return ambientColor; }
@@ -1,5 +1,7 @@
 package engine.graph.model;
 
+import engine.Backends;
+import engine.telemetry.ResourceRegistry;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL30;
 
@@ -16,7 +18,11 @@ public class Mesh {
 
     private int numVertices;
     private int vaoID;
+    private boolean skinned;
+    // around the model-space origin, which entities are positioned by
+    private float boundingRadius;
     private List<Integer> vboIDList;
+    private long resourceID;
 
     public Mesh(MeshData data) {
         this(data.positions, data.texcoords, data.indices, data.normals, data.tangents, data.bitangents, data.boneIndices, data.weights);
@@ -33,6 +39,15 @@ public class Mesh {
     private void initGL(float[] positions, float[] texcoords, int[] indices, float[] normals, float[] tangents, float[] bitangents, int[] boneIndices, float[] weights) {
         this.numVertices = indices.length;
         vboIDList = new ArrayList<>();
+        for (float weight : weights) {
+            if (weight > 0.0f) { skinned = true; break; }
+        }
+        float radiusSquared = 0.0f;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            radiusSquared = Math.max(radiusSquared, positions[i] * positions[i] + positions[i + 1] * positions[i + 1] + positions[i + 2] * positions[i + 2]);
+        }
+        boundingRadius = (float) Math.sqrt(radiusSquared);
+        if (!Backends.hasGL()) return;
 
         vaoID = glGenVertexArrays();
         glBindVertexArray(vaoID);
@@ -124,15 +139,21 @@ public class Mesh {
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
 
+        long bytes = 4L * (positions.length + normals.length + tangents.length + bitangents.length + texcoords.length + weights.length + boneIndices.length + indices.length);
+        resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.MESH, "vao " + vaoID + ", " + indices.length + " indices", bytes, 0);
 
     }
 
     public void cleanup() {
+        if (!Backends.hasGL()) return;
         vboIDList.forEach(GL30::glDeleteBuffers);
         glDeleteVertexArrays(vaoID);
+        ResourceRegistry.release(resourceID);
     }
 
     public int getNumVertices() { return numVertices; }
+    public boolean isSkinned() { return skinned; }
+    public float getBoundingRadius() { return boundingRadius; }
     public final int getVaoID() { return vaoID; }
 
 }
@@ -11,6 +11,7 @@ public class Model {
     private List<Entity> entities;
     private List<Material> materials;
     private List<Animation> animations;
+    private float boundingRadius = -1.0f;
 
     public Model(String id, List<Material> materials, List<Animation> animations) {
         this.id = id;
@@ -28,6 +29,17 @@ public class Model {
     public List<Material> getMaterials() { return materials; }
     public List<Animation> getAnimations() { return animations; }
 
+    // unscaled; covers every mesh of every material, computed on first use
+    public float getBoundingRadius() {
+        if (boundingRadius < 0.0f) {
+            boundingRadius = 0.0f;
+            for (Material material : materials) {
+                for (Mesh mesh : material.getMeshes()) boundingRadius = Math.max(boundingRadius, mesh.getBoundingRadius());
+            }
+        }
+        return boundingRadius;
+    }
+
     public record AnimatedFrame(Matrix4f[] boneMatrices) {}
     public record Animation(String name, double duration, List<AnimatedFrame> frames) {}
 
@@ -0,0 +1,210 @@
+package engine.graph.render;
+
+import engine.graph.shader.ProgramBinaryCache;
+import engine.graph.shader.ShaderProgram;
+import engine.graph.shader.Uniforms;
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.Telemetry;
+import org.joml.Vector2f;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL30.*;
+
+public class DynamicResolution {
+
+    private static final int SAMPLES = 4;
+
+    // exponential smoothing of the measured frame time
+    private static final float SMOOTHING = 0.1f;
+    // only scale back up once there is this much headroom below the target
+    private static final float HEADROOM = 0.85f;
+    // scale changes take a few frames to show up in the gpu timings
+    private static final int ADJUST_INTERVAL = 8;
+    private static final float MAX_STEP = 0.05f;
+
+    private final float minScale;
+    private final float maxScale;
+    private final float targetFrameMillis;
+    private final boolean multisample;
+
+    private final int fboID;
+    private final int resolveFboID;
+    private final int colorTextureID;
+    private final int colorBufferID;
+    private final int depthBufferID;
+
+    private final ShaderProgram upscaleProgram;
+    private final Uniforms uniforms;
+    private final int emptyVaoID;
+    private final Vector2f uvScale;
+    private final Vector2f uvClamp;
+
+    private int bufferWidth;
+    private int bufferHeight;
+    private int scaledWidth = 1;
+    private int scaledHeight = 1;
+    private float scale;
+    private float smoothedMillis;
+    private float gpuMillis;
+    private float cpuMillis;
+    private int frame;
+    private final long resourceID;
+
+    public DynamicResolution(float minScale, float maxScale, float targetFrameMillis, boolean multisample, ProgramBinaryCache binaryCache) {
+        this.minScale = Math.max(0.1f, Math.min(minScale, maxScale));
+        this.maxScale = Math.max(this.minScale, maxScale);
+        this.targetFrameMillis = targetFrameMillis;
+        this.multisample = multisample;
+        scale = this.maxScale;
+        smoothedMillis = targetFrameMillis;
+        cpuMillis = -1.0f;
+
+        fboID = glGenFramebuffers();
+        resolveFboID = multisample ? glGenFramebuffers() : 0;
+        colorTextureID = glGenTextures();
+        colorBufferID = multisample ? glGenRenderbuffers() : 0;
+        depthBufferID = glGenRenderbuffers();
+
+        List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
+        shaderModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/deferred/fullscreen.vs", GL_VERTEX_SHADER));
+        shaderModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/upscale/upscale.fs", GL_FRAGMENT_SHADER));
+        upscaleProgram = new ShaderProgram(shaderModuleDataList, "", binaryCache);
+        uniforms = new Uniforms(upscaleProgram.getProgramID());
+        uniforms.createUniform("colorSampler");
+        uniforms.createUniform("uvScale");
+        uniforms.createUniform("uvClamp");
+        emptyVaoID = glGenVertexArrays();
+        uvScale = new Vector2f();
+        uvClamp = new Vector2f();
+        gpuMillis = -1.0f;
+        resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.RENDER_TARGET, "dynamic resolution target", 0, 0);
+    }
+
+    public void cleanup() {
+        glDeleteFramebuffers(fboID);
+        if (resolveFboID != 0) glDeleteFramebuffers(resolveFboID);
+        glDeleteTextures(colorTextureID);
+        if (colorBufferID != 0) glDeleteRenderbuffers(colorBufferID);
+        glDeleteRenderbuffers(depthBufferID);
+        glDeleteVertexArrays(emptyVaoID);
+        upscaleProgram.cleanup();
+        ResourceRegistry.release(resourceID);
+    }
+
+    // binds the offscreen target sized for the current scale; the scene renders into its lower-left corner
+    public void begin(GLState glState, int width, int height) {
+        int requiredWidth = Math.max(1, (int) Math.ceil(width * maxScale));
+        int requiredHeight = Math.max(1, (int) Math.ceil(height * maxScale));
+        if (requiredWidth != bufferWidth || requiredHeight != bufferHeight) {
+            allocate(requiredWidth, requiredHeight);
+            glState.invalidate();
+        }
+
+        scaledWidth = Math.max(1, Math.min(bufferWidth, Math.round(width * scale)));
+        scaledHeight = Math.max(1, Math.min(bufferHeight, Math.round(height * scale)));
+
+        glState.bindFramebuffer(fboID);
+        glViewport(0, 0, scaledWidth, scaledHeight);
+    }
+
+    // resolves the scaled frame and stretches it over the window; cpuMillis is the engine's last measured frame time and gpuMillis the
+    // latest measured gpu frame time, either negative if unknown
+    public void end(GLState glState, int width, int height, float cpuMillis, float gpuMillis) {
+        if (multisample) {
+            glState.bindReadFramebuffer(fboID);
+            glState.bindDrawFramebuffer(resolveFboID);
+            glBlitFramebuffer(0, 0, scaledWidth, scaledHeight, 0, 0, scaledWidth, scaledHeight, GL_COLOR_BUFFER_BIT, GL_NEAREST);
+        }
+
+        glState.bindFramebuffer(0);
+        glViewport(0, 0, width, height);
+        glState.disable(GL_DEPTH_TEST);
+        glState.disable(GL_BLEND);
+        glState.useProgram(upscaleProgram.getProgramID());
+        glState.bindVertexArray(emptyVaoID);
+        glState.bindTexture(0, colorTextureID);
+
+        uniforms.setUniform("colorSampler", 0);
+        uniforms.setUniform("uvScale", uvScale.set((float) scaledWidth / bufferWidth, (float) scaledHeight / bufferHeight));
+        uniforms.setUniform("uvClamp", uvClamp.set((scaledWidth - 0.5f) / bufferWidth, (scaledHeight - 0.5f) / bufferHeight));
+        glDrawArrays(GL_TRIANGLES, 0, 3);
+        Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+        glState.enable(GL_DEPTH_TEST);
+
+        this.cpuMillis = cpuMillis;
+        this.gpuMillis = gpuMillis;
+        frame++;
+        adjust();
+    }
+
+    private void adjust() {
+        // whichever side is the bottleneck drives the scale
+        float sample = Math.max(cpuMillis, gpuMillis);
+        smoothedMillis += (sample - smoothedMillis) * SMOOTHING;
+        if (frame % ADJUST_INTERVAL != 0) return;
+
+        // shading cost follows pixel count, which grows with the square of the scale
+        float desired = scale;
+        if (smoothedMillis > targetFrameMillis) desired = scale * (float) Math.sqrt(targetFrameMillis / smoothedMillis);
+        else if (smoothedMillis < targetFrameMillis * HEADROOM) desired = scale * (float) Math.sqrt(targetFrameMillis * HEADROOM / Math.max(smoothedMillis, 0.001f));
+
+        desired = Math.max(scale - MAX_STEP, Math.min(desired, scale + MAX_STEP));
+        scale = Math.max(minScale, Math.min(desired, maxScale));
+    }
+
+    private void allocate(int width, int height) {
+        bufferWidth = width;
+        bufferHeight = height;
+
+        glBindTexture(GL_TEXTURE_2D, colorTextureID);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        glBindRenderbuffer(GL_RENDERBUFFER, depthBufferID);
+        if (multisample) glRenderbufferStorageMultisample(GL_RENDERBUFFER, SAMPLES, GL_DEPTH_COMPONENT24, width, height);
+        else glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+
+        glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        if (multisample) {
+            glBindRenderbuffer(GL_RENDERBUFFER, colorBufferID);
+            glRenderbufferStorageMultisample(GL_RENDERBUFFER, SAMPLES, GL_RGBA8, width, height);
+            glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, colorBufferID);
+        }
+        else glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colorTextureID, 0);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthBufferID);
+        checkStatus();
+
+        if (multisample) {
+            glBindFramebuffer(GL_FRAMEBUFFER, resolveFboID);
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colorTextureID, 0);
+            checkStatus();
+        }
+
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+
+        // rgba8 resolve texture, plus rgba8 color and 32-bit padded depth per sample
+        long pixels = (long) width * height;
+        ResourceRegistry.resize(resourceID, pixels * 4 + pixels * (multisample ? SAMPLES * 8 : 4), 0);
+    }
+
+    private static void checkStatus() {
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) throw new RuntimeException("Dynamic resolution framebuffer incomplete: 0x" + Integer.toHexString(status));
+    }
+
+    public float getScale() { return scale; }
+    public int getScaledWidth() { return scaledWidth; }
+    public int getScaledHeight() { return scaledHeight; }
+    public float getFrameMillis() { return smoothedMillis; }
+    public float getGpuMillis() { return gpuMillis; }
+    public float getCpuMillis() { return cpuMillis; }
+
+}
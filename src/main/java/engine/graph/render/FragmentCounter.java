@@ -0,0 +1,42 @@
+package engine.graph.render;
+
+import static org.lwjgl.opengl.GL15.*;
+
+public class FragmentCounter {
+
+    // results are read a few frames late so the query never stalls the pipeline
+    private static final int FRAMES_IN_FLIGHT = 3;
+
+    private final int[] queries;
+    private final boolean[] pending;
+    private int frame;
+    private long samples;
+
+    public FragmentCounter() {
+        queries = new int[FRAMES_IN_FLIGHT];
+        pending = new boolean[FRAMES_IN_FLIGHT];
+        glGenQueries(queries);
+        samples = -1;
+    }
+
+    public void cleanup() {
+        glDeleteQueries(queries);
+    }
+
+    public void begin() {
+        int slot = frame % FRAMES_IN_FLIGHT;
+        if (pending[slot] && glGetQueryObjecti(queries[slot], GL_QUERY_RESULT_AVAILABLE) == GL_TRUE) {
+            samples = glGetQueryObjecti(queries[slot], GL_QUERY_RESULT) & 0xFFFFFFFFL;
+        }
+        glBeginQuery(GL_SAMPLES_PASSED, queries[slot]);
+    }
+
+    public void end() {
+        glEndQuery(GL_SAMPLES_PASSED);
+        pending[frame % FRAMES_IN_FLIGHT] = true;
+        frame++;
+    }
+
+    public long getSamples() { return samples; }
+
+}
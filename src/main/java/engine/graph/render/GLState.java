@@ -0,0 +1,216 @@
+package engine.graph.render;
+
+import engine.graph.render.capture.FrameCapture;
+import engine.telemetry.Telemetry;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL30.*;
+
+public class GLState {
+
+    public static final int MAX_TEXTURE_UNITS = 16;
+
+    private static final int UNKNOWN = -1;
+    private static final int[] TRACKED_CAPABILITIES = { GL_BLEND, GL_DEPTH_TEST, GL_CULL_FACE, GL_MULTISAMPLE, GL_SCISSOR_TEST };
+
+    private final int[] textures;
+    private final int[] capabilities;
+    private int program;
+    private int activeUnit;
+    private int vao;
+    private int readFramebuffer;
+    private int drawFramebuffer;
+    private int blendEquation;
+    private int blendSrc;
+    private int blendDst;
+    private int cullFace;
+    private int depthFunc;
+    private int depthMask;
+    private int colorMask;
+
+    private int issuedCalls;
+    private int skippedCalls;
+    private int lastIssuedCalls;
+    private int lastSkippedCalls;
+
+    public GLState() {
+        textures = new int[MAX_TEXTURE_UNITS];
+        capabilities = new int[TRACKED_CAPABILITIES.length];
+        invalidate();
+    }
+
+    public void beginFrame() {
+        lastIssuedCalls = issuedCalls;
+        lastSkippedCalls = skippedCalls;
+        issuedCalls = 0;
+        skippedCalls = 0;
+    }
+
+    public void invalidate() {
+        Arrays.fill(textures, UNKNOWN);
+        Arrays.fill(capabilities, UNKNOWN);
+        program = UNKNOWN;
+        activeUnit = UNKNOWN;
+        vao = UNKNOWN;
+        readFramebuffer = UNKNOWN;
+        drawFramebuffer = UNKNOWN;
+        blendEquation = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        cullFace = UNKNOWN;
+        depthFunc = UNKNOWN;
+        depthMask = UNKNOWN;
+        colorMask = UNKNOWN;
+    }
+
+    public void useProgram(int programID) {
+        if (program == programID) { skipped(); return; }
+        glUseProgram(programID);
+        FrameCapture.command(FrameCapture.USE_PROGRAM, programID);
+        program = programID;
+        issued();
+    }
+
+    public void activeTexture(int unit) {
+        if (activeUnit == unit) { skipped(); return; }
+        glActiveTexture(GL_TEXTURE0 + unit);
+        FrameCapture.command(FrameCapture.ACTIVE_TEXTURE, unit);
+        activeUnit = unit;
+        issued();
+    }
+
+    public void bindTexture(int unit, int textureID) {
+        bindTexture(unit, GL_TEXTURE_2D, textureID);
+    }
+
+    // every target shares the unit's cache slot; texture names are unique, so a stale slot only costs a redundant bind
+    public void bindTexture(int unit, int target, int textureID) {
+        if (textures[unit] == textureID) { skipped(); return; }
+        activeTexture(unit);
+        glBindTexture(target, textureID);
+        FrameCapture.command(target == GL_TEXTURE_2D_ARRAY ? FrameCapture.BIND_TEXTURE_ARRAY : FrameCapture.BIND_TEXTURE, unit, textureID);
+        textures[unit] = textureID;
+        issued();
+        Telemetry.count(Telemetry.Counter.TEXTURE_BINDS);
+    }
+
+    public void bindVertexArray(int vaoID) {
+        if (vao == vaoID) { skipped(); return; }
+        glBindVertexArray(vaoID);
+        FrameCapture.command(FrameCapture.BIND_VERTEX_ARRAY, vaoID);
+        vao = vaoID;
+        issued();
+    }
+
+    public void bindFramebuffer(int fboID) {
+        if (readFramebuffer == fboID && drawFramebuffer == fboID) { skipped(); return; }
+        glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        readFramebuffer = fboID;
+        drawFramebuffer = fboID;
+        issued();
+    }
+
+    public void bindReadFramebuffer(int fboID) {
+        if (readFramebuffer == fboID) { skipped(); return; }
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, fboID);
+        readFramebuffer = fboID;
+        issued();
+    }
+
+    public void bindDrawFramebuffer(int fboID) {
+        if (drawFramebuffer == fboID) { skipped(); return; }
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, fboID);
+        drawFramebuffer = fboID;
+        issued();
+    }
+
+    public void enable(int capability) { setCapability(capability, true); }
+    public void disable(int capability) { setCapability(capability, false); }
+
+    public void setCapability(int capability, boolean enabled) {
+        int index = capabilityIndex(capability);
+        int state = enabled ? 1 : 0;
+        if (index >= 0 && capabilities[index] == state) { skipped(); return; }
+        if (enabled) glEnable(capability);
+        else glDisable(capability);
+        FrameCapture.command(enabled ? FrameCapture.ENABLE : FrameCapture.DISABLE, capability);
+        if (index >= 0) capabilities[index] = state;
+        issued();
+    }
+
+    public void blendEquation(int mode) {
+        if (blendEquation == mode) { skipped(); return; }
+        glBlendEquation(mode);
+        FrameCapture.command(FrameCapture.BLEND_EQUATION, mode);
+        blendEquation = mode;
+        issued();
+    }
+
+    public void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst) { skipped(); return; }
+        glBlendFunc(src, dst);
+        FrameCapture.command(FrameCapture.BLEND_FUNC, src, dst);
+        blendSrc = src;
+        blendDst = dst;
+        issued();
+    }
+
+    public void cullFace(int mode) {
+        if (cullFace == mode) { skipped(); return; }
+        glCullFace(mode);
+        FrameCapture.command(FrameCapture.CULL_FACE, mode);
+        cullFace = mode;
+        issued();
+    }
+
+    public void depthFunc(int func) {
+        if (depthFunc == func) { skipped(); return; }
+        glDepthFunc(func);
+        FrameCapture.command(FrameCapture.DEPTH_FUNC, func);
+        depthFunc = func;
+        issued();
+    }
+
+    public void depthMask(boolean write) {
+        int state = write ? 1 : 0;
+        if (depthMask == state) { skipped(); return; }
+        glDepthMask(write);
+        FrameCapture.command(FrameCapture.DEPTH_MASK, state);
+        depthMask = state;
+        issued();
+    }
+
+    public void colorMask(boolean write) {
+        int state = write ? 1 : 0;
+        if (colorMask == state) { skipped(); return; }
+        glColorMask(write, write, write, write);
+        FrameCapture.command(FrameCapture.COLOR_MASK, state);
+        colorMask = state;
+        issued();
+    }
+
+    public void recordSkipped() { skipped(); }
+
+    // the per-frame totals also go to telemetry, so the exporters and the benchmark report the calls avoided
+    private void issued() {
+        issuedCalls++;
+        Telemetry.count(Telemetry.Counter.STATE_CALLS);
+    }
+
+    private void skipped() {
+        skippedCalls++;
+        Telemetry.count(Telemetry.Counter.STATE_CALLS_SKIPPED);
+    }
+
+    public int getIssuedCalls() { return lastIssuedCalls; }
+    public int getSkippedCalls() { return lastSkippedCalls; }
+
+    private static int capabilityIndex(int capability) {
+        for (int i = 0; i < TRACKED_CAPABILITIES.length; i++) {
+            if (TRACKED_CAPABILITIES[i] == capability) return i;
+        }
+        return -1;
+    }
+
+}
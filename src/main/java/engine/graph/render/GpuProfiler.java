@@ -0,0 +1,236 @@
+package engine.graph.render;
+
+import engine.graph.model.Material;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL33.*;
+
+public class GpuProfiler {
+
+    // results are read a few frames late so the queries never stall the pipeline
+    private static final int FRAMES_IN_FLIGHT = 4;
+    private static final int MAX_DEPTH = 16;
+
+    private final boolean supported;
+    private final boolean batches;
+    private final int windowSize;
+
+    private final List<String> names;
+    private final List<Map<Material, Integer>> batchScopes;
+    private int[] parents;
+    private float[][] windows;
+    private int[] windowCounts;
+    private int[] windowHeads;
+    private float[] windowSums;
+    private float[] lastMillis;
+    private long[] frameNanos;
+    private boolean[] frameHit;
+    private final float[] sortScratch;
+
+    // per in-flight frame: one query per timed segment and the scope it belongs to
+    private final int[][] queries;
+    private final int[][] segmentScopes;
+    private final int[] segmentCounts;
+
+    private final int[] stack;
+    private int depth;
+    private int slot;
+    private long frame;
+    private int droppedFrames;
+
+    public GpuProfiler(int windowSize, boolean batches) {
+        GLCapabilities caps = GL.getCapabilities();
+        supported = caps.OpenGL33 || caps.GL_ARB_timer_query;
+        this.batches = batches;
+        this.windowSize = windowSize;
+
+        names = new ArrayList<>();
+        batchScopes = new ArrayList<>();
+        parents = new int[0];
+        windows = new float[0][];
+        windowCounts = new int[0];
+        windowHeads = new int[0];
+        windowSums = new float[0];
+        lastMillis = new float[0];
+        frameNanos = new long[0];
+        frameHit = new boolean[0];
+        sortScratch = new float[windowSize];
+
+        queries = new int[FRAMES_IN_FLIGHT][0];
+        segmentScopes = new int[FRAMES_IN_FLIGHT][0];
+        segmentCounts = new int[FRAMES_IN_FLIGHT];
+        stack = new int[MAX_DEPTH];
+    }
+
+    public void cleanup() {
+        if (!supported) return;
+        for (int[] pool : queries) glDeleteQueries(pool);
+    }
+
+    public int register(String name) {
+        return register(name, -1);
+    }
+
+    public int register(String name, int parent) {
+        int scope = names.size();
+        names.add(name);
+        batchScopes.add(null);
+
+        int capacity = scope + 1;
+        parents = Arrays.copyOf(parents, capacity);
+        windows = Arrays.copyOf(windows, capacity);
+        windowCounts = Arrays.copyOf(windowCounts, capacity);
+        windowHeads = Arrays.copyOf(windowHeads, capacity);
+        windowSums = Arrays.copyOf(windowSums, capacity);
+        lastMillis = Arrays.copyOf(lastMillis, capacity);
+        frameNanos = Arrays.copyOf(frameNanos, capacity);
+        frameHit = Arrays.copyOf(frameHit, capacity);
+
+        parents[scope] = parent;
+        windows[scope] = new float[windowSize];
+        lastMillis[scope] = -1.0f;
+        return scope;
+    }
+
+    // batch scopes are created the first time a material is drawn within a pass
+    public int batchScope(int parent, Material material) {
+        Map<Material, Integer> scopes = batchScopes.get(parent);
+        if (scopes == null) {
+            scopes = new IdentityHashMap<>();
+            batchScopes.set(parent, scopes);
+        }
+        Integer scope = scopes.get(material);
+        if (scope == null) {
+            scope = register(names.get(parent) + "/" + material.getTexturePath(), parent);
+            scopes.put(material, scope);
+        }
+        return scope;
+    }
+
+    public boolean isBatchProfiling() { return supported && batches; }
+
+    public void beginFrame() {
+        if (!supported) return;
+        slot = (int) (frame % FRAMES_IN_FLIGHT);
+        resolve(slot);
+        segmentCounts[slot] = 0;
+        depth = 0;
+    }
+
+    public void endFrame() {
+        if (!supported) return;
+        while (depth > 0) end();
+        frame++;
+    }
+
+    // scopes may nest; the enclosing query is split around the inner one because GL_TIME_ELAPSED queries cannot overlap
+    public void begin(int scope) {
+        if (!supported) return;
+        if (depth > 0) glEndQuery(GL_TIME_ELAPSED);
+        stack[depth++] = scope;
+        startSegment(scope);
+    }
+
+    public void end() {
+        if (!supported || depth == 0) return;
+        glEndQuery(GL_TIME_ELAPSED);
+        depth--;
+        if (depth > 0) startSegment(stack[depth - 1]);
+    }
+
+    private void startSegment(int scope) {
+        int count = segmentCounts[slot];
+        if (count == queries[slot].length) {
+            int capacity = Math.max(16, count * 2);
+            int[] pool = Arrays.copyOf(queries[slot], capacity);
+            int[] fresh = new int[capacity - count];
+            glGenQueries(fresh);
+            System.arraycopy(fresh, 0, pool, count, fresh.length);
+            queries[slot] = pool;
+            segmentScopes[slot] = Arrays.copyOf(segmentScopes[slot], capacity);
+        }
+        glBeginQuery(GL_TIME_ELAPSED, queries[slot][count]);
+        segmentScopes[slot][count] = scope;
+        segmentCounts[slot] = count + 1;
+    }
+
+    private void resolve(int slot) {
+        int count = segmentCounts[slot];
+        if (count == 0) return;
+
+        // queries complete in order, so the last one being ready means the whole frame is
+        if (glGetQueryObjecti(queries[slot][count - 1], GL_QUERY_RESULT_AVAILABLE) != GL_TRUE) {
+            droppedFrames++;
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            long nanos = glGetQueryObjecti64(queries[slot][i], GL_QUERY_RESULT);
+            for (int scope = segmentScopes[slot][i]; scope >= 0; scope = parents[scope]) {
+                frameNanos[scope] += nanos;
+                frameHit[scope] = true;
+            }
+        }
+
+        for (int scope = 0; scope < frameHit.length; scope++) {
+            if (!frameHit[scope]) continue;
+            record(scope, frameNanos[scope] / 1_000_000.0f);
+            frameNanos[scope] = 0;
+            frameHit[scope] = false;
+        }
+    }
+
+    private void record(int scope, float millis) {
+        float[] window = windows[scope];
+        int head = windowHeads[scope];
+        if (windowCounts[scope] == windowSize) windowSums[scope] -= window[head];
+        else windowCounts[scope]++;
+        window[head] = millis;
+        windowSums[scope] += millis;
+        windowHeads[scope] = (head + 1) % windowSize;
+        lastMillis[scope] = millis;
+    }
+
+    public boolean isSupported() { return supported; }
+    public int getScopeCount() { return names.size(); }
+    public String getName(int scope) { return names.get(scope); }
+    public int getParent(int scope) { return parents[scope]; }
+    public int getDroppedFrames() { return droppedFrames; }
+    public float getLastMillis(int scope) { return lastMillis[scope]; }
+
+    public float getAverageMillis(int scope) {
+        int count = windowCounts[scope];
+        return count > 0 ? windowSums[scope] / count : -1.0f;
+    }
+
+    public float getPercentileMillis(int scope, float percentile) {
+        int count = windowCounts[scope];
+        if (count == 0) return -1.0f;
+        System.arraycopy(windows[scope], 0, sortScratch, 0, count);
+        Arrays.sort(sortScratch, 0, count);
+        int index = Math.min(count - 1, Math.max(0, (int) Math.ceil(percentile * count) - 1));
+        return sortScratch[index];
+    }
+
+    // one line per scope with results, as the log exporter prints them
+    public void appendReport(StringBuilder sb) {
+        for (int scope = 0; scope < names.size(); scope++) {
+            if (windowCounts[scope] == 0) continue;
+            sb.append("[gpu] ").append(names.get(scope))
+              .append(" avg=").append(getAverageMillis(scope))
+              .append(" p50=").append(getPercentileMillis(scope, 0.5f))
+              .append(" p95=").append(getPercentileMillis(scope, 0.95f))
+              .append(" max=").append(getPercentileMillis(scope, 1.0f))
+              .append(" ms\n");
+        }
+    }
+
+}
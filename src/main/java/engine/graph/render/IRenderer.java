@@ -10,4 +10,19 @@ public interface IRenderer {
 
     void render(Scene scene);
 
+    default void resize(int width, int height) {}
+
+    default void warmUp(Scene scene) {}
+
+    // the engine's measured cpu time of the previous frame, for renderers that scale their work to a frame budget
+    default void setCpuFrameMillis(float millis) {}
+
+    // null unless the renderer was created with a gpu profiler
+    default GpuProfiler getGpuProfiler() { return null; }
+
+    // the deferred renderer keeps this default, since its passes render through g-buffer framebuffers the capture format does not record
+    default void captureNextFrame(String filePath) {
+        System.err.println(getClass().getSimpleName() + " does not support frame capture.");
+    }
+
 }
@@ -1,37 +1,60 @@
 package engine.graph.render;
 
 import engine.Window;
+import engine.graph.render.capture.FrameCapture;
 import engine.graph.render.scene.SceneRenderer;
 import engine.graph.render.skybox.SkyBoxRender;
+import engine.graph.shader.ProgramBinaryCache;
 import engine.scene.Scene;
 
-import org.lwjgl.opengl.GL;
 import static org.lwjgl.opengl.GL13.*;
 
 public class Render implements IRenderer {
 
+    private final RenderContext context;
     public final SceneRenderer sceneRenderer;
     private final SkyBoxRender skyBoxRender;
+    private final GLState glState;
+    private final boolean depthPrePass;
+    private final FragmentCounter fragmentCounter;
+    private final DynamicResolution dynamicResolution;
+    private final GpuProfiler gpuProfiler;
+    private final int frameScope, depthPrePassScope, opaqueScope, skyBoxScope, transparentScope;
+
+    private String capturePath;
 
     private int width = 1;
     private int height = 1;
+    private float cpuFrameMillis = -1.0f;
+
+    public Render(Window.WindowOptions opts) {
+        // dynamic resolution reads its gpu frame time from the profiler
+        context = new RenderContext(opts, opts.gpuProfiler || opts.dynamicResolution);
+        sceneRenderer = context.getSceneRenderer();
+        skyBoxRender = context.getSkyBoxRender();
+        glState = context.getGLState();
+        glState.enable(GL_BLEND);
+        glState.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+
+        depthPrePass = opts.depthPrePass;
+        fragmentCounter = opts.fragmentStats ? new FragmentCounter() : null;
 
-    public Render() {
-        GL.createCapabilities();
-        glEnable(GL_MULTISAMPLE);
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-
-        sceneRenderer = new SceneRenderer();
-        skyBoxRender = new SkyBoxRender();
+        float targetFrameMillis = opts.targetFrameMillis > 0 ? opts.targetFrameMillis : 1000.0f / (opts.fps > 0 ? opts.fps : 60);
+        dynamicResolution = opts.dynamicResolution ? new DynamicResolution(opts.minResolutionScale, opts.maxResolutionScale, targetFrameMillis, opts.antiAliasing, context.getProgramBinaryCache()) : null;
+
+        gpuProfiler = context.getGpuProfiler();
+        frameScope = context.getFrameScope();
+        depthPrePassScope = context.registerScope("depthPrePass");
+        opaqueScope = context.registerScope("opaque");
+        skyBoxScope = context.registerScope("skybox");
+        transparentScope = context.registerScope("transparent");
+        if (gpuProfiler != null) sceneRenderer.setProfiler(gpuProfiler, opaqueScope, transparentScope);
     }
 
     public void cleanup() {
-        sceneRenderer.cleanup();
-        skyBoxRender.cleanup();
+        context.cleanup();
+        if (fragmentCounter != null) fragmentCounter.cleanup();
+        if (dynamicResolution != null) dynamicResolution.cleanup();
     }
 
     public void resize(int width, int height) {
@@ -39,17 +62,71 @@ public class Render implements IRenderer {
         this.height = height;
     }
 
+    public void setCpuFrameMillis(float millis) { cpuFrameMillis = millis; }
+
     public void update(float diffTimeMillis, int width, int height) {
         this.resize(width, height);
         sceneRenderer.update(diffTimeMillis, width, height);
     }
 
+    public GLState getGLState() { return glState; }
+    public ProgramBinaryCache getProgramBinaryCache() { return context.getProgramBinaryCache(); }
+    public GpuProfiler getGpuProfiler() { return gpuProfiler; }
+    public float getResolutionScale() { return dynamicResolution != null ? dynamicResolution.getScale() : 1.0f; }
+    public long getShadedSamples() { return fragmentCounter != null ? fragmentCounter.getSamples() : -1; }
+
+    public void captureNextFrame(String filePath) { capturePath = filePath; }
+
+    public void warmUp(Scene scene) {
+        sceneRenderer.warmUp(scene);
+    }
+
     public void render(Scene scene) {
+        context.beginFrame(scene);
+        if (dynamicResolution != null) dynamicResolution.begin(glState, width, height);
+        else glViewport(0, 0, width, height);
+        // with dynamic resolution the scene is drawn into the scaled target, which the capture records as its whole frame
+        int viewportWidth = dynamicResolution != null ? dynamicResolution.getScaledWidth() : width;
+        int viewportHeight = dynamicResolution != null ? dynamicResolution.getScaledHeight() : height;
+        // forgetting the cached state makes the capture re-issue, and so record, every binding it relies on
+        if (capturePath != null) {
+            glState.invalidate();
+            FrameCapture.begin(viewportWidth, viewportHeight);
+        }
+        FrameCapture.viewport(0, 0, viewportWidth, viewportHeight);
+        glState.depthMask(true);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        glViewport(0, 0, width, height);
+        FrameCapture.command(FrameCapture.CLEAR, GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
+        sceneRenderer.prepare(scene, depthPrePass);
+        if (depthPrePass) {
+            context.beginScope(depthPrePassScope);
+            sceneRenderer.renderDepthPrePass(scene);
+            context.endScope();
+        }
+
+        if (fragmentCounter != null) fragmentCounter.begin();
+        context.beginScope(opaqueScope);
+        sceneRenderer.renderOpaque(scene, depthPrePass);
+        context.endScope();
+        context.beginScope(skyBoxScope);
         skyBoxRender.render(scene);
-        sceneRenderer.render(scene);
+        context.endScope();
+        context.beginScope(transparentScope);
+        sceneRenderer.renderTransparent(scene);
+        context.endScope();
+        if (fragmentCounter != null) fragmentCounter.end();
+
+        // the capture ends before the upscale, which draws into another framebuffer the format has no command for
+        if (capturePath != null) {
+            FrameCapture.end(capturePath);
+            if (dynamicResolution != null) System.out.println("Captured the scene at the dynamic resolution of " + viewportWidth + "x" + viewportHeight + ", without the upscale to " + width + "x" + height + ".");
+            capturePath = null;
+            glState.invalidate();
+        }
+
+        if (dynamicResolution != null) dynamicResolution.end(glState, width, height, cpuFrameMillis, gpuProfiler.getLastMillis(frameScope));
+        context.endFrame();
     }
 
 }
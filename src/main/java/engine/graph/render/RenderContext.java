@@ -0,0 +1,81 @@
+package engine.graph.render;
+
+import engine.Window;
+import engine.graph.render.scene.SceneRenderer;
+import engine.graph.render.skybox.SkyBoxRender;
+import engine.graph.shader.ProgramBinaryCache;
+import engine.scene.Scene;
+
+import org.lwjgl.opengl.GL;
+import static org.lwjgl.opengl.GL13.*;
+
+// what the forward and deferred renderers share: the gl state cache, the scene and skybox renderers drawing into it, and the optional
+// gpu profiler with its frame scope, so a change to the queues or their setup is made once
+public class RenderContext {
+
+    private static final int PROFILER_WINDOW = 120;
+
+    private final GLState glState;
+    private final ProgramBinaryCache binaryCache;
+    private final SceneRenderer sceneRenderer;
+    private final SkyBoxRender skyBoxRender;
+    private final GpuProfiler gpuProfiler;
+    private final int frameScope;
+
+    public RenderContext(Window.WindowOptions opts, boolean profile) {
+        GL.createCapabilities();
+        glState = new GLState();
+        glState.enable(GL_MULTISAMPLE);
+        glState.enable(GL_DEPTH_TEST);
+        glState.enable(GL_CULL_FACE);
+        glState.cullFace(GL_BACK);
+
+        binaryCache = opts.shaderCacheDir != null ? new ProgramBinaryCache(opts.shaderCacheDir) : null;
+        sceneRenderer = new SceneRenderer(glState, binaryCache);
+        skyBoxRender = new SkyBoxRender(glState, binaryCache);
+
+        gpuProfiler = profile ? new GpuProfiler(PROFILER_WINDOW, opts.gpuProfilerBatches) : null;
+        frameScope = gpuProfiler != null ? gpuProfiler.register("frame") : -1;
+    }
+
+    public void cleanup() {
+        sceneRenderer.cleanup();
+        skyBoxRender.cleanup();
+        if (gpuProfiler != null) gpuProfiler.cleanup();
+    }
+
+    // a pass timed inside the frame; -1 without a profiler
+    public int registerScope(String name) {
+        return gpuProfiler != null ? gpuProfiler.register(name, frameScope) : -1;
+    }
+
+    public void beginFrame(Scene scene) {
+        glState.beginFrame();
+        // finished texture uploads bind their textures directly
+        if (scene.getTextureCache().update() > 0) glState.invalidate();
+        if (gpuProfiler != null) {
+            gpuProfiler.beginFrame();
+            gpuProfiler.begin(frameScope);
+        }
+    }
+
+    public void endFrame() {
+        if (gpuProfiler != null) gpuProfiler.endFrame();
+    }
+
+    public void beginScope(int scope) {
+        if (gpuProfiler != null) gpuProfiler.begin(scope);
+    }
+
+    public void endScope() {
+        if (gpuProfiler != null) gpuProfiler.end();
+    }
+
+    public GLState getGLState() { return glState; }
+    public ProgramBinaryCache getProgramBinaryCache() { return binaryCache; }
+    public SceneRenderer getSceneRenderer() { return sceneRenderer; }
+    public SkyBoxRender getSkyBoxRender() { return skyBoxRender; }
+    public GpuProfiler getGpuProfiler() { return gpuProfiler; }
+    public int getFrameScope() { return frameScope; }
+
+}
@@ -0,0 +1,236 @@
+package engine.graph.render;
+
+import engine.graph.model.Material;
+import engine.graph.model.Mesh;
+import engine.scene.model.Entity;
+
+import java.util.Arrays;
+
+public class RenderQueue {
+
+    // keys hold dense per-frame indices from a KeyIndex rather than gl names, which are not bounded by the field widths; an index
+    // past its field saturates to the field's last value, so those entries only lose state batching, never their draw state
+    // keys sort as unsigned, since both layouts reach the sign bit
+    public static final int MAX_PROGRAMS = 1 << 8;
+    public static final int MAX_TEXTURES = 1 << 10;
+    // the narrower of the two layouts' vao fields
+    public static final int MAX_VAOS = 1 << 12;
+
+    // state-first key layout (msb -> lsb): program (8) | diffuse texture (10) | normal texture (10) | vao (16) | depth (20)
+    private static final int PROGRAM_SHIFT = 56;
+    private static final int DIFFUSE_SHIFT = 46;
+    private static final int NORMAL_SHIFT = 36;
+    private static final int VAO_SHIFT = 20;
+    private static final long DEPTH_MASK = (1L << 20) - 1;
+
+    // depth-first key layout (msb -> lsb): depth (24) | program (8) | diffuse texture (10) | normal texture (10) | vao (12)
+    private static final int DF_DEPTH_SHIFT = 40;
+    private static final int DF_PROGRAM_SHIFT = 32;
+    private static final int DF_DIFFUSE_SHIFT = 22;
+    private static final int DF_NORMAL_SHIFT = 12;
+    private static final long DF_DEPTH_MASK = (1L << 24) - 1;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_BUCKETS = 1 << RADIX_BITS;
+    private static final int RADIX_PASSES = Long.SIZE / RADIX_BITS;
+
+    private long[] keys;
+    private int[] order;
+    private long[] scratchKeys;
+    private int[] scratchOrder;
+    private final int[] histograms;
+
+    private Material[] materials;
+    private Mesh[] meshes;
+    private Entity[] entities;
+    private int size;
+
+    public RenderQueue() {
+        this(256);
+    }
+
+    public RenderQueue(int initialCapacity) {
+        keys = new long[initialCapacity];
+        order = new int[initialCapacity];
+        scratchKeys = new long[initialCapacity];
+        scratchOrder = new int[initialCapacity];
+        histograms = new int[RADIX_PASSES * RADIX_BUCKETS];
+        materials = new Material[initialCapacity];
+        meshes = new Mesh[initialCapacity];
+        entities = new Entity[initialCapacity];
+    }
+
+    public static long makeKey(int programIndex, int diffuseIndex, int normalIndex, int vaoIndex, float depth) {
+        float d = Math.max(0.0f, Math.min(depth, 1.0f));
+        long quantizedDepth = (long) (d * DEPTH_MASK) & DEPTH_MASK;
+        return ((long) field(programIndex, MAX_PROGRAMS) << PROGRAM_SHIFT)
+             | ((long) field(diffuseIndex, MAX_TEXTURES) << DIFFUSE_SHIFT)
+             | ((long) field(normalIndex, MAX_TEXTURES) << NORMAL_SHIFT)
+             | ((long) field(vaoIndex, MAX_VAOS) << VAO_SHIFT)
+             | quantizedDepth;
+    }
+
+    public static long makeDepthFirstKey(int programIndex, int diffuseIndex, int normalIndex, int vaoIndex, float depth, boolean backToFront) {
+        float d = Math.max(0.0f, Math.min(depth, 1.0f));
+        if (backToFront) d = 1.0f - d;
+        long quantizedDepth = (long) (d * DF_DEPTH_MASK) & DF_DEPTH_MASK;
+        return (quantizedDepth << DF_DEPTH_SHIFT)
+             | ((long) field(programIndex, MAX_PROGRAMS) << DF_PROGRAM_SHIFT)
+             | ((long) field(diffuseIndex, MAX_TEXTURES) << DF_DIFFUSE_SHIFT)
+             | ((long) field(normalIndex, MAX_TEXTURES) << DF_NORMAL_SHIFT)
+             | field(vaoIndex, MAX_VAOS);
+    }
+
+    private static int field(int index, int limit) {
+        if (index < 0) throw new IllegalArgumentException("Negative render key index " + index);
+        return Math.min(index, limit - 1);
+    }
+
+    public void clear() {
+        Arrays.fill(materials, 0, size, null);
+        Arrays.fill(meshes, 0, size, null);
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+    public void add(long key, Material material, Mesh mesh, Entity entity) {
+        if (size == keys.length) grow();
+        keys[size] = key;
+        order[size] = size;
+        materials[size] = material;
+        meshes[size] = mesh;
+        entities[size] = entity;
+        size++;
+    }
+
+    public void sort() {
+        if (size < 2) return;
+        Arrays.fill(histograms, 0);
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            for (int pass = 0; pass < RADIX_PASSES; pass++) {
+                histograms[pass * RADIX_BUCKETS + (int) ((key >>> (pass * RADIX_BITS)) & 0xFF)]++;
+            }
+        }
+
+        long[] srcKeys = keys, dstKeys = scratchKeys;
+        int[] srcOrder = order, dstOrder = scratchOrder;
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int base = pass * RADIX_BUCKETS;
+            int shift = pass * RADIX_BITS;
+
+            // every key shares this byte; the pass would not reorder anything
+            if (histograms[base + (int) ((srcKeys[0] >>> shift) & 0xFF)] == size) continue;
+
+            int offset = 0;
+            for (int b = 0; b < RADIX_BUCKETS; b++) {
+                int count = histograms[base + b];
+                histograms[base + b] = offset;
+                offset += count;
+            }
+
+            for (int i = 0; i < size; i++) {
+                long key = srcKeys[i];
+                int dst = histograms[base + (int) ((key >>> shift) & 0xFF)]++;
+                dstKeys[dst] = key;
+                dstOrder[dst] = srcOrder[i];
+            }
+
+            long[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            int[] to = srcOrder; srcOrder = dstOrder; dstOrder = to;
+        }
+
+        keys = srcKeys;
+        scratchKeys = dstKeys;
+        order = srcOrder;
+        scratchOrder = dstOrder;
+    }
+
+    public int size() { return size; }
+    public long getKey(int i) { return keys[i]; }
+    public Material getMaterial(int i) { return materials[order[i]]; }
+    public Mesh getMesh(int i) { return meshes[order[i]]; }
+    public Entity getEntity(int i) { return entities[order[i]]; }
+
+    // maps gl names to dense indices in first-seen order; the scene is walked in the same order every frame, so indices stay stable
+    // while its contents do. clearing bumps a generation instead of wiping the table, and the table only grows, so steady frames do
+    // not allocate
+    public static class KeyIndex {
+
+        private int[] names;
+        private int[] indices;
+        private int[] generations;
+        private int generation = 1;
+        private int count;
+
+        public KeyIndex() {
+            this(64);
+        }
+
+        public KeyIndex(int initialCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1);
+            names = new int[capacity];
+            indices = new int[capacity];
+            generations = new int[capacity];
+        }
+
+        public void clear() {
+            generation++;
+            count = 0;
+        }
+
+        public int index(int name) {
+            int mask = names.length - 1;
+            for (int slot = mix(name) & mask; ; slot = (slot + 1) & mask) {
+                if (generations[slot] != generation) {
+                    if ((count + 1) * 2 > names.length) {
+                        grow();
+                        return index(name);
+                    }
+                    names[slot] = name;
+                    indices[slot] = count;
+                    generations[slot] = generation;
+                    return count++;
+                }
+                if (names[slot] == name) return indices[slot];
+            }
+        }
+
+        public int size() { return count; }
+
+        private void grow() {
+            int[] oldNames = names, oldIndices = indices, oldGenerations = generations;
+            names = new int[oldNames.length * 2];
+            indices = new int[oldNames.length * 2];
+            generations = new int[oldNames.length * 2];
+            int mask = names.length - 1;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldGenerations[i] != generation) continue;
+                int slot = mix(oldNames[i]) & mask;
+                while (generations[slot] == generation) slot = (slot + 1) & mask;
+                names[slot] = oldNames[i];
+                indices[slot] = oldIndices[i];
+                generations[slot] = generation;
+            }
+        }
+
+        // gl hands out names sequentially, so spread them before masking
+        private static int mix(int name) {
+            int h = name * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, keys.length * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        order = Arrays.copyOf(order, capacity);
+        scratchKeys = new long[capacity];
+        scratchOrder = new int[capacity];
+        materials = Arrays.copyOf(materials, capacity);
+        meshes = Arrays.copyOf(meshes, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+    }
+
+}
@@ -0,0 +1,321 @@
+package engine.graph.render.capture;
+
+import org.lwjgl.BufferUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL32.*;
+
+// rebuilds a FrameCapture's resources in the current context and re-issues its commands; names are remapped, nothing goes through GLState
+public class CapturePlayer {
+
+    private final int width;
+    private final int height;
+    private final List<Integer> programs;
+    private final List<Integer> vertexArrays;
+    private final List<Integer> buffers;
+    private final List<Integer> textures;
+
+    // decoded once so playback is a tight loop over arrays: each command is its op followed by its int arguments
+    private int[] code;
+    private int codeLength;
+    private final float[] floats;
+    private final FloatBuffer uniformBuffer;
+    private final int commandCount;
+    private int drawCount;
+
+    public CapturePlayer(String filePath) {
+        programs = new ArrayList<>();
+        vertexArrays = new ArrayList<>();
+        buffers = new ArrayList<>();
+        textures = new ArrayList<>();
+        code = new int[1024];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != FrameCapture.MAGIC) throw new RuntimeException("\"" + filePath + "\" is not a frame capture.");
+            int version = in.readShort();
+            if (version != FrameCapture.VERSION) throw new RuntimeException("Unsupported frame capture version " + version + " in \"" + filePath + "\".");
+            width = in.readInt();
+            height = in.readInt();
+
+            Map<Integer, Integer> programMap = new HashMap<>();
+            int programCount = in.readInt();
+            for (int i = 0; i < programCount; i++) {
+                int capturedID = in.readInt();
+                programMap.put(capturedID, readProgram(in));
+            }
+
+            Map<Integer, Integer> vaoMap = new HashMap<>();
+            int vaoCount = in.readInt();
+            for (int i = 0; i < vaoCount; i++) {
+                int capturedID = in.readInt();
+                vaoMap.put(capturedID, readVertexArray(in));
+            }
+            glBindVertexArray(0);
+
+            Map<Integer, Integer> textureMap = new HashMap<>();
+            int textureCount = in.readInt();
+            for (int i = 0; i < textureCount; i++) {
+                int capturedID = in.readInt();
+                textureMap.put(capturedID, readTexture(in));
+            }
+            glBindTexture(GL_TEXTURE_2D, 0);
+
+            int arrayCount = in.readInt();
+            for (int i = 0; i < arrayCount; i++) {
+                int capturedID = in.readInt();
+                textureMap.put(capturedID, readTextureArray(in));
+            }
+            glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+
+            commandCount = in.readInt();
+            List<Float> floatList = new ArrayList<>();
+            Map<String, Integer> locations = new HashMap<>();
+            int maxUniformFloats = 16;
+            for (int i = 0; i < commandCount; i++) {
+                int op = in.readUnsignedByte();
+                switch (op) {
+                    case FrameCapture.USE_PROGRAM -> emit(op, programMap.getOrDefault(in.readInt(), 0));
+                    case FrameCapture.BIND_VERTEX_ARRAY -> emit(op, vaoMap.getOrDefault(in.readInt(), 0));
+                    case FrameCapture.BIND_TEXTURE, FrameCapture.BIND_TEXTURE_ARRAY -> {
+                        int unit = in.readInt();
+                        emit(op, unit, textureMap.getOrDefault(in.readInt(), 0));
+                    }
+                    case FrameCapture.ACTIVE_TEXTURE, FrameCapture.ENABLE, FrameCapture.DISABLE, FrameCapture.BLEND_EQUATION, FrameCapture.CULL_FACE,
+                         FrameCapture.DEPTH_FUNC, FrameCapture.DEPTH_MASK, FrameCapture.COLOR_MASK, FrameCapture.CLEAR -> emit(op, in.readInt());
+                    case FrameCapture.BLEND_FUNC -> emit(op, in.readInt(), in.readInt());
+                    case FrameCapture.VIEWPORT, FrameCapture.DRAW_ELEMENTS -> {
+                        emit(op, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                        if (op == FrameCapture.DRAW_ELEMENTS) drawCount++;
+                    }
+                    case FrameCapture.UNIFORM_INT -> {
+                        int location = location(locations, programMap.getOrDefault(in.readInt(), 0), in.readUTF());
+                        emit(op, location, in.readInt());
+                    }
+                    case FrameCapture.UNIFORM_FLOAT, FrameCapture.UNIFORM_MATRIX -> {
+                        int location = location(locations, programMap.getOrDefault(in.readInt(), 0), in.readUTF());
+                        int count = in.readUnsignedShort();
+                        emit(op, location, count, floatList.size());
+                        for (int f = 0; f < count; f++) floatList.add(in.readFloat());
+                        maxUniformFloats = Math.max(maxUniformFloats, count);
+                    }
+                    default -> throw new RuntimeException("Unknown command " + op + " in frame capture \"" + filePath + "\".");
+                }
+            }
+            floats = new float[floatList.size()];
+            for (int i = 0; i < floats.length; i++) floats[i] = floatList.get(i);
+            uniformBuffer = BufferUtils.createFloatBuffer(maxUniformFloats);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read frame capture \"" + filePath + "\".", e);
+        }
+    }
+
+    // width and height from the header, without touching gl
+    public static int[] readSize(String filePath) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != FrameCapture.MAGIC) throw new RuntimeException("\"" + filePath + "\" is not a frame capture.");
+            in.readShort();
+            return new int[] { in.readInt(), in.readInt() };
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read frame capture \"" + filePath + "\".", e);
+        }
+    }
+
+    public void cleanup() {
+        for (int programID : programs) glDeleteProgram(programID);
+        for (int vaoID : vertexArrays) glDeleteVertexArrays(vaoID);
+        for (int bufferID : buffers) glDeleteBuffers(bufferID);
+        for (int textureID : textures) glDeleteTextures(textureID);
+    }
+
+    // issues the captured frame once; callers decide whether to wait for the gpu
+    public void play() {
+        int[] code = this.code;
+        int pc = 0;
+        while (pc < codeLength) {
+            int op = code[pc];
+            switch (op) {
+                case FrameCapture.USE_PROGRAM -> glUseProgram(code[pc + 1]);
+                case FrameCapture.ACTIVE_TEXTURE -> glActiveTexture(GL_TEXTURE0 + code[pc + 1]);
+                case FrameCapture.BIND_TEXTURE -> glBindTexture(GL_TEXTURE_2D, code[pc + 2]);
+                case FrameCapture.BIND_TEXTURE_ARRAY -> glBindTexture(GL_TEXTURE_2D_ARRAY, code[pc + 2]);
+                case FrameCapture.BIND_VERTEX_ARRAY -> glBindVertexArray(code[pc + 1]);
+                case FrameCapture.ENABLE -> glEnable(code[pc + 1]);
+                case FrameCapture.DISABLE -> glDisable(code[pc + 1]);
+                case FrameCapture.BLEND_EQUATION -> glBlendEquation(code[pc + 1]);
+                case FrameCapture.BLEND_FUNC -> glBlendFunc(code[pc + 1], code[pc + 2]);
+                case FrameCapture.CULL_FACE -> glCullFace(code[pc + 1]);
+                case FrameCapture.DEPTH_FUNC -> glDepthFunc(code[pc + 1]);
+                case FrameCapture.DEPTH_MASK -> glDepthMask(code[pc + 1] != 0);
+                case FrameCapture.COLOR_MASK -> {
+                    boolean write = code[pc + 1] != 0;
+                    glColorMask(write, write, write, write);
+                }
+                case FrameCapture.CLEAR -> glClear(code[pc + 1]);
+                case FrameCapture.VIEWPORT -> glViewport(code[pc + 1], code[pc + 2], code[pc + 3], code[pc + 4]);
+                case FrameCapture.DRAW_ELEMENTS -> glDrawElements(code[pc + 1], code[pc + 2], code[pc + 3], code[pc + 4]);
+                case FrameCapture.UNIFORM_INT -> glUniform1i(code[pc + 1], code[pc + 2]);
+                case FrameCapture.UNIFORM_FLOAT -> uniformFloat(code[pc + 1], code[pc + 2], code[pc + 3]);
+                case FrameCapture.UNIFORM_MATRIX -> {
+                    uniformBuffer.clear();
+                    uniformBuffer.put(floats, code[pc + 3], code[pc + 2]).flip();
+                    glUniformMatrix4fv(code[pc + 1], false, uniformBuffer);
+                }
+            }
+            pc += 1 + argumentCount(op);
+        }
+    }
+
+    private void uniformFloat(int location, int count, int offset) {
+        switch (count) {
+            case 1 -> glUniform1f(location, floats[offset]);
+            case 2 -> glUniform2f(location, floats[offset], floats[offset + 1]);
+            case 3 -> glUniform3f(location, floats[offset], floats[offset + 1], floats[offset + 2]);
+            default -> glUniform4f(location, floats[offset], floats[offset + 1], floats[offset + 2], floats[offset + 3]);
+        }
+    }
+
+    private static int argumentCount(int op) {
+        return switch (op) {
+            case FrameCapture.BIND_TEXTURE, FrameCapture.BIND_TEXTURE_ARRAY, FrameCapture.BLEND_FUNC, FrameCapture.UNIFORM_INT -> 2;
+            case FrameCapture.UNIFORM_FLOAT, FrameCapture.UNIFORM_MATRIX -> 3;
+            case FrameCapture.VIEWPORT, FrameCapture.DRAW_ELEMENTS -> 4;
+            default -> 1;
+        };
+    }
+
+    private void emit(int... values) {
+        if (codeLength + values.length > code.length) code = Arrays.copyOf(code, Math.max(code.length * 2, codeLength + values.length));
+        System.arraycopy(values, 0, code, codeLength, values.length);
+        codeLength += values.length;
+    }
+
+    private static int location(Map<String, Integer> locations, int programID, String name) {
+        return locations.computeIfAbsent(programID + ":" + name, k -> glGetUniformLocation(programID, name));
+    }
+
+    private int readProgram(DataInputStream in) throws IOException {
+        int programID = glCreateProgram();
+        programs.add(programID);
+        int shaderCount = in.readInt();
+        int[] shaders = new int[shaderCount];
+        for (int i = 0; i < shaderCount; i++) {
+            int type = in.readInt();
+            byte[] source = new byte[in.readInt()];
+            in.readFully(source);
+            shaders[i] = glCreateShader(type);
+            glShaderSource(shaders[i], new String(source, StandardCharsets.UTF_8));
+            glCompileShader(shaders[i]);
+            if (glGetShaderi(shaders[i], GL_COMPILE_STATUS) == 0) throw new RuntimeException("Failed to compile captured shader: " + glGetShaderInfoLog(shaders[i], 1024));
+            glAttachShader(programID, shaders[i]);
+        }
+        glLinkProgram(programID);
+        if (glGetProgrami(programID, GL_LINK_STATUS) == 0) throw new RuntimeException("Failed to link captured program: " + glGetProgramInfoLog(programID, 1024));
+        for (int shader : shaders) {
+            glDetachShader(programID, shader);
+            glDeleteShader(shader);
+        }
+        return programID;
+    }
+
+    private int readVertexArray(DataInputStream in) throws IOException {
+        int vaoID = glGenVertexArrays();
+        vertexArrays.add(vaoID);
+        glBindVertexArray(vaoID);
+
+        int attributes = in.readInt();
+        for (int i = 0; i < attributes; i++) {
+            int index = in.readInt();
+            int size = in.readInt();
+            int type = in.readInt();
+            boolean normalized = in.readBoolean();
+            int stride = in.readInt();
+            long pointer = in.readLong();
+            int bufferID = readBuffer(in, GL_ARRAY_BUFFER);
+            if (bufferID == 0) continue;
+            glEnableVertexAttribArray(index);
+            glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+        }
+        readBuffer(in, GL_ELEMENT_ARRAY_BUFFER);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        return vaoID;
+    }
+
+    private int readBuffer(DataInputStream in, int target) throws IOException {
+        int size = in.readInt();
+        if (size == 0) return 0;
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        ByteBuffer data = BufferUtils.createByteBuffer(size);
+        data.put(bytes).flip();
+
+        int bufferID = glGenBuffers();
+        buffers.add(bufferID);
+        glBindBuffer(target, bufferID);
+        glBufferData(target, data, GL_STATIC_DRAW);
+        return bufferID;
+    }
+
+    private int readTexture(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        int minFilter = in.readInt();
+        int magFilter = in.readInt();
+        int wrapS = in.readInt();
+        int wrapT = in.readInt();
+        byte[] bytes = new byte[width * height * 4];
+        in.readFully(bytes);
+        ByteBuffer pixels = BufferUtils.createByteBuffer(bytes.length);
+        pixels.put(bytes).flip();
+
+        int textureID = glGenTextures();
+        textures.add(textureID);
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, magFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, wrapS);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, wrapT);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        glGenerateMipmap(GL_TEXTURE_2D);
+        return textureID;
+    }
+
+    private int readTextureArray(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        int layers = in.readInt();
+        int minFilter = in.readInt();
+        int magFilter = in.readInt();
+        byte[] bytes = new byte[width * height * 4 * layers];
+        in.readFully(bytes);
+        ByteBuffer pixels = BufferUtils.createByteBuffer(bytes.length);
+        pixels.put(bytes).flip();
+
+        int textureID = glGenTextures();
+        textures.add(textureID);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, textureID);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, magFilter);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, width, height, layers, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+        return textureID;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getCommandCount() { return commandCount; }
+    public int getDrawCount() { return drawCount; }
+
+}
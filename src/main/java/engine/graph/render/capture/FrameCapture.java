@@ -0,0 +1,278 @@
+package engine.graph.render.capture;
+
+import engine.graph.shader.ShaderProgram;
+import org.lwjgl.BufferUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL32.*;
+
+// records every gl command the forward passes issue during one frame, plus the programs, buffers and textures they touch
+public class FrameCapture {
+
+    static final int MAGIC = 0x54445243; // "TDRC"
+    static final int VERSION = 2;
+    static final int MAX_ATTRIBUTES = 16;
+
+    public static final int USE_PROGRAM = 1;
+    public static final int ACTIVE_TEXTURE = 2;
+    public static final int BIND_TEXTURE = 3;
+    public static final int BIND_VERTEX_ARRAY = 4;
+    public static final int ENABLE = 5;
+    public static final int DISABLE = 6;
+    public static final int BLEND_EQUATION = 7;
+    public static final int BLEND_FUNC = 8;
+    public static final int CULL_FACE = 9;
+    public static final int DEPTH_FUNC = 10;
+    public static final int DEPTH_MASK = 11;
+    public static final int COLOR_MASK = 12;
+    public static final int UNIFORM_INT = 13;
+    public static final int UNIFORM_FLOAT = 14;
+    public static final int UNIFORM_MATRIX = 15;
+    public static final int DRAW_ELEMENTS = 16;
+    public static final int CLEAR = 17;
+    public static final int VIEWPORT = 18;
+    public static final int BIND_TEXTURE_ARRAY = 19;
+
+    // checked on every hooked call, so kept as a plain static rather than behind an instance
+    private static FrameCapture active;
+
+    private final ByteArrayOutputStream commandBytes;
+    private final DataOutputStream commands;
+    private final Set<Integer> programs;
+    private final Set<Integer> textures;
+    private final Set<Integer> textureArrays;
+    private final Set<Integer> vertexArrays;
+    private int commandCount;
+    private int drawCount;
+    private int width;
+    private int height;
+
+    private FrameCapture() {
+        commandBytes = new ByteArrayOutputStream(1 << 16);
+        commands = new DataOutputStream(commandBytes);
+        programs = new LinkedHashSet<>();
+        textures = new LinkedHashSet<>();
+        textureArrays = new LinkedHashSet<>();
+        vertexArrays = new LinkedHashSet<>();
+    }
+
+    public static boolean isRecording() { return active != null; }
+
+    // callers must invalidate their cached gl state first so the capture starts from explicit state
+    public static void begin(int width, int height) {
+        if (active != null) throw new IllegalStateException("A frame capture is already recording.");
+        active = new FrameCapture();
+        active.width = width;
+        active.height = height;
+    }
+
+    // reads the referenced resources back from gl, so the same context must still be current; leaves arbitrary bindings behind
+    public static void end(String filePath) {
+        FrameCapture capture = active;
+        active = null;
+        if (capture == null) return;
+        try {
+            capture.write(filePath);
+            System.out.println("Captured " + capture.drawCount + " draws, " + capture.commandCount + " commands to \"" + filePath + "\".");
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write frame capture \"" + filePath + "\": " + e.getMessage());
+        }
+    }
+
+    public static void command(int op, int a) {
+        if (active == null) return;
+        active.record(op, 1, a, 0, 0, 0);
+        if (op == USE_PROGRAM) active.programs.add(a);
+        else if (op == BIND_VERTEX_ARRAY) active.vertexArrays.add(a);
+    }
+
+    public static void command(int op, int a, int b) {
+        if (active == null) return;
+        active.record(op, 2, a, b, 0, 0);
+        if (op == BIND_TEXTURE) active.textures.add(b);
+        else if (op == BIND_TEXTURE_ARRAY) active.textureArrays.add(b);
+    }
+
+    public static void viewport(int x, int y, int width, int height) {
+        if (active != null) active.record(VIEWPORT, 4, x, y, width, height);
+    }
+
+    public static void drawElements(int mode, int count, int type, long offset) {
+        if (active == null) return;
+        active.record(DRAW_ELEMENTS, 4, mode, count, type, (int) offset);
+        active.drawCount++;
+    }
+
+    public static void uniform(int programID, String name, int value) {
+        if (active == null) return;
+        try {
+            active.commands.writeByte(UNIFORM_INT);
+            active.commands.writeInt(programID);
+            active.commands.writeUTF(name);
+            active.commands.writeInt(value);
+            active.commandCount++;
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    // vectors and matrices; matrix arrays are recorded as consecutive 4x4 column-major blocks
+    public static void uniform(int programID, String name, boolean matrix, float... values) {
+        if (active == null) return;
+        try {
+            active.commands.writeByte(matrix ? UNIFORM_MATRIX : UNIFORM_FLOAT);
+            active.commands.writeInt(programID);
+            active.commands.writeUTF(name);
+            active.commands.writeShort(values.length);
+            for (float value : values) active.commands.writeFloat(value);
+            active.commandCount++;
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    private void record(int op, int argc, int a, int b, int c, int d) {
+        try {
+            commands.writeByte(op);
+            if (argc > 0) commands.writeInt(a);
+            if (argc > 1) commands.writeInt(b);
+            if (argc > 2) commands.writeInt(c);
+            if (argc > 3) commands.writeInt(d);
+            commandCount++;
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    private void write(String filePath) throws IOException {
+        File parent = new File(filePath).getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+
+            programs.remove(0);
+            out.writeInt(programs.size());
+            for (int programID : programs) {
+                List<ShaderProgram.ShaderSource> sources = ShaderProgram.getSources(programID);
+                if (sources == null) throw new IOException("No sources known for program " + programID);
+                out.writeInt(programID);
+                out.writeInt(sources.size());
+                for (ShaderProgram.ShaderSource source : sources) {
+                    out.writeInt(source.type());
+                    writeString(out, source.source());
+                }
+            }
+
+            vertexArrays.remove(0);
+            out.writeInt(vertexArrays.size());
+            for (int vaoID : vertexArrays) writeVertexArray(out, vaoID);
+            glBindVertexArray(0);
+
+            textures.remove(0);
+            out.writeInt(textures.size());
+            for (int textureID : textures) writeTexture(out, textureID);
+            glBindTexture(GL_TEXTURE_2D, 0);
+
+            textureArrays.remove(0);
+            out.writeInt(textureArrays.size());
+            for (int textureID : textureArrays) writeTextureArray(out, textureID);
+            glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+
+            out.writeInt(commandCount);
+            commandBytes.writeTo(out);
+        }
+    }
+
+    // the vao layout is queried from gl rather than taken from Mesh, so any vertex array the passes bind can be captured
+    private static void writeVertexArray(DataOutputStream out, int vaoID) throws IOException {
+        glBindVertexArray(vaoID);
+        out.writeInt(vaoID);
+
+        int enabled = 0;
+        for (int i = 0; i < MAX_ATTRIBUTES; i++) {
+            if (glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_ENABLED) == GL_TRUE) enabled++;
+        }
+        out.writeInt(enabled);
+        for (int i = 0; i < MAX_ATTRIBUTES; i++) {
+            if (glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_ENABLED) != GL_TRUE) continue;
+            out.writeInt(i);
+            out.writeInt(glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_SIZE));
+            out.writeInt(glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_TYPE));
+            out.writeBoolean(glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_NORMALIZED) == GL_TRUE);
+            out.writeInt(glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_STRIDE));
+            out.writeLong(glGetVertexAttribPointer(i, GL_VERTEX_ATTRIB_ARRAY_POINTER));
+            writeBuffer(out, GL_ARRAY_BUFFER, glGetVertexAttribi(i, GL_VERTEX_ATTRIB_ARRAY_BUFFER_BINDING));
+        }
+        writeBuffer(out, GL_ELEMENT_ARRAY_BUFFER, glGetInteger(GL_ELEMENT_ARRAY_BUFFER_BINDING));
+    }
+
+    private static void writeBuffer(DataOutputStream out, int target, int bufferID) throws IOException {
+        if (bufferID == 0) {
+            out.writeInt(0);
+            return;
+        }
+        // the element buffer binding belongs to the vao, so only the array target is rebound here
+        if (target == GL_ARRAY_BUFFER) glBindBuffer(GL_ARRAY_BUFFER, bufferID);
+        int size = glGetBufferParameteri(target, GL_BUFFER_SIZE);
+        ByteBuffer data = BufferUtils.createByteBuffer(size);
+        glGetBufferSubData(target, 0, data);
+        out.writeInt(size);
+        writeBytes(out, data);
+    }
+
+    private static void writeTexture(DataOutputStream out, int textureID) throws IOException {
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        int width = glGetTexLevelParameteri(GL_TEXTURE_2D, 0, GL_TEXTURE_WIDTH);
+        int height = glGetTexLevelParameteri(GL_TEXTURE_2D, 0, GL_TEXTURE_HEIGHT);
+        out.writeInt(textureID);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER));
+        out.writeInt(glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER));
+        out.writeInt(glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S));
+        out.writeInt(glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T));
+
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        writeBytes(out, pixels);
+    }
+
+    private static void writeTextureArray(DataOutputStream out, int textureID) throws IOException {
+        glBindTexture(GL_TEXTURE_2D_ARRAY, textureID);
+        int width = glGetTexLevelParameteri(GL_TEXTURE_2D_ARRAY, 0, GL_TEXTURE_WIDTH);
+        int height = glGetTexLevelParameteri(GL_TEXTURE_2D_ARRAY, 0, GL_TEXTURE_HEIGHT);
+        int layers = glGetTexLevelParameteri(GL_TEXTURE_2D_ARRAY, 0, GL_TEXTURE_DEPTH);
+        out.writeInt(textureID);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(layers);
+        out.writeInt(glGetTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER));
+        out.writeInt(glGetTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER));
+
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4 * layers);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glGetTexImage(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        writeBytes(out, pixels);
+    }
+
+    private static void writeBytes(DataOutputStream out, ByteBuffer data) throws IOException {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        out.write(bytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
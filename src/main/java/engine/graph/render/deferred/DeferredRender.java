@@ -0,0 +1,414 @@
+package engine.graph.render.deferred;
+
+import engine.Window;
+import engine.graph.model.*;
+import engine.graph.render.GLState;
+import engine.graph.render.GpuProfiler;
+import engine.graph.render.IRenderer;
+import engine.graph.render.RenderContext;
+import engine.graph.render.scene.SceneRenderer;
+import engine.graph.render.skybox.SkyBoxRender;
+import engine.graph.shader.ProgramBinaryCache;
+import engine.graph.shader.ShaderProgram;
+import engine.graph.shader.ShaderVariants;
+import engine.graph.shader.Uniforms;
+import engine.graph.texture.TextureCache;
+import engine.scene.Fog;
+import engine.scene.Scene;
+import engine.scene.light.*;
+import engine.scene.view.Projection;
+import engine.telemetry.Telemetry;
+import org.joml.*;
+
+import java.lang.Math;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL30.*;
+
+public class DeferredRender implements IRenderer {
+
+    private static final int LIGHT_DIRECTIONAL = 1;
+    private static final int LIGHT_POINT = 1 << 1;
+    private static final int LIGHT_SPOT = 1 << 2;
+    private static final String[] LIGHT_DEFINES = { "DIRECTIONAL_LIGHT", "POINT_LIGHT", "SPOT_LIGHT" };
+
+    private static final int COMPOSITE_FOG = 1;
+    private static final String[] COMPOSITE_DEFINES = { "FOG" };
+
+    // a light stops contributing once it falls below one 8-bit step
+    private static final float LIGHT_CUTOFF = 256.0f;
+
+    private final RenderContext context;
+    private final GLState glState;
+    private final SceneRenderer sceneRenderer;
+    private final SkyBoxRender skyBoxRender;
+    private final GBuffer gBuffer;
+    private final ShaderVariants geometryVariants;
+    private final SceneRenderer.Pass geometryPass;
+    private final ShaderVariants lightVariants;
+    private final ShaderVariants compositeVariants;
+    private final int emptyVaoID;
+    private final int geometryScope, lightScope, compositeScope, skyBoxScope, transparentScope;
+
+    private final Matrix4f invProjectionMatrix;
+    private final Vector4f aux;
+    private final Vector3f lightPosition;
+    private final Vector3f lightDirection;
+    private final Vector3f fogLightColor;
+    private final int[] scissor;
+
+    private int width = 1;
+    private int height = 1;
+
+    public DeferredRender(Window.WindowOptions opts) {
+        context = new RenderContext(opts, opts.gpuProfiler);
+        glState = context.getGLState();
+        sceneRenderer = context.getSceneRenderer();
+        skyBoxRender = context.getSkyBoxRender();
+        ProgramBinaryCache binaryCache = context.getProgramBinaryCache();
+        gBuffer = new GBuffer(Math.max(opts.width, 1), Math.max(opts.height, 1));
+
+        List<ShaderProgram.ShaderModuleData> geometryModules = new ArrayList<>();
+        geometryModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/scene/scene.vs", GL_VERTEX_SHADER));
+        geometryModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/deferred/gbuffer.fs", GL_FRAGMENT_SHADER));
+        geometryVariants = new ShaderVariants(geometryModules, new String[] { "NORMAL_MAP", "FOG", "SKINNING", "TEXTURE_ARRAY" }, this::createGeometryUniforms, binaryCache);
+        // fog is applied by the composite pass, not written into the g-buffer
+        geometryPass = new SceneRenderer.Pass(geometryVariants, this::uploadGeometryFrameUniforms, false);
+
+        List<ShaderProgram.ShaderModuleData> lightModules = new ArrayList<>();
+        lightModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/deferred/fullscreen.vs", GL_VERTEX_SHADER));
+        lightModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/deferred/light.fs", GL_FRAGMENT_SHADER));
+        lightVariants = new ShaderVariants(lightModules, LIGHT_DEFINES, this::createLightUniforms, binaryCache);
+        lightVariants.warmUp(LIGHT_DIRECTIONAL, LIGHT_POINT, LIGHT_SPOT);
+
+        List<ShaderProgram.ShaderModuleData> compositeModules = new ArrayList<>();
+        compositeModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/deferred/fullscreen.vs", GL_VERTEX_SHADER));
+        compositeModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/deferred/composite.fs", GL_FRAGMENT_SHADER));
+        compositeVariants = new ShaderVariants(compositeModules, COMPOSITE_DEFINES, this::createCompositeUniforms, binaryCache);
+
+        // core profile refuses to draw without a vertex array, even for attribute-less passes
+        emptyVaoID = glGenVertexArrays();
+
+        invProjectionMatrix = new Matrix4f();
+        aux = new Vector4f();
+        lightPosition = new Vector3f();
+        lightDirection = new Vector3f();
+        fogLightColor = new Vector3f();
+        scissor = new int[4];
+
+        geometryScope = context.registerScope("geometry");
+        lightScope = context.registerScope("lights");
+        compositeScope = context.registerScope("composite");
+        skyBoxScope = context.registerScope("skybox");
+        transparentScope = context.registerScope("transparent");
+        if (context.getGpuProfiler() != null) sceneRenderer.setProfiler(context.getGpuProfiler(), geometryScope, transparentScope);
+    }
+
+    public void cleanup() {
+        context.cleanup();
+        geometryVariants.cleanup();
+        lightVariants.cleanup();
+        compositeVariants.cleanup();
+        gBuffer.cleanup();
+        glDeleteVertexArrays(emptyVaoID);
+    }
+
+    public void resize(int width, int height) {
+        this.width = Math.max(width, 1);
+        this.height = Math.max(height, 1);
+    }
+
+    public void update(float diffTimeMillis, int width, int height) {
+        this.resize(width, height);
+        sceneRenderer.update(diffTimeMillis, width, height);
+    }
+
+    public GLState getGLState() { return glState; }
+    public ProgramBinaryCache getProgramBinaryCache() { return context.getProgramBinaryCache(); }
+    public GBuffer getGBuffer() { return gBuffer; }
+    public GpuProfiler getGpuProfiler() { return context.getGpuProfiler(); }
+
+    public void warmUp(Scene scene) {
+        sceneRenderer.warmUp(scene);
+        TextureCache textureCache = scene.getTextureCache();
+        for (Model model : scene.getModelMap().values()) {
+            for (Material material : model.getMaterials()) {
+                for (Mesh mesh : material.getMeshes()) geometryVariants.get(SceneRenderer.getFeatures(material, mesh, textureCache, 0));
+            }
+        }
+        compositeVariants.get(scene.getFog().getActive() ? COMPOSITE_FOG : 0);
+    }
+
+    public void render(Scene scene) {
+        context.beginFrame(scene);
+        // the g-buffer binds its textures and framebuffers directly when it is rebuilt
+        if (gBuffer.resize(width, height)) glState.invalidate();
+        glViewport(0, 0, width, height);
+
+        sceneRenderer.prepare(scene, true);
+        invProjectionMatrix.set(scene.getProjection().getMatrix()).invert();
+
+        context.beginScope(geometryScope);
+        renderGeometry(scene);
+        context.endScope();
+        context.beginScope(lightScope);
+        renderLights(scene);
+        context.endScope();
+        context.beginScope(compositeScope);
+        renderComposite(scene);
+        context.endScope();
+
+        context.beginScope(skyBoxScope);
+        skyBoxRender.render(scene);
+        context.endScope();
+        context.beginScope(transparentScope);
+        sceneRenderer.renderTransparent(scene);
+        context.endScope();
+
+        context.endFrame();
+    }
+
+    private void renderGeometry(Scene scene) {
+        glState.bindFramebuffer(gBuffer.getFboID());
+        glState.disable(GL_BLEND);
+        glState.depthFunc(GL_LESS);
+        glState.depthMask(true);
+        glState.colorMask(true);
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+        sceneRenderer.renderOpaque(scene, geometryPass);
+    }
+
+    private void uploadGeometryFrameUniforms(Scene scene, Uniforms u) {
+        u.setUniform("projectionMatrix", scene.getProjection().getMatrix());
+        u.setUniform("viewMatrix", scene.getCamera().getViewMatrix());
+        u.setUniform("texSampler", 0);
+        u.setUniform("normalTexSampler", 1);
+        AmbientLight ambientLight = scene.getSceneLights().getAmbient();
+        u.setUniform("ambientLight.factor", ambientLight.getIntensity());
+        u.setUniform("ambientLight.color", ambientLight.getColor());
+    }
+
+    private void renderLights(Scene scene) {
+        glState.bindFramebuffer(gBuffer.getLightFboID());
+        glState.disable(GL_DEPTH_TEST);
+        glState.depthMask(false);
+        glState.enable(GL_BLEND);
+        glState.blendEquation(GL_FUNC_ADD);
+        glState.blendFunc(GL_ONE, GL_ONE);
+        glState.bindVertexArray(emptyVaoID);
+        glState.bindTexture(0, gBuffer.getTextureID(GBuffer.ALBEDO));
+        glState.bindTexture(1, gBuffer.getTextureID(GBuffer.NORMAL));
+        glState.bindTexture(2, gBuffer.getTextureID(GBuffer.MATERIAL));
+        glState.bindTexture(3, gBuffer.getTextureID(GBuffer.DEPTH));
+
+        Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
+        SceneLights sceneLights = scene.getSceneLights();
+
+        DirectionalLight directionalLight = sceneLights.getDirectional();
+        if (directionalLight.getIntensity() > 0.0f) {
+            Uniforms u = useLightVariant(LIGHT_DIRECTIONAL);
+            aux.set(directionalLight.getDirection(), 0.0f).mul(viewMatrix);
+            lightDirection.set(aux.x, aux.y, aux.z);
+            u.setUniform("light.direction", lightDirection);
+            u.setUniform("light.color", directionalLight.getColor());
+            u.setUniform("light.intensity", directionalLight.getIntensity());
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+            Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+        }
+
+        glState.enable(GL_SCISSOR_TEST);
+        Matrix4f projectionMatrix = scene.getProjection().getMatrix();
+        List<PointLight> pointLights = sceneLights.getPoints();
+        for (int i = 0; i < pointLights.size(); i++) {
+            PointLight pointLight = pointLights.get(i);
+            if (!setupLight(pointLight, viewMatrix, projectionMatrix)) continue;
+            Uniforms u = useLightVariant(LIGHT_POINT);
+            uploadPointLight(u, pointLight);
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+            Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+        }
+
+        List<SpotLight> spotLights = sceneLights.getSpots();
+        for (int i = 0; i < spotLights.size(); i++) {
+            SpotLight spotLight = spotLights.get(i);
+            if (!setupLight(spotLight, viewMatrix, projectionMatrix)) continue;
+            Uniforms u = useLightVariant(LIGHT_SPOT);
+            uploadPointLight(u, spotLight);
+            aux.set(spotLight.getDirection(), 0.0f).mul(viewMatrix);
+            lightDirection.set(aux.x, aux.y, aux.z);
+            u.setUniform("light.direction", lightDirection);
+            u.setUniform("light.innerCutoff", spotLight.getInnerCutoff());
+            u.setUniform("light.outerCutoff", spotLight.getOuterCutoff());
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+            Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+        }
+        glState.disable(GL_SCISSOR_TEST);
+    }
+
+    private Uniforms useLightVariant(int type) {
+        ShaderVariants.Variant variant = lightVariants.get(type);
+        glState.useProgram(variant.program().getProgramID());
+        Uniforms u = variant.uniforms();
+        u.setUniform("invProjectionMatrix", invProjectionMatrix);
+        return u;
+    }
+
+    private void uploadPointLight(Uniforms u, PointLight pointLight) {
+        PointLight.Attenuation attenuation = pointLight.getAttenuation();
+        u.setUniform("light.position", lightPosition);
+        u.setUniform("light.color", pointLight.getColor());
+        u.setUniform("light.intensity", pointLight.getIntensity());
+        u.setUniform("light.attenuation.constant", attenuation.getConstant());
+        u.setUniform("light.attenuation.linear", attenuation.getLinear());
+        u.setUniform("light.attenuation.exponent", attenuation.getExponent());
+    }
+
+    // transforms the light into view space and scissors to its screen-space bounds; false if nothing would be lit
+    private boolean setupLight(PointLight light, Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        aux.set(light.getPosition(), 1.0f).mul(viewMatrix);
+        lightPosition.set(aux.x, aux.y, aux.z);
+
+        float radius = getLightRadius(light);
+        if (radius <= 0.0f) return false;
+        if (lightPosition.z - radius > -Projection.Z_NEAR) return false;
+
+        if (Float.isInfinite(radius) || lightPosition.z + radius > -Projection.Z_NEAR) {
+            glScissor(0, 0, width, height);
+            return true;
+        }
+
+        float minX = 1.0f, minY = 1.0f, maxX = -1.0f, maxY = -1.0f;
+        for (int corner = 0; corner < 8; corner++) {
+            aux.set(lightPosition.x + ((corner & 1) == 0 ? -radius : radius),
+                    lightPosition.y + ((corner & 2) == 0 ? -radius : radius),
+                    lightPosition.z + ((corner & 4) == 0 ? -radius : radius),
+                    1.0f).mul(projectionMatrix);
+            float x = aux.x / aux.w, y = aux.y / aux.w;
+            minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+        }
+        minX = Math.max(minX, -1.0f); minY = Math.max(minY, -1.0f);
+        maxX = Math.min(maxX, 1.0f); maxY = Math.min(maxY, 1.0f);
+        if (minX >= maxX || minY >= maxY) return false;
+
+        scissor[0] = (int) Math.floor((minX * 0.5f + 0.5f) * width);
+        scissor[1] = (int) Math.floor((minY * 0.5f + 0.5f) * height);
+        scissor[2] = (int) Math.ceil((maxX * 0.5f + 0.5f) * width) - scissor[0];
+        scissor[3] = (int) Math.ceil((maxY * 0.5f + 0.5f) * height) - scissor[1];
+        glScissor(scissor[0], scissor[1], scissor[2], scissor[3]);
+        return true;
+    }
+
+    // solves exponent * d^2 + linear * d + constant = cutoff * intensity * max(color) for d
+    private static float getLightRadius(PointLight light) {
+        PointLight.Attenuation attenuation = light.getAttenuation();
+        Vector3f color = light.getColor();
+        float peak = LIGHT_CUTOFF * light.getIntensity() * Math.max(color.x, Math.max(color.y, color.z));
+        float c = attenuation.getConstant() - peak;
+        if (c >= 0.0f) return 0.0f;
+
+        float e = attenuation.getExponent(), l = attenuation.getLinear();
+        if (e > 0.0f) return (-l + (float) Math.sqrt(l * l - 4.0f * e * c)) / (2.0f * e);
+        if (l > 0.0f) return -c / l;
+        return Float.POSITIVE_INFINITY;
+    }
+
+    private void renderComposite(Scene scene) {
+        glState.bindFramebuffer(0);
+        glState.disable(GL_BLEND);
+        glState.enable(GL_DEPTH_TEST);
+        glState.depthFunc(GL_ALWAYS);
+        glState.depthMask(true);
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+        Fog fog = scene.getFog();
+        ShaderVariants.Variant variant = compositeVariants.get(fog.getActive() ? COMPOSITE_FOG : 0);
+        glState.useProgram(variant.program().getProgramID());
+        Uniforms u = variant.uniforms();
+        u.setUniform("invProjectionMatrix", invProjectionMatrix);
+
+        SceneLights sceneLights = scene.getSceneLights();
+        DirectionalLight directionalLight = sceneLights.getDirectional();
+        fogLightColor.set(directionalLight.getColor()).mul(directionalLight.getIntensity()).add(sceneLights.getAmbient().getColor());
+        u.setUniform("fogLightColor", fogLightColor);
+        u.setUniform("fog.color", fog.getColor());
+        u.setUniform("fog.density", fog.getDensity());
+
+        glState.bindVertexArray(emptyVaoID);
+        glState.bindTexture(0, gBuffer.getTextureID(GBuffer.ACCUMULATION));
+        glState.bindTexture(1, gBuffer.getTextureID(GBuffer.DEPTH));
+        glDrawArrays(GL_TRIANGLES, 0, 3);
+        Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+
+        glState.depthFunc(GL_LESS);
+    }
+
+    public Uniforms createGeometryUniforms(ShaderProgram program) {
+        Uniforms u = new Uniforms(program.getProgramID());
+        u.createUniform("projectionMatrix");
+        u.createUniform("viewMatrix");
+        u.createUniform("modelMatrix");
+        u.createOptionalUniform("boneMatrices");
+
+        u.createUniform("texSampler");
+        u.createOptionalUniform("normalTexSampler");
+        u.createOptionalUniform("texLayer");
+        u.createOptionalUniform("normalTexLayer");
+        u.createUniform("billboard");
+
+        u.createUniform("material.ambient");
+        u.createUniform("material.diffuse");
+        u.createUniform("material.specular");
+        u.createUniform("material.glossiness");
+
+        u.createUniform("ambientLight.factor");
+        u.createUniform("ambientLight.color");
+        return u;
+    }
+
+    public Uniforms createLightUniforms(ShaderProgram program) {
+        Uniforms u = new Uniforms(program.getProgramID());
+        glUseProgram(program.getProgramID());
+        u.createUniform("albedoSampler");
+        u.createUniform("normalSampler");
+        u.createUniform("materialSampler");
+        u.createUniform("depthSampler");
+        u.createUniform("invProjectionMatrix");
+        // samplers never change, set them once at link time
+        u.setUniform("albedoSampler", 0);
+        u.setUniform("normalSampler", 1);
+        u.setUniform("materialSampler", 2);
+        u.setUniform("depthSampler", 3);
+
+        u.createOptionalUniform("light.position");
+        u.createOptionalUniform("light.direction");
+        u.createOptionalUniform("light.color");
+        u.createOptionalUniform("light.intensity");
+        u.createOptionalUniform("light.attenuation.constant");
+        u.createOptionalUniform("light.attenuation.linear");
+        u.createOptionalUniform("light.attenuation.exponent");
+        u.createOptionalUniform("light.innerCutoff");
+        u.createOptionalUniform("light.outerCutoff");
+        glState.invalidate();
+        return u;
+    }
+
+    public Uniforms createCompositeUniforms(ShaderProgram program) {
+        Uniforms u = new Uniforms(program.getProgramID());
+        glUseProgram(program.getProgramID());
+        u.createUniform("accumulationSampler");
+        u.createUniform("depthSampler");
+        u.setUniform("accumulationSampler", 0);
+        u.setUniform("depthSampler", 1);
+
+        u.createOptionalUniform("invProjectionMatrix");
+        u.createOptionalUniform("fogLightColor");
+        u.createOptionalUniform("fog.color");
+        u.createOptionalUniform("fog.density");
+        glState.invalidate();
+        return u;
+    }
+
+}
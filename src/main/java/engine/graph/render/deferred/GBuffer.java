@@ -0,0 +1,105 @@
+package engine.graph.render.deferred;
+
+import engine.telemetry.ResourceRegistry;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL30.*;
+
+public class GBuffer {
+
+    public static final int ALBEDO = 0;
+    public static final int NORMAL = 1;
+    public static final int MATERIAL = 2;
+    public static final int ACCUMULATION = 3;
+    public static final int DEPTH = 4;
+
+    // albedo rgb + unlit flag | octahedral normal | specular rgb + glossiness | ambient/light accumulation
+    private static final int[] INTERNAL_FORMATS = { GL_RGBA8, GL_RG16F, GL_RGBA8, GL_R11F_G11F_B10F };
+    private static final int[] FORMATS = { GL_RGBA, GL_RG, GL_RGBA, GL_RGB };
+    private static final int[] TYPES = { GL_UNSIGNED_BYTE, GL_HALF_FLOAT, GL_UNSIGNED_BYTE, GL_HALF_FLOAT };
+    // four 32-bit color targets plus 24-bit depth, which drivers pad to 32 bits
+    private static final int BYTES_PER_PIXEL = 4 * 4 + 4;
+
+    private final int fboID;
+    private final int lightFboID;
+    private final int[] textureIDs;
+    private int width;
+    private int height;
+    private final long resourceID;
+
+    public GBuffer(int width, int height) {
+        fboID = glGenFramebuffers();
+        lightFboID = glGenFramebuffers();
+        textureIDs = new int[INTERNAL_FORMATS.length + 1];
+        create(width, height);
+        resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.RENDER_TARGET, "g-buffer", (long) width * height * BYTES_PER_PIXEL, 0);
+    }
+
+    public void cleanup() {
+        glDeleteTextures(textureIDs);
+        glDeleteFramebuffers(fboID);
+        glDeleteFramebuffers(lightFboID);
+        ResourceRegistry.release(resourceID);
+    }
+
+    public boolean resize(int width, int height) {
+        if (width == this.width && height == this.height) return false;
+        glDeleteTextures(textureIDs);
+        create(width, height);
+        ResourceRegistry.resize(resourceID, (long) width * height * BYTES_PER_PIXEL, 0);
+        return true;
+    }
+
+    private void create(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        glGenTextures(textureIDs);
+        for (int i = 0; i < INTERNAL_FORMATS.length; i++) {
+            glBindTexture(GL_TEXTURE_2D, textureIDs[i]);
+            glTexImage2D(GL_TEXTURE_2D, 0, INTERNAL_FORMATS[i], width, height, 0, FORMATS[i], TYPES[i], (ByteBuffer) null);
+            setSamplerParameters();
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0 + i, GL_TEXTURE_2D, textureIDs[i], 0);
+        }
+
+        glBindTexture(GL_TEXTURE_2D, textureIDs[DEPTH]);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT24, width, height, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
+        setSamplerParameters();
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, textureIDs[DEPTH], 0);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            glDrawBuffers(stack.ints(GL_COLOR_ATTACHMENT0, GL_COLOR_ATTACHMENT1, GL_COLOR_ATTACHMENT2, GL_COLOR_ATTACHMENT3));
+        }
+        checkStatus();
+
+        // light passes accumulate into a separate framebuffer so the sampled targets are never attached while drawing
+        glBindFramebuffer(GL_FRAMEBUFFER, lightFboID);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textureIDs[ACCUMULATION], 0);
+        checkStatus();
+
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    private static void checkStatus() {
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) throw new RuntimeException("G-buffer framebuffer incomplete: 0x" + Integer.toHexString(status));
+    }
+
+    private static void setSamplerParameters() {
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    }
+
+    public int getFboID() { return fboID; }
+    public int getLightFboID() { return lightFboID; }
+    public int getTextureID(int target) { return textureIDs[target]; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+}
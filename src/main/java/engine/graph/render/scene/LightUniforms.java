@@ -0,0 +1,151 @@
+package engine.graph.render.scene;
+
+import engine.graph.shader.Uniforms;
+import engine.scene.light.*;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.List;
+
+// the forward shader's light arrays, transformed into view space once per frame and variant; uploads reuse scratch vectors so they do not allocate
+public class LightUniforms {
+
+    public static final int MAX_POINT_LIGHTS = 16;
+    public static final int MAX_SPOT_LIGHTS = 16;
+
+    private static final String[] LIGHT_FIELDS = { ".position", ".direction", ".color", ".intensity", ".attenuation.constant", ".attenuation.linear", ".attenuation.exponent", ".innerCutoff", ".outerCutoff" };
+    private static final int LIGHT_POSITION = 0, LIGHT_DIRECTION = 1, LIGHT_COLOR = 2, LIGHT_INTENSITY = 3, LIGHT_CONSTANT = 4, LIGHT_LINEAR = 5, LIGHT_EXPONENT = 6, LIGHT_INNER_CUTOFF = 7, LIGHT_OUTER_CUTOFF = 8;
+    private static final String[][] POINT_LIGHT_UNIFORMS = lightUniformNames("pointLights", MAX_POINT_LIGHTS);
+    private static final String[][] SPOT_LIGHT_UNIFORMS = lightUniformNames("spotLights", MAX_SPOT_LIGHTS);
+
+    private final Vector4f aux = new Vector4f();
+    private final Vector3f lightPosition = new Vector3f();
+    private final Vector3f lightDirection = new Vector3f();
+    private final Vector3f lightColor = new Vector3f();
+
+    public static void create(Uniforms u) {
+        u.createUniform("ambientLight.factor");
+        u.createUniform("ambientLight.color");
+
+        for (String[] names : POINT_LIGHT_UNIFORMS) {
+            u.createUniform(names[LIGHT_POSITION]);
+            u.createUniform(names[LIGHT_COLOR]);
+            u.createUniform(names[LIGHT_INTENSITY]);
+            u.createUniform(names[LIGHT_CONSTANT]);
+            u.createUniform(names[LIGHT_LINEAR]);
+            u.createUniform(names[LIGHT_EXPONENT]);
+        }
+
+        for (String[] names : SPOT_LIGHT_UNIFORMS) {
+            for (String name : names) u.createUniform(name);
+        }
+
+        u.createUniform("directionalLight.color");
+        u.createUniform("directionalLight.direction");
+        u.createUniform("directionalLight.intensity");
+    }
+
+    public void upload(SceneLights sceneLights, Matrix4f viewMatrix, Uniforms u) {
+        AmbientLight ambientLight = sceneLights.getAmbient();
+        u.setUniform("ambientLight.factor", ambientLight.getIntensity());
+        u.setUniform("ambientLight.color", ambientLight.getColor());
+
+        DirectionalLight directionalLight = sceneLights.getDirectional();
+        aux.set(directionalLight.getDirection(), 0.0f).mul(viewMatrix);
+        lightDirection.set(aux.x, aux.y, aux.z);
+        u.setUniform("directionalLight.color", directionalLight.getColor());
+        u.setUniform("directionalLight.direction", lightDirection);
+        u.setUniform("directionalLight.intensity", directionalLight.getIntensity());
+
+        List<PointLight> pointLights = sceneLights.getPoints();
+        int numPointLights = pointLights.size();
+        for (int i = 0; i < MAX_POINT_LIGHTS; i++) {
+            uploadPointLight(u, i < numPointLights ? pointLights.get(i) : null, POINT_LIGHT_UNIFORMS[i], viewMatrix);
+        }
+
+        List<SpotLight> spotLights = sceneLights.getSpots();
+        int numSpotLights = spotLights.size();
+        for (int i = 0; i < MAX_SPOT_LIGHTS; i++) {
+            uploadSpotLight(u, i < numSpotLights ? spotLights.get(i) : null, SPOT_LIGHT_UNIFORMS[i], viewMatrix);
+        }
+    }
+
+    private void uploadPointLight(Uniforms u, PointLight pointLight, String[] names, Matrix4f viewMatrix) {
+        lightPosition.zero();
+        lightColor.zero();
+        float intensity = 0.0f;
+        float constant = 0.0f;
+        float linear = 0.0f;
+        float exponent = 0.0f;
+
+        if (pointLight != null) {
+            aux.set(pointLight.getPosition(), 1); // w=1; treat like position
+            aux.mul(viewMatrix);
+            lightPosition.set(aux.x, aux.y, aux.z);
+            lightColor.set(pointLight.getColor());
+            intensity = pointLight.getIntensity();
+            PointLight.Attenuation attenuation = pointLight.getAttenuation();
+            constant = attenuation.getConstant();
+            linear = attenuation.getLinear();
+            exponent = attenuation.getExponent();
+        }
+
+        u.setUniform(names[LIGHT_POSITION], lightPosition);
+        u.setUniform(names[LIGHT_COLOR], lightColor);
+        u.setUniform(names[LIGHT_INTENSITY], intensity);
+        u.setUniform(names[LIGHT_CONSTANT], constant);
+        u.setUniform(names[LIGHT_LINEAR], linear);
+        u.setUniform(names[LIGHT_EXPONENT], exponent);
+    }
+
+    private void uploadSpotLight(Uniforms u, SpotLight spotLight, String[] names, Matrix4f viewMatrix) {
+        lightPosition.zero();
+        lightDirection.zero();
+        lightColor.zero();
+        float intensity = 0.0f;
+        float constant = 0.0f;
+        float linear = 0.0f;
+        float exponent = 0.0f;
+        float innerCutoff = 0.0f;
+        float outerCutoff = 0.0f;
+        if (spotLight != null) {
+            aux.set(spotLight.getPosition(), 1); // w=1; treat like position
+            aux.mul(viewMatrix);
+            lightPosition.set(aux.x, aux.y, aux.z);
+            aux.set(spotLight.getDirection(), 0); // w=0; treat like direction
+            aux.mul(viewMatrix);
+            lightDirection.set(aux.x, aux.y, aux.z);
+            lightColor.set(spotLight.getColor());
+            intensity = spotLight.getIntensity();
+            PointLight.Attenuation attenuation = spotLight.getAttenuation();
+            constant = attenuation.getConstant();
+            linear = attenuation.getLinear();
+            exponent = attenuation.getExponent();
+            innerCutoff = spotLight.getInnerCutoff();
+            outerCutoff = spotLight.getOuterCutoff();
+        }
+
+        u.setUniform(names[LIGHT_POSITION], lightPosition);
+        u.setUniform(names[LIGHT_DIRECTION], lightDirection);
+        u.setUniform(names[LIGHT_COLOR], lightColor);
+        u.setUniform(names[LIGHT_INTENSITY], intensity);
+        u.setUniform(names[LIGHT_CONSTANT], constant);
+        u.setUniform(names[LIGHT_LINEAR], linear);
+        u.setUniform(names[LIGHT_EXPONENT], exponent);
+        u.setUniform(names[LIGHT_INNER_CUTOFF], innerCutoff);
+        u.setUniform(names[LIGHT_OUTER_CUTOFF], outerCutoff);
+    }
+
+    // uniform names are built once so per-frame light uploads do no string concatenation
+    private static String[][] lightUniformNames(String array, int count) {
+        String[][] names = new String[count][];
+        for (int i = 0; i < count; i++) {
+            String prefix = array + "[" + i + "]";
+            names[i] = new String[LIGHT_FIELDS.length];
+            for (int f = 0; f < LIGHT_FIELDS.length; f++) names[i][f] = prefix + LIGHT_FIELDS[f];
+        }
+        return names;
+    }
+
+}
@@ -1,54 +1,116 @@
 package engine.graph.render.scene;
 
+import engine.graph.render.GLState;
+import engine.graph.render.GpuProfiler;
+import engine.graph.render.RenderQueue;
 import engine.graph.render.Renderer;
+import engine.graph.shader.ProgramBinaryCache;
 import engine.graph.shader.ShaderProgram;
+import engine.graph.shader.ShaderVariants;
 import engine.graph.shader.Uniforms;
 import engine.graph.texture.Texture;
 import engine.graph.texture.TextureCache;
 import org.joml.*;
 
 import engine.graph.model.*;
+import engine.graph.render.capture.FrameCapture;
 import engine.scene.Fog;
-import engine.scene.light.*;
 import engine.scene.model.*;
 import engine.scene.Scene;
+import engine.scene.view.Projection;
+import engine.telemetry.Telemetry;
 
+import java.lang.Math;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 import static org.lwjgl.opengl.GL30.*;
 
 public class SceneRenderer extends Renderer {
 
-    private static final int MAX_POINT_LIGHTS = 16;
-    private static final int MAX_SPOT_LIGHTS = 16;
+    public static final int FEATURE_NORMAL_MAP = 1;
+    public static final int FEATURE_FOG = 1 << 1;
+    public static final int FEATURE_SKINNING = 1 << 2;
+    public static final int FEATURE_TEXTURE_ARRAY = 1 << 3;
+    private static final String[] FEATURE_DEFINES = { "NORMAL_MAP", "FOG", "SKINNING", "TEXTURE_ARRAY" };
+
+    private final GLState glState;
+    private final RenderQueue opaqueQueue;
+    private final RenderQueue transparentQueue;
+    private final RenderQueue.KeyIndex programIndex;
+    private final RenderQueue.KeyIndex textureIndex;
+    private final RenderQueue.KeyIndex vaoIndex;
+    private final ShaderVariants sceneVariants;
+    private final ShaderVariants depthVariants;
+    private final Pass scenePass;
+    private final long[] depthVariantFrames;
+
+    private GpuProfiler profiler;
+    private int opaqueScope;
+    private int transparentScope;
+
+    private final LightUniforms lights = new LightUniforms();
+    private final Vector2f resolution = new Vector2f();
+
+    private Scene frameScene;
+    private int frameFeatures;
+    private long frame;
 
     private float timeElapsed = 0.0f;
     private float width = 1.0f;
     private float height = 1.0f;
 
-    public SceneRenderer() {
+    public SceneRenderer(GLState glState, ProgramBinaryCache binaryCache) {
+        this.glState = glState;
+        opaqueQueue = new RenderQueue();
+        transparentQueue = new RenderQueue();
+        programIndex = new RenderQueue.KeyIndex();
+        textureIndex = new RenderQueue.KeyIndex();
+        vaoIndex = new RenderQueue.KeyIndex();
+
+        List<ShaderProgram.ShaderModuleData> sceneModules = new ArrayList<>();
+        sceneModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/scene/scene.vs", GL_VERTEX_SHADER));
+        sceneModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/scene/scene.fs", GL_FRAGMENT_SHADER));
+        sceneVariants = new ShaderVariants(sceneModules, FEATURE_DEFINES, this::createUniforms, binaryCache);
+
+        List<ShaderProgram.ShaderModuleData> depthModules = new ArrayList<>();
+        depthModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/scene/scene.vs", GL_VERTEX_SHADER));
+        depthModules.add(new ShaderProgram.ShaderModuleData("resources/shaders/depth/depth.fs", GL_FRAGMENT_SHADER));
+        depthVariants = new ShaderVariants(depthModules, FEATURE_DEFINES, this::createDepthUniforms, binaryCache);
+
+        scenePass = new Pass(sceneVariants, this::uploadFrameUniforms, true);
+        depthVariantFrames = new long[depthVariants.getVariantCount()];
+
         shaderProgram = createShaderProgram();
         uniforms = createUniforms();
     }
 
+    @Override
+    public void cleanup() {
+        sceneVariants.cleanup();
+        depthVariants.cleanup();
+    }
+
     public ShaderProgram createShaderProgram() {
-        List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
-        shaderModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/scene/scene.vs", GL_VERTEX_SHADER));
-        shaderModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/scene/scene.fs", GL_FRAGMENT_SHADER));
-        return new ShaderProgram(shaderModuleDataList);
+        return sceneVariants.get(0).program();
     }
 
     public Uniforms createUniforms() {
-        Uniforms u = new Uniforms(shaderProgram.getProgramID());
+        return sceneVariants.get(0).uniforms();
+    }
+
+    public Uniforms createUniforms(ShaderProgram program) {
+        Uniforms u = new Uniforms(program.getProgramID());
         u.createUniform("projectionMatrix");
         u.createUniform("viewMatrix");
         u.createUniform("modelMatrix");
-        u.createUniform("boneMatrices");
+        u.createOptionalUniform("boneMatrices");
 
         u.createUniform("texSampler");
-        u.createUniform("normalTexSampler");
+        u.createOptionalUniform("normalTexSampler");
+        u.createOptionalUniform("texLayer");
+        u.createOptionalUniform("normalTexLayer");
         try {
             u.createUniform("timeElapsed");
             u.createUniform("resolution");
@@ -61,44 +123,45 @@ public class SceneRenderer extends Renderer {
         u.createUniform("material.diffuse");
         u.createUniform("material.specular");
         u.createUniform("material.glossiness");
-        u.createUniform("material.hasNormalMap");
-
-        u.createUniform("ambientLight.factor");
-        u.createUniform("ambientLight.color");
-
-        for (int i = 0; i < MAX_POINT_LIGHTS; i++) {
-            String name = "pointLights[" + i + "]";
-            u.createUniform(name + ".position");
-            u.createUniform(name + ".color");
-            u.createUniform(name + ".intensity");
-            u.createUniform(name + ".attenuation.constant");
-            u.createUniform(name + ".attenuation.linear");
-            u.createUniform(name + ".attenuation.exponent");
-        }
 
-        for (int i = 0; i < MAX_SPOT_LIGHTS; i++) {
-            String name = "spotLights[" + i + "]";
-            u.createUniform(name + ".position");
-            u.createUniform(name + ".direction");
-            u.createUniform(name + ".color");
-            u.createUniform(name + ".intensity");
-            u.createUniform(name + ".attenuation.constant");
-            u.createUniform(name + ".attenuation.linear");
-            u.createUniform(name + ".attenuation.exponent");
-            u.createUniform(name + ".innerCutoff");
-            u.createUniform(name + ".outerCutoff");
-        }
+        LightUniforms.create(u);
 
-        u.createUniform("directionalLight.color");
-        u.createUniform("directionalLight.direction");
-        u.createUniform("directionalLight.intensity");
+        u.createOptionalUniform("fog.color");
+        u.createOptionalUniform("fog.density");
+        return u;
+    }
 
-        u.createUniform("fog.fogActive");
-        u.createUniform("fog.color");
-        u.createUniform("fog.density");
+    public Uniforms createDepthUniforms(ShaderProgram program) {
+        Uniforms u = new Uniforms(program.getProgramID());
+        u.createUniform("projectionMatrix");
+        u.createUniform("viewMatrix");
+        u.createUniform("modelMatrix");
+        u.createOptionalUniform("boneMatrices");
         return u;
     }
 
+    public void warmUp(Scene scene) {
+        int fog = scene.getFog().getActive() ? FEATURE_FOG : 0;
+        TextureCache textureCache = scene.getTextureCache();
+        for (Model model : scene.getModelMap().values()) {
+            for (Material material : model.getMaterials()) {
+                for (Mesh mesh : material.getMeshes()) {
+                    sceneVariants.get(getFeatures(material, mesh, textureCache, fog));
+                    depthVariants.get(getDepthFeatures(mesh));
+                }
+            }
+        }
+    }
+
+    // with batch profiling on, every material change in the opaque and transparent passes gets its own timer scope
+    public void setProfiler(GpuProfiler profiler, int opaqueScope, int transparentScope) {
+        this.profiler = profiler;
+        this.opaqueScope = opaqueScope;
+        this.transparentScope = transparentScope;
+    }
+
+    public RenderQueue getOpaqueQueue() { return opaqueQueue; }
+
     public void update(float diffTimeMillis, int width, int height) {
         timeElapsed += diffTimeMillis;
         this.width = (float) width;
@@ -106,175 +169,375 @@ public class SceneRenderer extends Renderer {
     }
 
     public void render(Scene scene) {
-        glEnable(GL_BLEND);
-        glBlendEquation(GL_FUNC_ADD);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        shaderProgram.bind();
+        prepare(scene, false);
+        renderOpaque(scene, false);
+        renderTransparent(scene);
+    }
 
-        uniforms.setUniform("projectionMatrix", scene.getProjection().getMatrix());
-        uniforms.setUniform("viewMatrix", scene.getCamera().getViewMatrix());
-        uniforms.setUniform("texSampler", 0);
-        uniforms.setUniform("normalTexSampler", 1);
+    public void prepare(Scene scene, boolean depthPrePass) {
+        frame++;
+        frameScene = scene;
+        frameFeatures = scene.getFog().getActive() ? FEATURE_FOG : 0;
 
-        updateLights(scene);
+        TextureCache textureCache = scene.getTextureCache();
+        if (textureCache.isStreaming()) requestTextures(scene, textureCache);
+        opaqueQueue.clear();
+        transparentQueue.clear();
+        programIndex.clear();
+        textureIndex.clear();
+        vaoIndex.clear();
+        buildRenderQueues(scene, textureCache, depthPrePass);
+        opaqueQueue.sort();
+        transparentQueue.sort();
+    }
 
-        Fog fog = scene.getFog();
-        uniforms.setUniform("fog.fogActive", fog.getActive() ? 1 : 0);
-        uniforms.setUniform("fog.color", fog.getColor());
-        uniforms.setUniform("fog.density", fog.getDensity());
+    public void renderDepthPrePass(Scene scene) {
+        glState.disable(GL_BLEND);
+        glState.colorMask(false);
+        glState.depthMask(true);
+        glState.depthFunc(GL_LESS);
+
+        Uniforms u = null;
+        int boundFeatures = -1;
+        Matrix4f[] uploadedBones = null;
+        for (int i = 0; i < opaqueQueue.size(); i++) {
+            Mesh mesh = opaqueQueue.getMesh(i);
+            int features = getDepthFeatures(mesh);
+            if (features != boundFeatures) {
+                u = useDepthVariant(features);
+                boundFeatures = features;
+                uploadedBones = null;
+            }
 
-        if (uniforms.hasUniform("timeElapsed")) uniforms.setUniform("timeElapsed", timeElapsed);
-        if (uniforms.hasUniform("resolution")) uniforms.setUniform("resolution", new Vector2f(width, height));
+            glState.bindVertexArray(mesh.getVaoID());
 
-        Collection<Model> models = scene.getModelMap().values();
-        TextureCache textureCache = scene.getTextureCache();
-        for (Model model : models) {
-            List<Entity> entities = model.getEntities();
+            Entity entity = opaqueQueue.getEntity(i);
+            u.setUniform("modelMatrix", entity.getModelMatrix());
+            if (mesh.isSkinned()) {
+                Matrix4f[] bones = getBoneMatrices(entity);
+                if (bones != uploadedBones) {
+                    u.setUniform("boneMatrices", bones);
+                    uploadedBones = bones;
+                }
+                else glState.recordSkipped();
+            }
 
-            for (Material material : model.getMaterials()) {
-                uniforms.setUniform("material.ambient", material.getAmbientColor());
-                uniforms.setUniform("material.diffuse", material.getDiffuseColor());
-                uniforms.setUniform("material.specular", material.getSpecularColor());
-                uniforms.setUniform("material.glossiness", material.getSpecular());
+            glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            FrameCapture.drawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+        }
 
-                String normalMapPath = material.getNormalMapPath();
-                boolean hasNormalMapPath = normalMapPath != null;
-                uniforms.setUniform("material.hasNormalMap", hasNormalMapPath ? 1 : 0);
+        glState.colorMask(true);
+    }
 
-                Texture texture = textureCache.getTexture(material.getTexturePath());
-                glActiveTexture(GL_TEXTURE0);
-                texture.bind();
+    public void renderOpaque(Scene scene, boolean depthPrePassDone) {
+        glState.disable(GL_BLEND);
+        if (depthPrePassDone) {
+            // depth is already resolved; only the front-most fragment passes and gets shaded
+            glState.depthFunc(GL_LEQUAL);
+            glState.depthMask(false);
+        }
+        else {
+            glState.depthFunc(GL_LESS);
+            glState.depthMask(true);
+        }
 
-                if (hasNormalMapPath) {
-                    Texture normalMapTexture = textureCache.getTexture(normalMapPath);
-                    glActiveTexture(GL_TEXTURE1);
-                    normalMapTexture.bind();
-                }
+        drawQueue(opaqueQueue, scene.getTextureCache(), opaqueScope, scenePass);
 
-                for (Mesh mesh : material.getMeshes()) {
-                    glBindVertexArray(mesh.getVaoID());
-                    for (Entity entity : entities) {
-                        if (entity instanceof BillboardEntity) uniforms.setUniform("billboard", 1);
-                        else uniforms.setUniform("billboard", 0);
+        glState.depthFunc(GL_LESS);
+        glState.depthMask(true);
+    }
 
-                        uniforms.setUniform("modelMatrix", entity.getModelMatrix());
-                        AnimationData animData = entity.getAnimationData();
-                        uniforms.setUniform("boneMatrices", animData == null ? AnimationData.DEFAULT_BONES_MATRICES : animData.getCurrentFrame().boneMatrices());
+    // draws the opaque queue with another pass's programs, such as the deferred g-buffer; blend and depth state are left to the caller
+    public void renderOpaque(Scene scene, Pass pass) {
+        drawQueue(opaqueQueue, scene.getTextureCache(), opaqueScope, pass);
+    }
 
-                        glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+    public void renderTransparent(Scene scene) {
+        if (transparentQueue.size() == 0) return;
+
+        glState.enable(GL_BLEND);
+        glState.blendEquation(GL_FUNC_ADD);
+        glState.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        glState.depthFunc(GL_LESS);
+        glState.depthMask(false);
+
+        drawQueue(transparentQueue, scene.getTextureCache(), transparentScope, scenePass);
+
+        glState.depthMask(true);
+        glState.disable(GL_BLEND);
+    }
+
+    private void drawQueue(RenderQueue queue, TextureCache textureCache, int passScope, Pass pass) {
+        boolean profileBatches = profiler != null && profiler.isBatchProfiling();
+        boolean batchOpen = false;
+        Uniforms u = null;
+        int boundFeatures = -1;
+        Material uploadedMaterial = null;
+        Material boundMaterial = null;
+        Material featureMaterial = null;
+        int materialFeatures = 0;
+        Matrix4f[] uploadedBones = null;
+        int uploadedBillboard = -1;
+        float uploadedLayer = -1, uploadedNormalLayer = -1;
+        for (int i = 0; i < queue.size(); i++) {
+            Material material = queue.getMaterial(i);
+            Mesh mesh = queue.getMesh(i);
+
+            // texture lookups only on material changes; skinning is the one per-mesh feature
+            if (material != featureMaterial) {
+                materialFeatures = getMaterialFeatures(material, textureCache);
+                featureMaterial = material;
+            }
+            int features = materialFeatures | (pass.fog ? frameFeatures : 0) | (mesh.isSkinned() ? FEATURE_SKINNING : 0);
+            if (features != boundFeatures) {
+                u = useVariant(pass, features);
+                boundFeatures = features;
+                uploadedMaterial = null;
+                boundMaterial = null;
+                uploadedBones = null;
+                uploadedBillboard = -1;
+                uploadedLayer = -1;
+                uploadedNormalLayer = -1;
+            }
+
+            if (material != boundMaterial) {
+                if (profileBatches) {
+                    if (batchOpen) profiler.end();
+                    profiler.begin(profiler.batchScope(passScope, material));
+                    batchOpen = true;
+                }
+                if (uploadedMaterial != null && sameMaterialParams(uploadedMaterial, material)) glState.recordSkipped();
+                else {
+                    uploadMaterial(u, material);
+                    uploadedMaterial = material;
+                }
+                bindTextures(material, textureCache);
+                if ((features & FEATURE_TEXTURE_ARRAY) != 0) {
+                    // materials packed into the same array only change the layer between draws
+                    float layer = textureCache.getTexture(material.getTexturePath()).getLayer();
+                    if (layer != uploadedLayer) {
+                        u.setUniform("texLayer", layer);
+                        uploadedLayer = layer;
+                    }
+                    else glState.recordSkipped();
+                    if ((features & FEATURE_NORMAL_MAP) != 0) {
+                        float normalLayer = textureCache.getNormalMap(material.getNormalMapPath()).getLayer();
+                        if (normalLayer != uploadedNormalLayer) {
+                            u.setUniform("normalTexLayer", normalLayer);
+                            uploadedNormalLayer = normalLayer;
+                        }
+                        else glState.recordSkipped();
                     }
                 }
+                boundMaterial = material;
             }
+
+            glState.bindVertexArray(mesh.getVaoID());
+
+            Entity entity = queue.getEntity(i);
+            int billboard = entity instanceof BillboardEntity ? 1 : 0;
+            if (billboard != uploadedBillboard) {
+                u.setUniform("billboard", billboard);
+                uploadedBillboard = billboard;
+            }
+            else glState.recordSkipped();
+
+            u.setUniform("modelMatrix", entity.getModelMatrix());
+            if (mesh.isSkinned()) {
+                Matrix4f[] bones = getBoneMatrices(entity);
+                if (bones != uploadedBones) {
+                    u.setUniform("boneMatrices", bones);
+                    uploadedBones = bones;
+                }
+                else glState.recordSkipped();
+            }
+
+            glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            FrameCapture.drawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+            Telemetry.count(Telemetry.Counter.DRAW_CALLS);
+        }
+        if (batchOpen) profiler.end();
+    }
+
+    private Uniforms useVariant(Pass pass, int features) {
+        ShaderVariants.Variant variant = pass.variants.get(features);
+        glState.useProgram(variant.program().getProgramID());
+        Uniforms u = variant.uniforms();
+        if (pass.variantFrames[features] != frame) {
+            pass.frameUniforms.accept(frameScene, u);
+            pass.variantFrames[features] = frame;
         }
+        return u;
+    }
+
+    private Uniforms useDepthVariant(int features) {
+        ShaderVariants.Variant variant = depthVariants.get(features);
+        glState.useProgram(variant.program().getProgramID());
+        Uniforms u = variant.uniforms();
+        if (depthVariantFrames[features] != frame) {
+            u.setUniform("projectionMatrix", frameScene.getProjection().getMatrix());
+            u.setUniform("viewMatrix", frameScene.getCamera().getViewMatrix());
+            depthVariantFrames[features] = frame;
+        }
+        return u;
+    }
 
-        glBindVertexArray(0);
+    private void uploadFrameUniforms(Scene scene, Uniforms u) {
+        u.setUniform("projectionMatrix", scene.getProjection().getMatrix());
+        u.setUniform("viewMatrix", scene.getCamera().getViewMatrix());
+        u.setUniform("texSampler", 0);
+        u.setUniform("normalTexSampler", 1);
 
-        shaderProgram.unbind();
+        lights.upload(scene.getSceneLights(), scene.getCamera().getViewMatrix(), u);
+
+        Fog fog = scene.getFog();
+        u.setUniform("fog.color", fog.getColor());
+        u.setUniform("fog.density", fog.getDensity());
+
+        if (u.hasUniform("timeElapsed")) u.setUniform("timeElapsed", timeElapsed);
+        if (u.hasUniform("resolution")) u.setUniform("resolution", resolution.set(width, height));
     }
 
-    private void updateLights(Scene scene) {
+    // the largest on-screen size among a model's entities decides how much of its textures' mip chains should be resident
+    private void requestTextures(Scene scene, TextureCache textureCache) {
+        Vector3f cameraPosition = scene.getCamera().getPosition();
         Matrix4f viewMatrix = scene.getCamera().getViewMatrix();
+        float pixelScale = scene.getProjection().getPixelScale();
+        List<Model> models = scene.getModels();
+        for (int m = 0; m < models.size(); m++) {
+            Model model = models.get(m);
+            List<Entity> entities = model.getEntities();
+            float radius = model.getBoundingRadius();
+            float pixels = 0.0f;
+            for (int e = 0; e < entities.size(); e++) {
+                Entity entity = entities.get(e);
+                Vector3f position = entity.getPosition();
+                float scaledRadius = radius * entity.getScale();
+                // view space looks down -z, so a bounding sphere wholly behind the camera has z above its radius
+                float viewZ = viewMatrix.m02() * position.x + viewMatrix.m12() * position.y + viewMatrix.m22() * position.z + viewMatrix.m32();
+                if (viewZ > scaledRadius) continue;
+                float distance = position.distance(cameraPosition);
+                if (distance - scaledRadius > Projection.Z_FAR) continue;
+                pixels = Math.max(pixels, 2.0f * scaledRadius * pixelScale / Math.max(distance, Projection.Z_NEAR));
+            }
+            if (pixels == 0.0f) continue;
 
-        SceneLights sceneLights = scene.getSceneLights();
-        AmbientLight ambientLight = sceneLights.getAmbient();
-        uniforms.setUniform("ambientLight.factor", ambientLight.getIntensity());
-        uniforms.setUniform("ambientLight.color", ambientLight.getColor());
-
-        DirectionalLight directionalLight = sceneLights.getDirectional();
-        Vector4f auxDirection = new Vector4f(directionalLight.getDirection(), 0.0f);
-        auxDirection.mul(viewMatrix);
-        Vector3f direction = new Vector3f(auxDirection.x, auxDirection.y, auxDirection.z);
-        uniforms.setUniform("directionalLight.color", directionalLight.getColor());
-        uniforms.setUniform("directionalLight.direction", direction);
-        uniforms.setUniform("directionalLight.intensity", directionalLight.getIntensity());
-
-        List<PointLight> pointLights = sceneLights.getPoints();
-        int numPointLights = pointLights.size();
-        PointLight pointLight;
-        for (int i = 0; i < MAX_POINT_LIGHTS; i++) {
-            if (i < numPointLights) pointLight = pointLights.get(i);
-            else pointLight = null;
-            String name = "pointLights[" + i + "]";
-            updatePointLight(pointLight, name, viewMatrix);
+            List<Material> materials = model.getMaterials();
+            for (int t = 0; t < materials.size(); t++) {
+                Material material = materials.get(t);
+                textureCache.request(material.getTexturePath(), pixels);
+                textureCache.request(material.getNormalMapPath(), pixels);
+            }
         }
 
-        List<SpotLight> spotLights = sceneLights.getSpots();
-        int numSpotLights = spotLights.size();
-        SpotLight spotLight;
-        for (int i = 0; i < MAX_SPOT_LIGHTS; i++) {
-            if ( i < numSpotLights) spotLight = spotLights.get(i);
-            else spotLight = null;
-            String name = "spotLights[" + i + "]";
-            updateSpotLight(spotLight, name, viewMatrix);
-        }
+        // the sky surrounds the camera, so its textures always want their full size
+        if (scene.getSkyBox() == null) return;
+        List<Material> skyMaterials = scene.getSkyBox().getModel().getMaterials();
+        for (int t = 0; t < skyMaterials.size(); t++) textureCache.request(skyMaterials.get(t).getTexturePath(), Float.MAX_VALUE);
     }
 
-    private void updatePointLight(PointLight pointLight, String prefix, Matrix4f viewMatrix) {
-        Vector4f aux = new Vector4f();
-        Vector3f lightPosition = new Vector3f();
-        Vector3f color = new Vector3f();
-        float intensity = 0.0f;
-        float constant = 0.0f;
-        float linear = 0.0f;
-        float exponent = 0.0f;
-
-        if (pointLight != null) {
-            aux.set(pointLight.getPosition(), 1); // w=1; treat like position
-            aux.mul(viewMatrix);
-            lightPosition.set(aux.x, aux.y, aux.z);
-            color.set(pointLight.getColor());
-            intensity = pointLight.getIntensity();
-            PointLight.Attenuation attenuation = pointLight.getAttenuation();
-            constant = attenuation.getConstant();
-            linear = attenuation.getLinear();
-            exponent = attenuation.getExponent();
+    private void buildRenderQueues(Scene scene, TextureCache textureCache, boolean depthPrePass) {
+        Vector3f cameraPosition = scene.getCamera().getPosition();
+        List<Model> models = scene.getModels();
+        for (int m = 0; m < models.size(); m++) {
+            Model model = models.get(m);
+            List<Entity> entities = model.getEntities();
+            if (entities.isEmpty()) continue;
+
+            List<Material> materials = model.getMaterials();
+            for (int t = 0; t < materials.size(); t++) {
+                Material material = materials.get(t);
+                Texture texture = textureCache.getTexture(material.getTexturePath());
+                int diffuse = textureIndex.index(texture.getTextureID());
+                String normalMapPath = material.getNormalMapPath();
+                int normal = textureIndex.index(normalMapPath != null ? textureCache.getNormalMap(normalMapPath).getTextureID() : 0);
+                boolean transparent = texture.isTransparent();
+                int materialFeatures = getMaterialFeatures(material, textureCache) | frameFeatures;
+
+                List<Mesh> meshes = material.getMeshes();
+                for (int n = 0; n < meshes.size(); n++) {
+                    Mesh mesh = meshes.get(n);
+                    int program = programIndex.index(sceneVariants.get(materialFeatures | (mesh.isSkinned() ? FEATURE_SKINNING : 0)).program().getProgramID());
+                    int vao = vaoIndex.index(mesh.getVaoID());
+                    for (int e = 0; e < entities.size(); e++) {
+                        Entity entity = entities.get(e);
+                        float depth = entity.getPosition().distance(cameraPosition) / Projection.Z_FAR;
+                        // opaque: front-to-back for early-z unless a depth pre-pass already resolved visibility
+                        if (transparent) transparentQueue.add(RenderQueue.makeDepthFirstKey(program, diffuse, normal, vao, depth, true), material, mesh, entity);
+                        else if (depthPrePass) opaqueQueue.add(RenderQueue.makeKey(program, diffuse, normal, vao, depth), material, mesh, entity);
+                        else opaqueQueue.add(RenderQueue.makeDepthFirstKey(program, diffuse, normal, vao, depth, false), material, mesh, entity);
+                    }
+                }
+            }
         }
+    }
+
+    public static int getFeatures(Material material, Mesh mesh, TextureCache textureCache, int frameFeatures) {
+        int features = frameFeatures | getMaterialFeatures(material, textureCache);
+        if (mesh.isSkinned()) features |= FEATURE_SKINNING;
+        return features;
+    }
+
+    public static int getMaterialFeatures(Material material, TextureCache textureCache) {
+        boolean layered = textureCache.getTexture(material.getTexturePath()).isLayer();
+        int features = layered ? FEATURE_TEXTURE_ARRAY : 0;
+        String normalMapPath = material.getNormalMapPath();
+        // both samplers share the array define, so a normal map stored differently from the diffuse texture is left unsampled
+        if (normalMapPath != null && textureCache.getNormalMap(normalMapPath).isLayer() == layered) features |= FEATURE_NORMAL_MAP;
+        return features;
+    }
 
-        uniforms.setUniform(prefix + ".position", lightPosition);
-        uniforms.setUniform(prefix + ".color", color);
-        uniforms.setUniform(prefix + ".intensity", intensity);
-        uniforms.setUniform(prefix + ".attenuation.constant", constant);
-        uniforms.setUniform(prefix + ".attenuation.linear", linear);
-        uniforms.setUniform(prefix + ".attenuation.exponent", exponent);
+    private static int getDepthFeatures(Mesh mesh) {
+        return mesh.isSkinned() ? FEATURE_SKINNING : 0;
     }
 
-    private void updateSpotLight(SpotLight spotLight, String prefix, Matrix4f viewMatrix) {
-        Vector4f aux = new Vector4f();
-        Vector3f position = new Vector3f();
-        Vector3f direction = new Vector3f();
-        Vector3f color = new Vector3f();
-        float intensity = 0.0f;
-        float constant = 0.0f;
-        float linear = 0.0f;
-        float exponent = 0.0f;
-        float innerCutoff = 0.0f;
-        float outerCutoff = 0.0f;
-        if (spotLight != null) {
-            aux.set(spotLight.getPosition(), 1); // w=1; treat like position
-            aux.mul(viewMatrix);
-            position.set(aux.x, aux.y, aux.z);
-            aux.set(spotLight.getDirection(), 0); // w=0; treat like direction
-            aux.mul(viewMatrix);
-            direction.set(aux.x, aux.y, aux.z);
-            color.set(spotLight.getColor());
-            intensity = spotLight.getIntensity();
-            PointLight.Attenuation attenuation = spotLight.getAttenuation();
-            constant = attenuation.getConstant();
-            linear = attenuation.getLinear();
-            exponent = attenuation.getExponent();
-            innerCutoff = spotLight.getInnerCutoff();
-            outerCutoff = spotLight.getOuterCutoff();
+    public static Matrix4f[] getBoneMatrices(Entity entity) {
+        AnimationData animData = entity.getAnimationData();
+        return animData == null ? AnimationData.DEFAULT_BONES_MATRICES : animData.getCurrentFrame().boneMatrices();
+    }
+
+    private void uploadMaterial(Uniforms u, Material material) {
+        u.setUniform("material.ambient", material.getAmbientColor());
+        u.setUniform("material.diffuse", material.getDiffuseColor());
+        u.setUniform("material.specular", material.getSpecularColor());
+        u.setUniform("material.glossiness", material.getSpecular());
+    }
+
+    private void bindTextures(Material material, TextureCache textureCache) {
+        Texture texture = textureCache.getTexture(material.getTexturePath());
+        glState.bindTexture(0, texture.getTarget(), texture.getTextureID());
+
+        String normalMapPath = material.getNormalMapPath();
+        if (normalMapPath != null) {
+            Texture normalMap = textureCache.getNormalMap(normalMapPath);
+            glState.bindTexture(1, normalMap.getTarget(), normalMap.getTextureID());
+        }
+    }
+
+    // a family of programs built on scene.vs with the scene shader's material, texture and per-draw uniforms, keyed by the FEATURE_ bits.
+    // each variant gets frameUniforms the first time it is used in a frame; fog says whether the frame's fog feature applies
+    public static class Pass {
+
+        private final ShaderVariants variants;
+        private final BiConsumer<Scene, Uniforms> frameUniforms;
+        private final boolean fog;
+        private final long[] variantFrames;
+
+        public Pass(ShaderVariants variants, BiConsumer<Scene, Uniforms> frameUniforms, boolean fog) {
+            this.variants = variants;
+            this.frameUniforms = frameUniforms;
+            this.fog = fog;
+            variantFrames = new long[variants.getVariantCount()];
         }
 
-        uniforms.setUniform(prefix + ".position", position);
-        uniforms.setUniform(prefix + ".direction", direction);
-        uniforms.setUniform(prefix + ".color", color);
-        uniforms.setUniform(prefix + ".intensity", intensity);
-        uniforms.setUniform(prefix + ".attenuation.constant", constant);
-        uniforms.setUniform(prefix + ".attenuation.linear", linear);
-        uniforms.setUniform(prefix + ".attenuation.exponent", exponent);
-        uniforms.setUniform(prefix + ".innerCutoff", innerCutoff);
-        uniforms.setUniform(prefix + ".outerCutoff", outerCutoff);
+    }
+
+    private static boolean sameMaterialParams(Material a, Material b) {
+        return a.getSpecular() == b.getSpecular()
+            && a.getAmbientColor().equals(b.getAmbientColor())
+            && a.getDiffuseColor().equals(b.getDiffuseColor())
+            && a.getSpecularColor().equals(b.getSpecularColor());
     }
 
 }
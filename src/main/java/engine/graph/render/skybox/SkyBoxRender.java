@@ -1,6 +1,8 @@
 package engine.graph.render.skybox;
 
+import engine.graph.render.GLState;
 import engine.graph.render.Renderer;
+import engine.graph.shader.ProgramBinaryCache;
 import engine.graph.shader.ShaderProgram;
 import engine.graph.shader.Uniforms;
 import engine.graph.texture.Texture;
@@ -8,20 +10,25 @@ import engine.graph.texture.TextureCache;
 import org.joml.Matrix4f;
 
 import engine.graph.model.*;
+import engine.graph.render.capture.FrameCapture;
 import engine.scene.Scene;
 import engine.scene.SkyBox;
 import engine.scene.model.Entity;
+import engine.telemetry.Telemetry;
 
 import java.util.*;
 
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 public class SkyBoxRender extends Renderer {
 
+    private final GLState glState;
+    private final ProgramBinaryCache binaryCache;
     private final Matrix4f viewMatrix;
 
-    public SkyBoxRender() {
+    public SkyBoxRender(GLState glState, ProgramBinaryCache binaryCache) {
+        this.glState = glState;
+        this.binaryCache = binaryCache;
         shaderProgram = createShaderProgram();
         uniforms = createUniforms();
         viewMatrix = new Matrix4f();
@@ -31,7 +38,7 @@ public class SkyBoxRender extends Renderer {
         List<ShaderProgram.ShaderModuleData> shaderModuleDataList = new ArrayList<>();
         shaderModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/skybox/skybox.vs", GL_VERTEX_SHADER));
         shaderModuleDataList.add(new ShaderProgram.ShaderModuleData("resources/shaders/skybox/skybox.fs", GL_FRAGMENT_SHADER));
-        return new ShaderProgram(shaderModuleDataList);
+        return new ShaderProgram(shaderModuleDataList, "", binaryCache);
     }
 
     public Uniforms createUniforms() {
@@ -50,7 +57,10 @@ public class SkyBoxRender extends Renderer {
     public void render(Scene scene) {
         SkyBox skyBox = scene.getSkyBox();
         if (skyBox == null) return;
-        shaderProgram.bind();
+        glState.disable(GL_BLEND);
+        glState.depthFunc(GL_LEQUAL);
+        glState.depthMask(false);
+        glState.useProgram(shaderProgram.getProgramID());
 
         uniforms.setUniform("projectionMatrix", scene.getProjection().getMatrix());
         viewMatrix.set(scene.getCamera().getViewMatrix());
@@ -65,23 +75,23 @@ public class SkyBoxRender extends Renderer {
         TextureCache textureCache = scene.getTextureCache();
         for (Material material : skyBoxModel.getMaterials()) {
             Texture texture = textureCache.getTexture(material.getTexturePath());
-            glActiveTexture(GL_TEXTURE0);
-            texture.bind();
+            glState.bindTexture(0, texture.getTextureID());
 
             uniforms.setUniform("diffuse", material.getDiffuseColor());
             uniforms.setUniform("hasTexture", texture.getTexturePath().equals(TextureCache.DEFAULT_TEXTURE) ? 0 : 1);
 
             for (Mesh mesh : material.getMeshes()) {
-                glBindVertexArray(mesh.getVaoID());
+                glState.bindVertexArray(mesh.getVaoID());
 
                 uniforms.setUniform("modelMatrix", skyBoxEntity.getModelMatrix());
                 glDrawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+                FrameCapture.drawElements(GL_TRIANGLES, mesh.getNumVertices(), GL_UNSIGNED_INT, 0);
+                Telemetry.count(Telemetry.Counter.DRAW_CALLS);
             }
         }
 
-        glBindVertexArray(0);
-
-        shaderProgram.unbind();
+        glState.depthMask(true);
+        glState.depthFunc(GL_LESS);
     }
 
 }
@@ -0,0 +1,115 @@
+package engine.graph.shader;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.lwjgl.opengl.ARBGetProgramBinary.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.util.xxhash.XXHash.XXH3_64bits;
+
+public class ProgramBinaryCache {
+
+    private final Path directory;
+    private final String driver;
+    private final boolean supported;
+
+    private int hits;
+    private int misses;
+
+    public ProgramBinaryCache(String directory) {
+        this.directory = Paths.get(directory);
+        driver = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+        supported = GL.getCapabilities().GL_ARB_get_program_binary && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+    }
+
+    public boolean isSupported() { return supported; }
+    public int getHits() { return hits; }
+    public int getMisses() { return misses; }
+
+    public String key(List<String> sources) {
+        StringBuilder sb = new StringBuilder(driver);
+        sources.forEach(source -> sb.append('\0').append(source));
+        ByteBuffer buf = MemoryUtil.memUTF8(sb, false);
+        try {
+            return Long.toHexString(XXH3_64bits(buf));
+        }
+        finally {
+            MemoryUtil.memFree(buf);
+        }
+    }
+
+    public void prepare(int programID) {
+        if (supported) glProgramParameteri(programID, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+    }
+
+    public boolean load(int programID, String key) {
+        if (!supported) return false;
+        Path file = directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(file)) {
+            misses++;
+            return false;
+        }
+
+        ByteBuffer buf = null;
+        try {
+            byte[] data = Files.readAllBytes(file);
+            buf = MemoryUtil.memAlloc(data.length);
+            buf.put(0, data);
+            int format = buf.getInt(0);
+            glProgramBinary(programID, format, buf.position(Integer.BYTES));
+        }
+        catch (IOException e) {
+            misses++;
+            return false;
+        }
+        finally {
+            if (buf != null) MemoryUtil.memFree(buf);
+        }
+
+        // drivers reject binaries from other versions; fall back to compiling from source
+        if (glGetProgrami(programID, GL_LINK_STATUS) == 0) {
+            try { Files.deleteIfExists(file); }
+            catch (IOException ignored) {}
+            misses++;
+            return false;
+        }
+
+        hits++;
+        return true;
+    }
+
+    public void store(int programID, String key) {
+        if (!supported) return;
+        int length = glGetProgrami(programID, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+
+        ByteBuffer buf = MemoryUtil.memAlloc(Integer.BYTES + length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+            glGetProgramBinary(programID, written, format, buf.position(Integer.BYTES));
+            buf.putInt(0, format.get(0));
+
+            byte[] data = new byte[Integer.BYTES + written.get(0)];
+            buf.get(0, data);
+            Files.createDirectories(directory);
+            Files.write(directory.resolve(key + ".bin"), data);
+        }
+        catch (IOException e) {
+            System.err.println("Failed to store program binary \"" + key + "\": " + e.getMessage());
+        }
+        finally {
+            MemoryUtil.memFree(buf);
+        }
+    }
+
+}
@@ -2,33 +2,83 @@ package engine.graph.shader;
 
 import org.lwjgl.opengl.GL30;
 
+import engine.telemetry.jfr.ShaderCompileEvent;
+import engine.telemetry.jfr.ShaderLinkEvent;
 import engine.util.Util;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL30.*;
 
 public class ShaderProgram {
 
+    // final sources of every live program, so frame captures can rebuild them on another driver
+    private static final Map<Integer, List<ShaderSource>> SOURCES = new HashMap<>();
+
     private final int programID;
 
     public ShaderProgram(List<ShaderModuleData> shaderModuleDataList) {
+        this(shaderModuleDataList, "", null);
+    }
+
+    public ShaderProgram(List<ShaderModuleData> shaderModuleDataList, String defines, ProgramBinaryCache binaryCache) {
         programID = glCreateProgram();
         if (programID == 0) throw new RuntimeException("Failed to create shader program.");
 
-        List<Integer> shaderModules = new ArrayList<>();
-        shaderModuleDataList.forEach(s -> {
-            shaderModules.add(createShader(Util.readFile(s.shaderFile), s.shaderType));
-        });
+        List<String> sources = new ArrayList<>();
+        shaderModuleDataList.forEach(s -> sources.add(injectDefines(Util.readFile(s.shaderFile), defines)));
+        List<ShaderSource> shaderSources = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) shaderSources.add(new ShaderSource(shaderModuleDataList.get(i).shaderType, sources.get(i)));
+        SOURCES.put(programID, shaderSources);
+
+        String cacheKey = null;
+        if (binaryCache != null) {
+            cacheKey = binaryCache.key(sources);
+            ShaderLinkEvent event = new ShaderLinkEvent();
+            event.begin();
+            if (binaryCache.load(programID, cacheKey)) {
+                commitLinkEvent(event, defines, true);
+                return;
+            }
+            binaryCache.prepare(programID);
+        }
 
+        List<Integer> shaderModules = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            ShaderCompileEvent event = new ShaderCompileEvent();
+            event.begin();
+            shaderModules.add(createShader(sources.get(i), shaderModuleDataList.get(i).shaderType));
+            if (event.shouldCommit()) {
+                event.path = shaderModuleDataList.get(i).shaderFile;
+                event.defines = defines;
+                event.bytes = sources.get(i).length();
+                event.commit();
+            }
+        }
+
+        ShaderLinkEvent event = new ShaderLinkEvent();
+        event.begin();
         link(shaderModules);
+        commitLinkEvent(event, defines, false);
+        if (binaryCache != null) binaryCache.store(programID, cacheKey);
+    }
+
+    private void commitLinkEvent(ShaderLinkEvent event, String defines, boolean cached) {
+        if (!event.shouldCommit()) return;
+        event.programID = programID;
+        event.defines = defines;
+        event.cached = cached;
+        event.commit();
     }
 
     public void bind() { glUseProgram(programID); }
 
     public void cleanup() {
         unbind();
+        SOURCES.remove(programID);
         if (programID != 0) glDeleteProgram(programID);
     }
 
@@ -48,6 +98,16 @@ public class ShaderProgram {
 
     public int getProgramID() { return programID; }
 
+    public static List<ShaderSource> getSources(int programID) { return SOURCES.get(programID); }
+
+    private static String injectDefines(String source, String defines) {
+        if (defines == null || defines.isEmpty()) return source;
+        if (!source.startsWith("#version")) return defines + source;
+        int lineEnd = source.indexOf('\n');
+        if (lineEnd < 0) return source + '\n' + defines;
+        return source.substring(0, lineEnd + 1) + defines + source.substring(lineEnd + 1);
+    }
+
     private void link(List<Integer> shaderModules) {
         glLinkProgram(programID);
         if (glGetProgrami(programID, GL_LINK_STATUS) == 0) throw new RuntimeException("Failed to link shader: " + glGetProgramInfoLog(programID, 1024));
@@ -64,5 +124,6 @@ public class ShaderProgram {
     }
 
     public record ShaderModuleData(String shaderFile, int shaderType) {}
+    public record ShaderSource(int type, String source) {}
 
 }
@@ -0,0 +1,54 @@
+package engine.graph.shader;
+
+import java.util.List;
+import java.util.function.Function;
+
+public class ShaderVariants {
+
+    private final List<ShaderProgram.ShaderModuleData> shaderModuleDataList;
+    private final String[] featureDefines;
+    private final Function<ShaderProgram, Uniforms> uniformsFactory;
+    private final ProgramBinaryCache binaryCache;
+    private final Variant[] variants;
+
+    public ShaderVariants(List<ShaderProgram.ShaderModuleData> shaderModuleDataList, String[] featureDefines, Function<ShaderProgram, Uniforms> uniformsFactory, ProgramBinaryCache binaryCache) {
+        this.shaderModuleDataList = shaderModuleDataList;
+        this.featureDefines = featureDefines;
+        this.uniformsFactory = uniformsFactory;
+        this.binaryCache = binaryCache;
+        variants = new Variant[1 << featureDefines.length];
+    }
+
+    public void cleanup() {
+        for (Variant variant : variants) {
+            if (variant != null) variant.program().cleanup();
+        }
+    }
+
+    public Variant get(int features) {
+        Variant variant = variants[features];
+        if (variant == null) {
+            ShaderProgram program = new ShaderProgram(shaderModuleDataList, buildDefines(features), binaryCache);
+            variant = new Variant(features, program, uniformsFactory.apply(program));
+            variants[features] = variant;
+        }
+        return variant;
+    }
+
+    public void warmUp(int... featureSets) {
+        for (int features : featureSets) get(features);
+    }
+
+    public int getVariantCount() { return variants.length; }
+
+    private String buildDefines(int features) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < featureDefines.length; i++) {
+            if ((features & (1 << i)) != 0) sb.append("#define ").append(featureDefines[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public record Variant(int features, ShaderProgram program, Uniforms uniforms) {}
+
+}
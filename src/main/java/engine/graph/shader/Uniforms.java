@@ -1,6 +1,9 @@
 package engine.graph.shader;
 
 import org.joml.*;
+import engine.Backends;
+import engine.graph.render.capture.FrameCapture;
+import engine.telemetry.Telemetry;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.FloatBuffer;
@@ -12,51 +15,76 @@ public class Uniforms {
 
     private int programID;
     private Map<String, Integer> uniforms;
+    // headless uniforms keep their names and counts but skip every gl call
+    private final boolean gl;
 
     public Uniforms(int programID) {
         this.programID = programID;
         uniforms = new HashMap<>();
+        gl = Backends.hasGL();
     }
 
     public void createUniform(String uniformName) {
+        if (!gl) {
+            uniforms.put(uniformName, -1);
+            return;
+        }
         int uniformLocation = glGetUniformLocation(programID, uniformName);
         if (uniformLocation < 0) throw new RuntimeException("Failed to locate uniform \"" + uniformName + "\" in shader program [" + programID + "]");
         uniforms.put(uniformName, uniformLocation);
     }
 
+    // uniforms compiled out of a shader variant resolve to -1, which glUniform* silently ignores
+    public void createOptionalUniform(String uniformName) {
+        uniforms.put(uniformName, gl ? glGetUniformLocation(programID, uniformName) : -1);
+    }
+
     public boolean hasUniform(String uniformName) {
         return uniforms.containsKey(uniformName);
     }
 
     private int getUniformLocation(String uniformName) {
+        Telemetry.count(Telemetry.Counter.UNIFORM_UPLOADS);
         Integer location = uniforms.get(uniformName);
         if (location == null) throw new RuntimeException("Failed to find uniform \"" + uniformName + "\"");
         return location.intValue();
     }
 
     public void setUniform(String uniformName, int value) {
-        glUniform1i(getUniformLocation(uniformName), value);
+        int location = getUniformLocation(uniformName);
+        if (gl) glUniform1i(location, value);
+        if (FrameCapture.isRecording()) FrameCapture.uniform(programID, uniformName, value);
     }
 
     public void setUniform(String uniformName, float value) {
-        glUniform1f(getUniformLocation(uniformName), value);
+        int location = getUniformLocation(uniformName);
+        if (gl) glUniform1f(location, value);
+        if (FrameCapture.isRecording()) FrameCapture.uniform(programID, uniformName, false, value);
     }
 
     public void setUniform(String uniformName, Vector2f value) {
-        glUniform2fv(getUniformLocation(uniformName), new float[] { value.x, value.y });
+        int location = getUniformLocation(uniformName);
+        if (gl) glUniform2f(location, value.x, value.y);
+        if (FrameCapture.isRecording()) FrameCapture.uniform(programID, uniformName, false, value.x, value.y);
     }
 
     public void setUniform(String uniformName, Vector3f value) {
-        glUniform3fv(getUniformLocation(uniformName), new float[] { value.x, value.y, value.z });
+        int location = getUniformLocation(uniformName);
+        if (gl) glUniform3f(location, value.x, value.y, value.z);
+        if (FrameCapture.isRecording()) FrameCapture.uniform(programID, uniformName, false, value.x, value.y, value.z);
     }
 
     public void setUniform(String uniformName, Vector4f value) {
-        glUniform4fv(getUniformLocation(uniformName), new float[] { value.x, value.y, value.z, value.w });
+        int location = getUniformLocation(uniformName);
+        if (gl) glUniform4f(location, value.x, value.y, value.z, value.w);
+        if (FrameCapture.isRecording()) FrameCapture.uniform(programID, uniformName, false, value.x, value.y, value.z, value.w);
     }
 
     public void setUniform(String uniformName, Matrix4f value) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            glUniformMatrix4fv(getUniformLocation(uniformName), false, value.get(stack.mallocFloat(16)));
+            int location = getUniformLocation(uniformName);
+            if (gl) glUniformMatrix4fv(location, false, value.get(stack.mallocFloat(16)));
+            if (FrameCapture.isRecording()) FrameCapture.uniform(programID, uniformName, true, value.get(new float[16]));
         }
     }
 
@@ -65,7 +93,13 @@ public class Uniforms {
             int length = values != null ? values.length : 0;
             FloatBuffer buf = stack.mallocFloat(16 * length);
             for (int i = 0; i < length; i++) { values[i].get(16 * i, buf); }
-            glUniformMatrix4fv(getUniformLocation(uniformName), false, buf);
+            int location = getUniformLocation(uniformName);
+            if (gl) glUniformMatrix4fv(location, false, buf);
+            if (FrameCapture.isRecording()) {
+                float[] captured = new float[16 * length];
+                buf.get(0, captured);
+                FrameCapture.uniform(programID, uniformName, true, captured);
+            }
         }
     }
 
@@ -0,0 +1,145 @@
+package engine.graph.texture;
+
+import engine.asset.Asset;
+import engine.asset.Assets;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.ktx.ktxTexture;
+import org.lwjgl.util.ktx.ktxTexture2;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.util.ktx.KTX.*;
+
+// a ktx2 file transcoded to the best block format the current gl supports; the native texture is held until uploaded
+final class KtxImage {
+
+    static final String EXTENSION = ".ktx2";
+
+    private static final int GL_COMPRESSED_RGB_S3TC_DXT1 = 0x83F0;
+    private static final int GL_COMPRESSED_RGBA_S3TC_DXT5 = 0x83F3;
+    private static final int GL_COMPRESSED_RGBA_BPTC_UNORM = 0x8E8C;
+    private static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    private static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+
+    // picked once on the gl thread; decode workers only read them
+    private static volatile Target opaqueTarget;
+    private static volatile Target alphaTarget;
+
+    private record Target(int transcodeFormat, int glInternalFormat) {}
+
+    private final ktxTexture2 texture;
+    private final int width;
+    private final int height;
+    private final int levels;
+    private final boolean transparent;
+    private final Target target;
+
+    private KtxImage(ktxTexture2 texture, boolean transparent, Target target) {
+        this.texture = texture;
+        this.width = texture.baseWidth();
+        this.height = texture.baseHeight();
+        this.levels = texture.numLevels();
+        this.transparent = transparent;
+        this.target = target;
+    }
+
+    // the .ktx2 written next to a png by KtxConverter, or null when there is none
+    static String replacement(String texturePath) {
+        if (texturePath == null || isKtx(texturePath)) return null;
+        int dot = texturePath.lastIndexOf('.');
+        String ktxPath = (dot > 0 ? texturePath.substring(0, dot) : texturePath) + EXTENSION;
+        return Assets.exists(ktxPath) ? ktxPath : null;
+    }
+
+    static boolean isKtx(String texturePath) {
+        return texturePath.toLowerCase().endsWith(EXTENSION);
+    }
+
+    // must run on the gl thread before the first load
+    static void selectTargets() {
+        if (opaqueTarget != null) return;
+        GLCapabilities caps = GL.getCapabilities();
+        if (caps.OpenGL42 || caps.GL_ARB_texture_compression_bptc) {
+            opaqueTarget = new Target(KTX_TTF_BC7_RGBA, GL_COMPRESSED_RGBA_BPTC_UNORM);
+            alphaTarget = opaqueTarget;
+        }
+        else if (caps.GL_EXT_texture_compression_s3tc) {
+            opaqueTarget = new Target(KTX_TTF_BC1_RGB, GL_COMPRESSED_RGB_S3TC_DXT1);
+            alphaTarget = new Target(KTX_TTF_BC3_RGBA, GL_COMPRESSED_RGBA_S3TC_DXT5);
+        }
+        else if (caps.OpenGL43 || caps.GL_ARB_ES3_compatibility) {
+            // etc1 blocks are valid etc2 rgb8 blocks
+            opaqueTarget = new Target(KTX_TTF_ETC1_RGB, GL_COMPRESSED_RGB8_ETC2);
+            alphaTarget = new Target(KTX_TTF_ETC2_RGBA, GL_COMPRESSED_RGBA8_ETC2_EAC);
+        }
+        else {
+            opaqueTarget = new Target(KTX_TTF_RGBA32, GL_RGBA8);
+            alphaTarget = opaqueTarget;
+        }
+    }
+
+    // reads and transcodes on the calling thread; safe on decode workers once selectTargets has run
+    static KtxImage load(String texturePath) {
+        if (opaqueTarget == null) throw new IllegalStateException("KTX2 targets not selected; create a TextureCache on the GL thread first.");
+        // loading the image data copies it, so the asset is only needed while the texture is created
+        try (MemoryStack stack = MemoryStack.stackPush(); Asset asset = Assets.open(texturePath)) {
+            PointerBuffer pp = stack.mallocPointer(1);
+            check(ktxTexture2_CreateFromMemory(asset.getData(), KTX_TEXTURE_CREATE_LOAD_IMAGE_DATA_BIT, pp), texturePath);
+            ktxTexture2 texture = ktxTexture2.create(pp.get(0));
+            // the converter only keeps an alpha channel for images that have transparent pixels
+            boolean transparent = ktxTexture2_GetNumComponents(texture) == 4;
+            Target target = transparent ? alphaTarget : opaqueTarget;
+            if (ktxTexture2_NeedsTranscoding(texture)) {
+                int result = ktxTexture2_TranscodeBasis(texture, target.transcodeFormat, 0);
+                if (result != KTX_SUCCESS) {
+                    ktxTexture_Destroy(ktxTexture.create(texture.address()));
+                    check(result, texturePath);
+                }
+            }
+            return new KtxImage(texture, transparent, target);
+        }
+    }
+
+    // uploads every level into the bound texture; compressed images cannot be mipmapped by gl, so the file carries its own chain
+    void upload() {
+        ktxTexture base = ktxTexture.create(texture.address());
+        ByteBuffer data = ktxTexture_GetData(base);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer offset = stack.mallocPointer(1);
+            for (int level = 0; level < levels; level++) {
+                check(ktxTexture_GetImageOffset(base, level, 0, 0, offset), "level " + level);
+                int size = (int) ktxTexture_GetImageSize(base, level);
+                ByteBuffer image = data.slice((int) offset.get(0), size);
+                int w = Math.max(1, width >> level), h = Math.max(1, height >> level);
+                if (target.glInternalFormat == GL_RGBA8) glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA8, w, h, 0, GL_RGBA, GL_UNSIGNED_BYTE, image);
+                else glCompressedTexImage2D(GL_TEXTURE_2D, level, target.glInternalFormat, w, h, 0, image);
+            }
+        }
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels - 1);
+    }
+
+    // bytes the transcoded levels occupy on the gpu
+    long getBytes() {
+        ktxTexture base = ktxTexture.create(texture.address());
+        long bytes = 0;
+        for (int level = 0; level < levels; level++) bytes += ktxTexture_GetImageSize(base, level);
+        return bytes;
+    }
+
+    void free() {
+        ktxTexture_Destroy(ktxTexture.create(texture.address()));
+    }
+
+    private static void check(int result, String what) {
+        if (result != KTX_SUCCESS) throw new RuntimeException("KTX2 texture \"" + what + "\" failed: " + ktxErrorString(result));
+    }
+
+    int getWidth() { return width; }
+    int getHeight() { return height; }
+    boolean isTransparent() { return transparent; }
+
+}
@@ -1,5 +1,11 @@
 package engine.graph.texture;
 
+import engine.Backends;
+import engine.asset.Asset;
+import engine.asset.Assets;
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.jfr.TextureLoadEvent;
+import engine.telemetry.jfr.TextureUploadEvent;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.*;
@@ -11,24 +17,88 @@ public class Texture {
 
     private int textureID;
     private final String texturePath;
+    private boolean transparent;
+    private long resourceID;
+    private long bytes;
+    private int fullWidth;
+    private int fullHeight;
+    // the mip of the source image currently stored as level 0; streamed textures move it, everything else keeps 0
+    private int residentMip = -1;
+    private boolean resident = true;
+    // >= 0 when this is a layer of a TextureArray, which owns the gl texture and its accounting
+    private int layer = -1;
+    // read by decode workers so they can skip textures evicted before their upload
+    private volatile boolean released;
+    // a streamed texture keeps its encoded file while alive, so moving to another mip decodes again without reading the file;
+    // encoded and decoding are guarded by this, as the decode workers and the gl thread both use them
+    private boolean streamed;
+    private Asset encoded;
+    private boolean decoding;
+
+    private Texture(String texturePath, boolean resident) {
+        this.texturePath = texturePath;
+        this.resident = resident;
+    }
+
+    // a texture whose pixels arrive later through TextureUploader; not resident until then
+    static Texture pending(String texturePath) {
+        return new Texture(texturePath, !Backends.hasGL());
+    }
+
+    static Texture layer(String texturePath, TextureArray array, int layer, boolean transparent) {
+        Texture texture = new Texture(texturePath, true);
+        texture.textureID = array.getTextureID();
+        texture.layer = layer;
+        texture.transparent = transparent;
+        return texture;
+    }
 
     public Texture(int width, int height, ByteBuffer buf) {
         this.texturePath = "";
-        generateTexture(width, height, buf);
+        if (Backends.hasGL()) generateTexture(width, height, buf);
     }
 
     public Texture(String texturePath) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
+        // headless textures are never sampled, so the file is not even decoded
+        if (!Backends.hasGL()) {
             this.texturePath = texturePath;
+            return;
+        }
+        if (KtxImage.isKtx(texturePath)) {
+            this.texturePath = texturePath;
+            TextureLoadEvent event = new TextureLoadEvent();
+            event.begin();
+            KtxImage image = KtxImage.load(texturePath);
+            if (event.shouldCommit()) {
+                event.path = texturePath;
+                event.bytes = Assets.size(texturePath);
+                event.width = image.getWidth();
+                event.height = image.getHeight();
+                event.commit();
+            }
+            uploadPending(image);
+            return;
+        }
+        this.texturePath = texturePath;
+        try (MemoryStack stack = MemoryStack.stackPush(); Asset asset = Assets.open(texturePath)) {
             IntBuffer w = stack.mallocInt(1);
             IntBuffer h = stack.mallocInt(1);
             IntBuffer channels = stack.mallocInt(1);
 
-            ByteBuffer buf = stbi_load(texturePath, w, h, channels, 4);
+            TextureLoadEvent event = new TextureLoadEvent();
+            event.begin();
+            ByteBuffer buf = stbi_load_from_memory(asset.getData(), w, h, channels, 4);
             if (buf == null) throw new RuntimeException("Texture file \"" + texturePath + "\" failed to load: " + stbi_failure_reason());
 
             int width = w.get();
             int height = h.get();
+            if (event.shouldCommit()) {
+                event.path = texturePath;
+                event.bytes = asset.size();
+                event.width = width;
+                event.height = height;
+                event.commit();
+            }
 
             generateTexture(width, height, buf);
 
@@ -37,24 +107,150 @@ public class Texture {
     }
 
     public void bind() {
-        glBindTexture(GL_TEXTURE_2D, textureID);
+        glBindTexture(getTarget(), textureID);
     }
 
     public void cleanup() {
+        released = true;
+        synchronized (this) {
+            // a worker decoding from the file closes it once done
+            if (!decoding) closeEncoded();
+        }
+        if (!Backends.hasGL() || textureID == 0 || layer >= 0) return;
         glDeleteTextures(textureID);
+        ResourceRegistry.release(resourceID);
     }
 
     private void generateTexture(int width, int height, ByteBuffer buf) {
-        textureID = glGenTextures();
+        transparent = hasTransparentPixels(width, height, buf);
+        fullWidth = width;
+        fullHeight = height;
+        residentMip = 0;
+        allocate(width, height, buf);
+    }
+
+    // called by the uploader with its pixel buffer bound, so the pixels are read from the start of that buffer.
+    // later calls re-specify the same texture at another mip of the source image
+    void uploadPending(int fullWidth, int fullHeight, int mip, boolean transparent) {
+        this.transparent = transparent;
+        this.fullWidth = fullWidth;
+        this.fullHeight = fullHeight;
+        residentMip = mip;
+        allocate(mipSize(fullWidth, mip), mipSize(fullHeight, mip), null);
+        resident = true;
+    }
+
+    // uploads the transcoded levels and frees the ktx image
+    void uploadPending(KtxImage image) {
+        TextureUploadEvent event = new TextureUploadEvent();
+        event.begin();
+        transparent = image.isTransparent();
+        fullWidth = image.getWidth();
+        fullHeight = image.getHeight();
+        residentMip = 0;
+        createTexture();
+        image.upload();
+        bytes = image.getBytes();
+        image.free();
+        commit(event, image.getWidth(), image.getHeight(), bytes);
+        resident = true;
+    }
 
+    private void allocate(int width, int height, ByteBuffer buf) {
+        TextureUploadEvent event = new TextureUploadEvent();
+        event.begin();
+        if (textureID == 0) createTexture();
+        else glBindTexture(GL_TEXTURE_2D, textureID);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buf);
+        // levels left over from a larger size fall outside the chain
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, mipLevels(width, height) - 1);
+        glGenerateMipmap(GL_TEXTURE_2D);
+        // the mip chain adds a third on top of the base level
+        bytes = (long) width * height * 4 * 4 / 3;
+        commit(event, width, height, (long) width * height * 4);
+    }
+
+    private void createTexture() {
+        textureID = glGenTextures();
         glBindTexture(GL_TEXTURE_2D, textureID);
         glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        // streamed textures blend between levels so that moving the resident mip is seamless; the rest keep the engine's point-sampled look
+        // but still pick a level, so distant surfaces read the small mips instead of the whole base level
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, streamed ? GL_LINEAR_MIPMAP_LINEAR : GL_NEAREST_MIPMAP_NEAREST);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buf);
-        glGenerateMipmap(GL_TEXTURE_2D);
     }
 
+    private void commit(TextureUploadEvent event, int width, int height, long uploadedBytes) {
+        // a streamed texture's kept file counts as native memory
+        long nativeBytes = encodedBytes();
+        if (resourceID != 0) ResourceRegistry.resize(resourceID, bytes, nativeBytes);
+        else resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.TEXTURE, texturePath.isEmpty() ? "generated " + width + "x" + height : texturePath, bytes, nativeBytes);
+
+        if (event.shouldCommit()) {
+            event.path = texturePath;
+            event.bytes = uploadedBytes;
+            event.width = width;
+            event.height = height;
+            event.commit();
+        }
+    }
+
+    // called before the first submit
+    void setStreamed() { streamed = true; }
+    boolean isStreamed() { return streamed; }
+
+    // the encoded file to decode another mip from, opened on first use; null once released. pair with endDecode
+    synchronized Asset beginDecode() {
+        if (released) return null;
+        if (encoded == null) encoded = Assets.open(texturePath);
+        decoding = true;
+        return encoded;
+    }
+
+    synchronized void endDecode() {
+        decoding = false;
+        if (released) closeEncoded();
+    }
+
+    private synchronized long encodedBytes() { return encoded != null ? encoded.size() : 0; }
+
+    private void closeEncoded() {
+        if (encoded == null) return;
+        encoded.close();
+        encoded = null;
+    }
+
+    static int mipSize(int size, int mip) {
+        return Math.max(1, size >> mip);
+    }
+
+    static int mipLevels(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    // texels at least this opaque count as opaque, so the near-opaque alpha editors leave along edges and borders of solid images does not
+    // send the whole material to the sorted, depth-write-off transparent pass
+    public static final int OPAQUE_ALPHA = 0xF0;
+
+    public static boolean hasTransparentPixels(int width, int height, ByteBuffer buf) {
+        int length = width * height * 4;
+        for (int i = 3; i < length; i += 4) {
+            if ((buf.get(i) & 0xFF) < OPAQUE_ALPHA) return true;
+        }
+        return false;
+    }
+
+    public boolean isTransparent() { return transparent; }
+    public boolean isResident() { return resident; }
+    public boolean isLayer() { return layer >= 0; }
+    public int getLayer() { return layer; }
+    public int getTarget() { return layer >= 0 ? GL_TEXTURE_2D_ARRAY : GL_TEXTURE_2D; }
+    boolean isReleased() { return released; }
+    public int getTextureID() { return textureID; }
+    public long getBytes() { return bytes; }
+    public int getFullWidth() { return fullWidth; }
+    public int getFullHeight() { return fullHeight; }
+    public int getResidentMip() { return residentMip; }
     public String getTexturePath() { return texturePath; }
 
 }
@@ -0,0 +1,65 @@
+package engine.graph.texture;
+
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.jfr.TextureUploadEvent;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL30.*;
+
+// equally sized rgba8 textures stacked as layers of one GL_TEXTURE_2D_ARRAY, so materials sampling them share a single bind
+public class TextureArray {
+
+    private final int textureID;
+    private final int width;
+    private final int height;
+    private final int layers;
+    private final long bytes;
+    private final long resourceID;
+
+    // layers are filled with setLayer and finished with generateMipmaps
+    TextureArray(int width, int height, int layers) {
+        this.width = width;
+        this.height = height;
+        this.layers = layers;
+        textureID = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, textureID);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, width, height, layers, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        bytes = (long) width * height * 4 * layers * 4 / 3;
+        resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.TEXTURE, "array " + width + "x" + height + " (" + layers + " layers)", bytes, 0);
+    }
+
+    // expects the array to be bound
+    void setLayer(int layer, String texturePath, ByteBuffer pixels) {
+        TextureUploadEvent event = new TextureUploadEvent();
+        event.begin();
+        glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        if (event.shouldCommit()) {
+            event.path = texturePath;
+            event.bytes = (long) width * height * 4;
+            event.width = width;
+            event.height = height;
+            event.commit();
+        }
+    }
+
+    void generateMipmaps() {
+        glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+    }
+
+    public void cleanup() {
+        glDeleteTextures(textureID);
+        ResourceRegistry.release(resourceID);
+    }
+
+    public int getTextureID() { return textureID; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getLayers() { return layers; }
+    public long getBytes() { return bytes; }
+
+}
@@ -1,31 +1,439 @@
 package engine.graph.texture;
 
+import engine.Backends;
+import engine.asset.Asset;
+import engine.asset.Assets;
+import engine.util.ContentHash;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
 
+import static org.lwjgl.opengl.GL30.GL_MAX_ARRAY_TEXTURE_LAYERS;
+import static org.lwjgl.opengl.GL30.glGetInteger;
+import static org.lwjgl.stb.STBImage.*;
+
+// textures referenced by a material stay resident; unreferenced ones wait in an lru tier and are evicted oldest first once the budget is exceeded
 public class TextureCache {
 
     public static final String DEFAULT_TEXTURE = "resources/default_texture.png";
 
-    private Map<String, Texture> textureMap;
+    // frames a streamed texture must want fewer mips before they are dropped, so a camera turning back and forth does not thrash uploads
+    private static final int DROP_DELAY_FRAMES = 120;
+    private static final int MAX_MIP_BIAS = 16;
+
+    // every path naming a texture, so files with identical content map to one shared entry
+    private final Map<String, Entry> textureMap;
+    private final Map<Long, Entry> byHash;
+    // entries of loose files whose hash the decode worker computes; matched up with byHash once their upload completes
+    private final Map<Texture, Entry> hashing;
+    // keyed by the path that first loaded the texture; access ordered, so iteration starts at the least recently released texture
+    private final LinkedHashMap<String, Entry> unreferenced;
+    private final Texture defaultTexture;
+    // stands in for normal maps that are not resident yet, so surfaces stay lit as if unmapped
+    private final Texture flatNormal;
+    private final TextureUploader uploader;
+    private final List<TextureArray> arrays;
+    // textures whose resident mip follows the screen-space demand reported through request; pruned lazily once evicted or packed
+    private final List<Entry> streamed;
+    private final TextureUploader.UploadListener onUploaded = this::uploaded;
+    private boolean streaming;
+    private long frame;
+    private int mipBias;
+    private long budgetBytes;
+    private boolean preferKtx = true;
+    private long residentBytes;
+    private boolean budgetWarned;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedBytes;
+    private long shared;
+    // textureMap keys beyond the first of each entry
+    private int aliases;
 
     public TextureCache() {
+        this(-1);
+    }
+
+    // a negative budget never evicts
+    public TextureCache(long budgetBytes) {
+        this(budgetBytes, 0, 0);
+    }
+
+    // with decode threads, misses return at once and the default texture is drawn until update has uploaded the real one
+    public TextureCache(long budgetBytes, int decodeThreads, long uploadBytesPerFrame) {
+        this.budgetBytes = budgetBytes;
+        uploader = decodeThreads > 0 && Backends.hasGL() ? new TextureUploader(decodeThreads, uploadBytesPerFrame) : null;
+        if (Backends.hasGL()) KtxImage.selectTargets();
         textureMap = new HashMap<>();
-        textureMap.put(DEFAULT_TEXTURE, new Texture(DEFAULT_TEXTURE));
+        byHash = new HashMap<>();
+        hashing = new IdentityHashMap<>();
+        arrays = new ArrayList<>();
+        streamed = new ArrayList<>();
+        unreferenced = new LinkedHashMap<>(16, 0.75f, true);
+        defaultTexture = new Texture(DEFAULT_TEXTURE);
+        // pinned: never counted against the budget and never evicted
+        textureMap.put(DEFAULT_TEXTURE, new Entry(DEFAULT_TEXTURE, 0, defaultTexture));
+        ByteBuffer normal = BufferUtils.createByteBuffer(4);
+        normal.put((byte) 128).put((byte) 128).put((byte) 255).put((byte) 255).flip();
+        flatNormal = new Texture(1, 1, normal);
     }
 
     public void cleanup() {
-        textureMap.values().forEach(Texture::cleanup);
+        if (uploader != null) uploader.cleanup();
+        flatNormal.cleanup();
+        new HashSet<>(textureMap.values()).forEach(entry -> entry.texture.cleanup());
+        textureMap.clear();
+        byHash.clear();
+        hashing.clear();
+        aliases = 0;
+        unreferenced.clear();
+        streamed.clear();
+        arrays.forEach(TextureArray::cleanup);
+        arrays.clear();
+        residentBytes = 0;
+    }
+
+    // loads the texture on a miss and adds a reference; pair every call with release
+    public Texture acquire(String texturePath) {
+        if (texturePath == null || texturePath.equals(DEFAULT_TEXTURE)) return defaultTexture;
+        Entry entry = textureMap.get(texturePath);
+        if (entry != null) {
+            hits++;
+            if (entry.references++ == 0) unreferenced.remove(entry.key);
+            return entry.texture;
+        }
+
+        misses++;
+        // materials keep naming the png; a converted .ktx2 beside it is loaded in its place
+        String ktxPath = preferKtx ? KtxImage.replacement(texturePath) : null;
+        String sourcePath = ktxPath != null ? ktxPath : texturePath;
+        // packs store every entry's hash; a loose file is hashed by the decode worker, or here when it is decoded here anyway
+        long hash = uploader != null ? Assets.packedHash(sourcePath) : ContentHash.ofFile(sourcePath);
+        entry = hash != 0 ? byHash.get(hash) : null;
+        if (entry != null) {
+            // another name for a texture already loaded shares it instead of decoding and uploading a copy
+            shared++;
+            aliases++;
+            entry.paths.add(texturePath);
+            textureMap.put(texturePath, entry);
+            if (entry.references++ == 0) unreferenced.remove(entry.key);
+            return entry.texture;
+        }
+        entry = new Entry(texturePath, hash, uploader != null ? Texture.pending(sourcePath) : new Texture(sourcePath));
+        entry.references = 1;
+        textureMap.put(texturePath, entry);
+        if (hash != 0) byHash.put(hash, entry);
+        else if (uploader != null) hashing.put(entry.texture, entry);
+        // ktx2 files carry their own mip chain and are uploaded whole
+        if (uploader != null && streaming && ktxPath == null) {
+            streamed.add(entry);
+            entry.texture.setStreamed();
+            entry.inFlight = true;
+            uploader.submit(entry.texture, TextureUploader.COARSE, hash == 0);
+        }
+        else if (uploader != null) uploader.submit(entry.texture, 0, hash == 0);
+        else {
+            residentBytes += entry.texture.getBytes();
+            evict();
+        }
+        return entry.texture;
+    }
+
+    // moves streamed textures toward the demand reported since the last call, then uploads textures decoded since then within the per-frame
+    // byte budget; call once per frame on the gl thread. returns how many were uploaded, any of which leaves the texture and pixel unpack bindings changed
+    public int update() {
+        if (uploader == null) return 0;
+        if (streaming) stream();
+        frame++;
+        return uploader.upload(onUploaded);
+    }
+
+    private void uploaded(Texture texture, long previousBytes, long hash) {
+        residentBytes += texture.getBytes() - previousBytes;
+        Entry entry = textureMap.get(texture.getTexturePath());
+        if (entry != null && entry.texture == texture) entry.inFlight = false;
+        Entry hashed = hashing.remove(texture);
+        if (hashed != null && hash != 0) share(hashed, hash);
+        evict();
+    }
+
+    // a loose file's hash is only known once it was decoded, so a duplicate is found after its own upload and folded into the entry
+    // loaded first. materials look textures up by path, so nothing still holds the dropped copy
+    private void share(Entry entry, long hash) {
+        Entry existing = byHash.get(hash);
+        if (existing == null) {
+            entry.hash = hash;
+            byHash.put(hash, entry);
+            return;
+        }
+        shared += entry.paths.size();
+        // the entry's own key becomes an alias too
+        aliases++;
+        for (String path : entry.paths) {
+            existing.paths.add(path);
+            textureMap.put(path, existing);
+        }
+        if (entry.references == 0) unreferenced.remove(entry.key);
+        else if (existing.references == 0) unreferenced.remove(existing.key);
+        existing.references += entry.references;
+        residentBytes -= entry.texture.getBytes();
+        entry.texture.cleanup();
+    }
+
+    // the on-screen size in pixels of something sampling this texture; the largest report per frame decides which mip a streamed texture needs
+    public void request(String texturePath, float pixels) {
+        if (!streaming || texturePath == null) return;
+        Entry entry = textureMap.get(texturePath);
+        if (entry == null) return;
+        if (entry.demandFrame != frame) {
+            entry.demandFrame = frame;
+            entry.demand = pixels;
+        }
+        else entry.demand = Math.max(entry.demand, pixels);
+    }
+
+    private void stream() {
+        long fixedBytes = residentBytes;
+        for (int i = streamed.size() - 1; i >= 0; i--) {
+            Entry entry = streamed.get(i);
+            Texture texture = entry.texture;
+            if (texture.isReleased() || texture.isLayer()) {
+                streamed.remove(i);
+                continue;
+            }
+            fixedBytes -= texture.getBytes();
+            // the image size is unknown until the coarse mip arrives
+            if (texture.getResidentMip() < 0) continue;
+            entry.coarsestMip = TextureUploader.coarseMip(texture.getFullWidth(), texture.getFullHeight());
+            // unseen textures fall back to their coarse mip
+            entry.wantedMip = entry.demandFrame == frame ? wantedMip(texture, entry.demand, entry.coarsestMip) : entry.coarsestMip;
+        }
+
+        // over budget, every streamed texture gives up the same number of fine mips
+        mipBias = 0;
+        while (budgetBytes >= 0 && mipBias < MAX_MIP_BIAS && fixedBytes + streamedBytes(mipBias) > budgetBytes) mipBias++;
+
+        for (int i = 0; i < streamed.size(); i++) {
+            Entry entry = streamed.get(i);
+            Texture texture = entry.texture;
+            int resident = texture.getResidentMip();
+            if (resident < 0 || entry.inFlight) continue;
+            int target = Math.min(entry.coarsestMip, entry.wantedMip + mipBias);
+            // finer mips are fetched at once; coarser ones wait out the delay unless the budget forces them
+            boolean drop = target > resident && (mipBias > 0 || ++entry.coarserFrames >= DROP_DELAY_FRAMES);
+            if (target < resident || drop) {
+                entry.inFlight = true;
+                entry.coarserFrames = 0;
+                uploader.submit(texture, target, false);
+            }
+            else if (target == resident) entry.coarserFrames = 0;
+        }
+    }
+
+    private long streamedBytes(int bias) {
+        long bytes = 0;
+        for (int i = 0; i < streamed.size(); i++) {
+            Entry entry = streamed.get(i);
+            Texture texture = entry.texture;
+            if (texture.getResidentMip() < 0) continue;
+            int mip = Math.min(entry.coarsestMip, entry.wantedMip + bias);
+            bytes += (long) Texture.mipSize(texture.getFullWidth(), mip) * Texture.mipSize(texture.getFullHeight(), mip) * 4 * 4 / 3;
+        }
+        return bytes;
     }
 
-    public Texture createTexture(String texturePath) {
-        return textureMap.computeIfAbsent(texturePath, Texture::new);
+    // a texture covering n pixels across needs the mip whose larger side is about n texels
+    private static int wantedMip(Texture texture, float pixels, int coarsestMip) {
+        int size = Math.max(texture.getFullWidth(), texture.getFullHeight());
+        if (pixels >= size) return 0;
+        int mip = 31 - Integer.numberOfLeadingZeros((int) (size / Math.max(pixels, 1.0f)));
+        return Math.min(mip, coarsestMip);
     }
 
+    public void release(String texturePath) {
+        if (texturePath == null || texturePath.equals(DEFAULT_TEXTURE)) return;
+        Entry entry = textureMap.get(texturePath);
+        // the whole cache was already cleaned up
+        if (entry == null) return;
+        if (entry.references == 0) throw new IllegalStateException("Texture \"" + texturePath + "\" released more often than acquired.");
+        if (--entry.references > 0) return;
+        // a layer shares its array with others, so it stays until the cache is cleaned up
+        if (entry.texture.isLayer()) return;
+        unreferenced.put(entry.key, entry);
+        evict();
+    }
+
+    // replaces the given textures with layers of texture arrays, one per image size, so draws of materials sampling them need no rebinds.
+    // layers are decoded from the named png even when a .ktx2 replacement exists, are never evicted and leave the texture binding changed;
+    // returns how many arrays were built
+    public int pack(Collection<String> texturePaths) {
+        if (!Backends.hasGL()) return 0;
+        int maxLayers = glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS);
+        Map<Long, List<String>> bySize = new LinkedHashMap<>();
+        // shared textures take one layer, however many of their names are given
+        Set<Entry> packed = new HashSet<>();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+            for (String texturePath : texturePaths) {
+                Entry entry = texturePath != null ? textureMap.get(texturePath) : null;
+                if (entry == null || entry.key.equals(DEFAULT_TEXTURE) || entry.texture.isLayer() || !packed.add(entry)) continue;
+                boolean known;
+                try (Asset asset = Assets.open(entry.key)) { known = stbi_info_from_memory(asset.getData(), w, h, channels); }
+                if (!known) throw new RuntimeException("Texture file \"" + entry.key + "\" failed to load: " + stbi_failure_reason());
+                bySize.computeIfAbsent(((long) w.get(0) << 32) | h.get(0), k -> new ArrayList<>()).add(entry.key);
+            }
+        }
+
+        int built = 0;
+        for (Map.Entry<Long, List<String>> group : bySize.entrySet()) {
+            int width = (int) (group.getKey() >>> 32);
+            int height = (int) (long) group.getKey();
+            List<String> paths = group.getValue();
+            for (int start = 0; start < paths.size(); start += maxLayers) {
+                packArray(width, height, paths.subList(start, Math.min(paths.size(), start + maxLayers)));
+                built++;
+            }
+        }
+        return built;
+    }
+
+    private void packArray(int width, int height, List<String> paths) {
+        TextureArray array = new TextureArray(width, height, paths.size());
+        arrays.add(array);
+        residentBytes += array.getBytes();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+            for (int layer = 0; layer < paths.size(); layer++) {
+                String texturePath = paths.get(layer);
+                ByteBuffer pixels;
+                try (Asset asset = Assets.open(texturePath)) { pixels = stbi_load_from_memory(asset.getData(), w, h, channels, 4); }
+                if (pixels == null) throw new RuntimeException("Texture file \"" + texturePath + "\" failed to load: " + stbi_failure_reason());
+                array.setLayer(layer, texturePath, pixels);
+                boolean transparent = Texture.hasTransparentPixels(width, height, pixels);
+                stbi_image_free(pixels);
+
+                // a texture still waiting for its upload is dropped by the uploader once released
+                Entry entry = textureMap.get(texturePath);
+                residentBytes -= entry.texture.getBytes();
+                hashing.remove(entry.texture);
+                entry.texture.cleanup();
+                entry.texture = Texture.layer(texturePath, array, layer, transparent);
+                unreferenced.remove(texturePath);
+            }
+        }
+        array.generateMipmaps();
+        evict();
+    }
+
+    // resident textures only; evicted and unknown paths fall back to the default texture
     public Texture getTexture(String texturePath) {
-        Texture texture = null;
-        if (texturePath != null) texture = textureMap.get(texturePath);
-        if (texture == null) texture = textureMap.get(DEFAULT_TEXTURE);
-        return texture;
+        Entry entry = null;
+        if (texturePath != null) entry = textureMap.get(texturePath);
+        return entry != null && entry.texture.isResident() ? entry.texture : defaultTexture;
+    }
+
+    public Texture getNormalMap(String texturePath) {
+        Entry entry = null;
+        if (texturePath != null) entry = textureMap.get(texturePath);
+        return entry != null && entry.texture.isResident() ? entry.texture : flatNormal;
+    }
+
+    // streamed textures need decode threads; affects later misses only
+    public void setStreaming(boolean streaming) { this.streaming = streaming; }
+    public boolean isStreaming() { return streaming && uploader != null; }
+
+    // false always loads the png a material names, even when a converted .ktx2 exists; affects later misses only
+    public void setPreferKtx(boolean preferKtx) { this.preferKtx = preferKtx; }
+
+    public void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        budgetWarned = false;
+        evict();
+    }
+
+    private void evict() {
+        if (budgetBytes < 0) return;
+        Iterator<Map.Entry<String, Entry>> it = unreferenced.entrySet().iterator();
+        while (residentBytes > budgetBytes && it.hasNext()) {
+            Entry lru = it.next().getValue();
+            it.remove();
+            for (String path : lru.paths) textureMap.remove(path);
+            if (byHash.get(lru.hash) == lru) byHash.remove(lru.hash);
+            hashing.remove(lru.texture);
+            aliases -= lru.paths.size() - 1;
+            long bytes = lru.texture.getBytes();
+            lru.texture.cleanup();
+            residentBytes -= bytes;
+            evictedBytes += bytes;
+            evictions++;
+        }
+        // referenced textures cannot be evicted, so the budget is only a target
+        if (residentBytes > budgetBytes && !budgetWarned) {
+            System.err.println("Referenced textures use " + residentBytes + " bytes, over the texture budget of " + budgetBytes + " bytes.");
+            budgetWarned = true;
+        }
+        else if (residentBytes <= budgetBytes) budgetWarned = false;
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getEvictions() { return evictions; }
+    public long getEvictedBytes() { return evictedBytes; }
+    public long getResidentBytes() { return residentBytes; }
+    public long getBudget() { return budgetBytes; }
+    public int getResidentCount() { return textureMap.size() - aliases; }
+    // texture names that resolved to an already loaded texture with identical content
+    public long getSharedCount() { return shared; }
+
+    // gpu memory a separate copy of every shared texture would take; textures still waiting for their upload count once resident
+    public long getSharedBytes() {
+        long bytes = 0;
+        for (Entry entry : byHash.values()) bytes += (entry.paths.size() - 1) * entry.texture.getBytes();
+        return bytes;
+    }
+    public int getUnreferencedCount() { return unreferenced.size(); }
+    public int getArrayCount() { return arrays.size(); }
+    public int getStreamedCount() { return streamed.size(); }
+    public int getMipBias() { return mipBias; }
+    public int getPendingCount() { return uploader != null ? uploader.getPending() : 0; }
+
+    public String summary() {
+        long lookups = hits + misses;
+        return String.format("textures: %d resident (%d unreferenced, %d pending, %d arrays, %d streamed at mip bias %d), %d bytes of %s, %d hits, %d misses (%.1f%% hit rate), %d shared by content (%d bytes saved), %d evictions (%d bytes)",
+                getResidentCount(), unreferenced.size(), getPendingCount(), arrays.size(), streamed.size(), mipBias, residentBytes, budgetBytes < 0 ? "unbounded" : budgetBytes + " budget",
+                hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, shared, getSharedBytes(), evictions, evictedBytes);
+    }
+
+    private static final class Entry {
+        final String key;
+        long hash;
+        final List<String> paths;
+        Texture texture;
+        int references;
+        // streaming state, unused for other textures
+        boolean inFlight;
+        float demand;
+        long demandFrame = -1;
+        int wantedMip;
+        int coarsestMip;
+        int coarserFrames;
+
+        Entry(String key, long hash, Texture texture) {
+            this.key = key;
+            this.hash = hash;
+            this.texture = texture;
+            paths = new ArrayList<>(1);
+            paths.add(key);
+        }
     }
 
 }
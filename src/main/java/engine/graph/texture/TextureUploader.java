@@ -0,0 +1,256 @@
+package engine.graph.texture;
+
+import engine.asset.Asset;
+import engine.asset.Assets;
+import engine.telemetry.jfr.TextureLoadEvent;
+import engine.util.ContentHash;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageResize.stbir_resize_uint8;
+
+// decodes textures on worker threads and uploads them on the gl thread through a ring of pixel buffers, a bounded number of bytes per frame
+class TextureUploader {
+
+    // one buffer per frame in flight, so a buffer is normally free again by the time the ring wraps
+    private static final int RING_SIZE = 3;
+
+    // submitted in place of a mip, picks the first level no larger than COARSE_SIZE once the image size is known
+    static final int COARSE = -1;
+    static final int COARSE_SIZE = 64;
+
+    // gets the bytes the texture held before, since streamed textures are uploaded again, and the content hash when one was asked for
+    interface UploadListener {
+        void uploaded(Texture texture, long previousBytes, long hash);
+    }
+
+    // either rgba pixels of one mip for the pixel buffer ring or a transcoded ktx2 image, which is small enough to upload directly.
+    // pixels of a mip above 0 come from the resizer rather than stb_image and are freed accordingly
+    private record Decoded(Texture texture, ByteBuffer pixels, KtxImage ktx, int fullWidth, int fullHeight, int mip, boolean transparent, long hash) {
+        void free() {
+            if (pixels == null) ktx.free();
+            else if (mip > 0) MemoryUtil.memFree(pixels);
+            else stbi_image_free(pixels);
+        }
+    }
+
+    private final ExecutorService decoders;
+    private final ConcurrentLinkedQueue<Decoded> decoded;
+    private final AtomicInteger pending;
+    private final long bytesPerFrame;
+    private final int[] pixelBuffers;
+    private final long[] fences;
+    private int next;
+
+    TextureUploader(int decodeThreads, long bytesPerFrame) {
+        this.bytesPerFrame = bytesPerFrame;
+        AtomicInteger threadIndex = new AtomicInteger();
+        decoders = Executors.newFixedThreadPool(Math.max(1, decodeThreads), r -> {
+            Thread thread = new Thread(r, "texture-decode-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        decoded = new ConcurrentLinkedQueue<>();
+        pending = new AtomicInteger();
+        pixelBuffers = new int[RING_SIZE];
+        glGenBuffers(pixelBuffers);
+        fences = new long[RING_SIZE];
+    }
+
+    void submit(Texture texture) {
+        submit(texture, 0, false);
+    }
+
+    // mip 0 is the full image; streamed textures ask for smaller levels, or COARSE for their first upload. with hash, the worker also hashes
+    // the file it reads, so content sharing costs no file access on the gl thread
+    void submit(Texture texture, int mip, boolean hash) {
+        pending.incrementAndGet();
+        decoders.execute(() -> decode(texture, mip, hash));
+    }
+
+    static int coarseMip(int width, int height) {
+        return Math.max(0, Texture.mipLevels(width, height) - Texture.mipLevels(COARSE_SIZE, COARSE_SIZE));
+    }
+
+    private void decode(Texture texture, int mip, boolean hash) {
+        if (texture.isReleased()) {
+            pending.decrementAndGet();
+            return;
+        }
+        String texturePath = texture.getTexturePath();
+        if (KtxImage.isKtx(texturePath)) {
+            decodeKtx(texture, hash);
+            return;
+        }
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+
+            TextureLoadEvent event = new TextureLoadEvent();
+            event.begin();
+            ByteBuffer pixels;
+            long fileBytes;
+            long contentHash;
+            // streamed textures decode from the file they keep, other textures read it once and let it go
+            boolean streamed = texture.isStreamed();
+            Asset asset = null;
+            try {
+                asset = streamed ? texture.beginDecode() : Assets.open(texturePath);
+                if (asset == null) {
+                    pending.decrementAndGet();
+                    return;
+                }
+                fileBytes = asset.size();
+                contentHash = hash ? ContentHash.of(asset.getData()) : 0;
+                pixels = stbi_load_from_memory(asset.getData(), w, h, channels, 4);
+                if (pixels == null) throw new RuntimeException("Texture file \"" + texturePath + "\" failed to load: " + stbi_failure_reason());
+            }
+            catch (RuntimeException e) {
+                // the default texture stays in place of a texture that cannot be loaded
+                System.err.println(e.getMessage());
+                pending.decrementAndGet();
+                return;
+            }
+            finally {
+                if (streamed && asset != null) texture.endDecode();
+                else if (asset != null) asset.close();
+            }
+
+            int width = w.get(0);
+            int height = h.get(0);
+            if (event.shouldCommit()) {
+                event.path = texturePath;
+                event.bytes = fileBytes;
+                event.width = width;
+                event.height = height;
+                event.commit();
+            }
+            boolean transparent = Texture.hasTransparentPixels(width, height, pixels);
+            if (mip == COARSE) mip = coarseMip(width, height);
+            mip = Math.min(mip, Texture.mipLevels(width, height) - 1);
+            if (mip > 0) {
+                // the file only holds the full image, so smaller mips are resampled here rather than on the gl thread
+                int mipWidth = Texture.mipSize(width, mip), mipHeight = Texture.mipSize(height, mip);
+                ByteBuffer resized = MemoryUtil.memAlloc(mipWidth * mipHeight * 4);
+                stbir_resize_uint8(pixels, width, height, 0, resized, mipWidth, mipHeight, 0, 4);
+                stbi_image_free(pixels);
+                pixels = resized;
+            }
+            decoded.add(new Decoded(texture, pixels, null, width, height, mip, transparent, contentHash));
+        }
+    }
+
+    private void decodeKtx(Texture texture, boolean hash) {
+        String texturePath = texture.getTexturePath();
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+        KtxImage image;
+        long contentHash;
+        try {
+            image = KtxImage.load(texturePath);
+            contentHash = hash ? ContentHash.ofFile(texturePath) : 0;
+        }
+        catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            pending.decrementAndGet();
+            return;
+        }
+        if (event.shouldCommit()) {
+            event.path = texturePath;
+            event.bytes = Assets.size(texturePath);
+            event.width = image.getWidth();
+            event.height = image.getHeight();
+            event.commit();
+        }
+        decoded.add(new Decoded(texture, null, image, image.getWidth(), image.getHeight(), 0, image.isTransparent(), contentHash));
+    }
+
+    // uploads decoded textures until the frame's byte budget is spent, always at least one so oversized textures still progress;
+    // returns how many were uploaded
+    int upload(UploadListener onUploaded) {
+        int uploaded = 0;
+        long bytes = 0;
+        Decoded image;
+        while ((uploaded == 0 || bytes < bytesPerFrame) && (image = decoded.peek()) != null) {
+            if (image.texture.isReleased()) {
+                decoded.poll();
+                image.free();
+                pending.decrementAndGet();
+                continue;
+            }
+
+            if (image.ktx != null) {
+                decoded.poll();
+                long size = image.ktx.getBytes();
+                long previous = image.texture.getBytes();
+                image.texture.uploadPending(image.ktx);
+                pending.decrementAndGet();
+                onUploaded.uploaded(image.texture, previous, image.hash);
+                bytes += size;
+                uploaded++;
+                continue;
+            }
+
+            // never wait on the gpu: if the next buffer is still being read the rest waits for a later frame
+            long fence = fences[next];
+            if (fence != 0) {
+                if (glClientWaitSync(fence, 0, 0) == GL_TIMEOUT_EXPIRED) break;
+                glDeleteSync(fence);
+                fences[next] = 0;
+            }
+            decoded.poll();
+
+            long size = (long) Texture.mipSize(image.fullWidth, image.mip) * Texture.mipSize(image.fullHeight, image.mip) * 4;
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pixelBuffers[next]);
+            glBufferData(GL_PIXEL_UNPACK_BUFFER, size, GL_STREAM_DRAW);
+            ByteBuffer mapped = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, size, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+            if (mapped == null) throw new RuntimeException("Failed to map texture upload buffer for \"" + image.texture.getTexturePath() + "\".");
+            MemoryUtil.memCopy(image.pixels, mapped);
+            glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+            image.free();
+
+            long previous = image.texture.getBytes();
+            image.texture.uploadPending(image.fullWidth, image.fullHeight, image.mip, image.transparent);
+            fences[next] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            next = (next + 1) % RING_SIZE;
+            pending.decrementAndGet();
+
+            onUploaded.uploaded(image.texture, previous, image.hash);
+            bytes += size;
+            uploaded++;
+        }
+        if (uploaded > 0) {
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+            glBindTexture(GL_TEXTURE_2D, 0);
+        }
+        return uploaded;
+    }
+
+    // textures queued or decoded but not yet resident
+    int getPending() { return pending.get(); }
+
+    void cleanup() {
+        decoders.shutdownNow();
+        // a decode in progress cannot be interrupted, so give it the chance to finish before its pixels are freed
+        try { decoders.awaitTermination(1, TimeUnit.SECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        Decoded image;
+        while ((image = decoded.poll()) != null) image.free();
+        for (long fence : fences) {
+            if (fence != 0) glDeleteSync(fence);
+        }
+        glDeleteBuffers(pixelBuffers);
+    }
+
+}
@@ -0,0 +1,112 @@
+package engine.input;
+
+import org.joml.Vector2f;
+
+import java.io.*;
+import java.util.Arrays;
+
+// captures input for every loop iteration that handled input or updated, so a session can be replayed exactly; the simulation
+// runs on fixed steps while recording, so the loop timings stored alongside are only for reporting
+public class InputRecorder {
+
+    static final int MAGIC = 0x54444950; // "TDIP"
+    // version 1 logs were recorded with wall-clock steps and cannot be replayed on fixed ones
+    static final int VERSION = 2;
+
+    static final int FLAG_INPUT = 1;
+    static final int FLAG_UPDATE = 1 << 1;
+    static final int FLAG_LEFT_BUTTON = 1 << 2;
+    static final int FLAG_RIGHT_BUTTON = 1 << 3;
+    static final int FLAG_MOUSE_DELTA = 1 << 4;
+
+    private final DataOutputStream out;
+    private final String filePath;
+    private int[] keys;
+    private int keyCount;
+    private long inputMillis;
+    private long updateMillis;
+    private boolean handledInput;
+    private boolean updated;
+    private int frames;
+
+    public InputRecorder(String filePath, int ups, int fps) {
+        this.filePath = filePath;
+        keys = new int[8];
+        try {
+            File parent = new File(filePath).getAbsoluteFile().getParentFile();
+            if (parent != null) parent.mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(ups);
+            out.writeShort(fps);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to open input log \"" + filePath + "\".", e);
+        }
+    }
+
+    public void beginFrame() {
+        keyCount = 0;
+        inputMillis = 0;
+        updateMillis = 0;
+        handledInput = false;
+        updated = false;
+    }
+
+    // only keys the app actually asks about are stored, and only while held
+    public void keyQueried(int key, boolean pressed) {
+        if (!pressed) return;
+        for (int i = 0; i < keyCount; i++) {
+            if (keys[i] == key) return;
+        }
+        if (keyCount == keys.length) keys = Arrays.copyOf(keys, keyCount * 2);
+        keys[keyCount++] = key;
+    }
+
+    public void input(long diffTimeMillis) {
+        inputMillis = diffTimeMillis;
+        handledInput = true;
+    }
+
+    public void update(long diffTimeMillis) {
+        updateMillis = diffTimeMillis;
+        updated = true;
+    }
+
+    public void endFrame(MouseInput mouseInput) {
+        // idle spins of the loop change nothing and are not recorded
+        if (!handledInput && !updated) return;
+        Vector2f delta = mouseInput.getDeltaRotation();
+        int flags = 0;
+        if (handledInput) flags |= FLAG_INPUT;
+        if (updated) flags |= FLAG_UPDATE;
+        if (mouseInput.isLeftButtonPressed()) flags |= FLAG_LEFT_BUTTON;
+        if (mouseInput.isRightButtonPressed()) flags |= FLAG_RIGHT_BUTTON;
+        if (handledInput && (delta.x != 0 || delta.y != 0)) flags |= FLAG_MOUSE_DELTA;
+
+        try {
+            out.writeByte(flags);
+            if (handledInput) out.writeInt((int) inputMillis);
+            if (updated) out.writeInt((int) updateMillis);
+            if ((flags & FLAG_MOUSE_DELTA) != 0) {
+                out.writeFloat(delta.x);
+                out.writeFloat(delta.y);
+            }
+            out.writeByte(keyCount);
+            for (int i = 0; i < keyCount; i++) out.writeShort(keys[i]);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to write input log \"" + filePath + "\".", e);
+        }
+        frames++;
+    }
+
+    public void close() {
+        try { out.close(); }
+        catch (IOException e) { System.err.println("Failed to close input log \"" + filePath + "\": " + e.getMessage()); }
+    }
+
+    public int getFrames() { return frames; }
+
+}
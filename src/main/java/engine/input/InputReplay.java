@@ -0,0 +1,101 @@
+package engine.input;
+
+import engine.graph.model.Model;
+import engine.scene.Scene;
+import engine.scene.model.Entity;
+import org.joml.Matrix4f;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// plays back a log written by InputRecorder; the whole log is read up front so playback never touches the disk
+public class InputReplay {
+
+    private final List<Frame> frames;
+    private final int ups;
+    private final int fps;
+    private int index = -1;
+    private Frame current;
+
+    public InputReplay(String filePath) {
+        frames = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != InputRecorder.MAGIC) throw new RuntimeException("\"" + filePath + "\" is not an input log.");
+            int version = in.readShort();
+            if (version != InputRecorder.VERSION) throw new RuntimeException("Unsupported input log version " + version + " in \"" + filePath + "\".");
+            ups = in.readShort();
+            fps = in.readShort();
+
+            while (true) {
+                int flags = in.read();
+                if (flags < 0) break;
+                long inputMillis = (flags & InputRecorder.FLAG_INPUT) != 0 ? in.readInt() : -1;
+                long updateMillis = (flags & InputRecorder.FLAG_UPDATE) != 0 ? in.readInt() : -1;
+                float dx = 0, dy = 0;
+                if ((flags & InputRecorder.FLAG_MOUSE_DELTA) != 0) {
+                    dx = in.readFloat();
+                    dy = in.readFloat();
+                }
+                int[] keys = new int[in.readUnsignedByte()];
+                for (int i = 0; i < keys.length; i++) keys[i] = in.readShort();
+                frames.add(new Frame(inputMillis, updateMillis, dx, dy, (flags & InputRecorder.FLAG_LEFT_BUTTON) != 0, (flags & InputRecorder.FLAG_RIGHT_BUTTON) != 0, keys));
+            }
+        }
+        catch (EOFException e) {
+            throw new RuntimeException("Input log \"" + filePath + "\" is truncated.", e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read input log \"" + filePath + "\".", e);
+        }
+    }
+
+    public boolean next() {
+        if (index + 1 >= frames.size()) return false;
+        current = frames.get(++index);
+        return true;
+    }
+
+    public void apply(MouseInput mouseInput) {
+        mouseInput.setState(current.dx, current.dy, current.leftButton, current.rightButton);
+    }
+
+    public boolean isKeyPressed(int key) {
+        if (current == null) return false;
+        for (int k : current.keys) {
+            if (k == key) return true;
+        }
+        return false;
+    }
+
+    public boolean hasInput() { return current.inputMillis >= 0; }
+    public long getInputMillis() { return current.inputMillis; }
+    public boolean hasUpdate() { return current.updateMillis >= 0; }
+    public long getUpdateMillis() { return current.updateMillis; }
+    public int getFrameCount() { return frames.size(); }
+    public int getFrameIndex() { return index; }
+    public int getUPS() { return ups; }
+    public int getFPS() { return fps; }
+
+    // hashes the camera and every entity transform; equal across runs when the simulation replayed identically
+    public static long stateChecksum(Scene scene) {
+        long hash = 17;
+        hash = hash(hash, scene.getCamera().getViewMatrix());
+        for (Model model : scene.getModels()) {
+            for (Entity entity : model.getEntities()) {
+                hash = hash(hash, entity.getModelMatrix());
+                if (entity.getAnimationData() != null) hash = hash * 31 + entity.getAnimationData().getCurrentFrameIndex();
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, Matrix4f matrix) {
+        float[] values = matrix.get(new float[16]);
+        for (float value : values) hash = hash * 31 + Float.floatToIntBits(value);
+        return hash;
+    }
+
+    private record Frame(long inputMillis, long updateMillis, float dx, float dy, boolean leftButton, boolean rightButton, int[] keys) {}
+
+}
@@ -39,6 +39,13 @@ public class MouseInput {
     public boolean isLeftButtonPressed() { return leftButtonPressed; }
     public boolean isRightButtonPressed() { return rightButtonPressed; }
 
+    // replayed input replaces whatever the callbacks reported this frame
+    public void setState(float deltaX, float deltaY, boolean leftButtonPressed, boolean rightButtonPressed) {
+        deltaRotation.set(deltaX, deltaY);
+        this.leftButtonPressed = leftButtonPressed;
+        this.rightButtonPressed = rightButtonPressed;
+    }
+
     public void input() {
         deltaRotation.x = 0;
         deltaRotation.y = 0;
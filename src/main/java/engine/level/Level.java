@@ -1,5 +1,9 @@
 package engine.level;
 
+import engine.asset.Assets;
+import engine.graph.model.Material;
+import engine.graph.model.Model;
+import engine.graph.texture.TextureCache;
 import engine.scene.Scene;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -7,15 +11,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import engine.scene.model.ModelLoader;
 import engine.sound.SoundBuffer;
 import engine.sound.SoundSource;
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.jfr.LevelLoadEvent;
+import engine.util.Util;
 import org.joml.Vector3f;
 
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class Level {
 
+    // the mapper caches its deserializers, so one instance is shared by every load
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // encoded size above which a sound source streams; half a megabyte of ogg is around half a minute, several megabytes decoded
+    public static final long STREAM_THRESHOLD_BYTES = 512L << 10;
+
     private final String filePath;
     private Scene scene;
 
@@ -24,26 +37,71 @@ public class Level {
     }
 
     public void load(int windowWidth, int windowHeight) {
-        this.scene = new Scene(windowWidth, windowHeight);
+        load(windowWidth, windowHeight, null);
+    }
+
+    // textures come from the shared cache when one is given, otherwise from a cache owned by the scene
+    public void load(int windowWidth, int windowHeight, TextureCache textureCache) {
+        load(windowWidth, windowHeight, textureCache, false);
+    }
+
+    // packTextures moves the textures of the level's models into texture arrays once everything is loaded
+    public void load(int windowWidth, int windowHeight, TextureCache textureCache, boolean packTextures) {
+        LevelLoadEvent event = new LevelLoadEvent();
+        event.begin();
+        ResourceRegistry.setLevel(filePath);
+        this.scene = new Scene(windowWidth, windowHeight, textureCache);
+        // a shared cache may already hold textures shared by an earlier level, so only this load's share is counted
+        long sharedTextures = scene.getTextureCache().getSharedCount();
+        long sharedTextureBytes = scene.getTextureCache().getSharedBytes();
         this.loadLevel(this.filePath);
+        if (packTextures) packTextures();
+
+        if (event.shouldCommit()) {
+            // with decode threads, loose textures are matched by content only once uploaded, so those are not counted yet
+            sharedTextures = scene.getTextureCache().getSharedCount() - sharedTextures;
+            sharedTextureBytes = scene.getTextureCache().getSharedBytes() - sharedTextureBytes;
+            event.path = filePath;
+            event.bytes = Assets.size(filePath);
+            event.models = scene.getModelMap().size();
+            for (Model model : scene.getModelMap().values()) event.entities += model.getEntities().size();
+            event.sharedAssets = (int) sharedTextures + scene.getSoundManager().getSharedCount();
+            event.sharedBytes = sharedTextureBytes + scene.getSoundManager().getSharedBytes();
+            event.commit();
+        }
     }
 
     public Scene getScene() { return scene; }
 
+    private void packTextures() {
+        Set<String> texturePaths = new LinkedHashSet<>();
+        for (Model model : scene.getModels()) {
+            for (Material material : model.getMaterials()) {
+                texturePaths.add(material.getTexturePath());
+                texturePaths.add(material.getNormalMapPath());
+            }
+        }
+        // the skybox pass samples plain 2d textures
+        if (scene.getSkyBox() != null) {
+            for (Material material : scene.getSkyBox().getModel().getMaterials()) texturePaths.remove(material.getTexturePath());
+        }
+        texturePaths.remove(null);
+        scene.getTextureCache().pack(texturePaths);
+    }
+
     private void loadLevel(String filePath) {
         try {
-            String file = new String(Files.readAllBytes(Paths.get(filePath)));
-
-            ObjectMapper mapper = new ObjectMapper();
-            LevelData data = mapper.readValue(file, LevelData.class);
-
-            applyLevelData(data);
+            applyLevelData(parse(Util.readFile(filePath)));
         }
         catch (Exception e) {
             throw new RuntimeException("Failed to parse level data at \"" + filePath + "\".", e);
         }
     }
 
+    static LevelData parse(String json) throws IOException {
+        return MAPPER.readValue(json, LevelData.class);
+    }
+
     private void applyLevelData(LevelData data) throws Exception {
         if (data.environment.skybox.active) {
             engine.scene.SkyBox sb = new engine.scene.SkyBox(data.environment.skybox.src, scene.getTextureCache());
@@ -81,7 +139,7 @@ public class Level {
         scene.setSceneLights(sceneLights);
 
         for (int i = 0; i < data.environment.models.length; i++) {
-            engine.graph.model.Model model = ModelLoader.loadModel(
+            Model model = ModelLoader.loadModel(
                 data.environment.models[i].id,
                 data.environment.models[i].src,
                 scene.getTextureCache(),
@@ -124,9 +182,9 @@ public class Level {
                 SoundBuffer.FileType ft = SoundBuffer.StringToFileType.get(parts[parts.length - 1].trim().toLowerCase());
                 if (ft == null) throw new RuntimeException("Failed to parse file type for entity sound source: \"" + source + "\".\nSupported types: " + String.join(", ", SoundBuffer.StringToFileType.keySet()));
 
-                SoundBuffer sb = new SoundBuffer(source, ft);
-                scene.getSoundManager().addSoundBuffer(sb);
-                bufs.add(sb);
+                // long files such as music stream instead of being decoded whole while the level loads
+                if (Assets.size(source) > STREAM_THRESHOLD_BYTES) bufs.add(scene.getSoundManager().getSoundStream(source, ft));
+                else bufs.add(scene.getSoundManager().getSoundBuffer(source, ft));
             }
 
             SoundSource ss = new SoundSource(
@@ -135,6 +193,7 @@ public class Level {
             );
             if (data.environment.entities[i].sound.relative) ss.setPosition(0.0f, 0.0f, 0.0f);
             else ss.setPosition(entity.getPosition());
+            ss.setPriority(data.environment.entities[i].sound.priority);
 
             entity.setSound(new engine.scene.model.Entity.Sound(data.environment.entities[i].id, ss, bufs, data.environment.entities[i].sound.activeSource));
             scene.getSoundManager().addSoundSource(entity.getSound().getID(), entity.getSound().getSource());
@@ -209,7 +268,7 @@ public class Level {
         public SpotLight[] spots;
     }
 
-    private static class Model {
+    private static class ModelData {
         @JsonProperty("id")
         public String id;
         @JsonProperty("src")
@@ -231,6 +290,9 @@ public class Level {
         public String[] sources;
         @JsonProperty("activeSource")
         public int activeSource = -1;
+        // higher priorities keep their voice when more sounds play than there are voices
+        @JsonProperty("priority")
+        public int priority;
     }
 
     private static class Billboard {
@@ -265,12 +327,12 @@ public class Level {
         @JsonProperty("lights")
         public Lights lights;
         @JsonProperty("models")
-        public Model[] models;
+        public ModelData[] models;
         @JsonProperty("entities")
         public Entity[] entities;
     }
 
-    private static class LevelData {
+    static class LevelData {
         @JsonProperty("name")
         public String name;
         @JsonProperty("environment")
@@ -7,14 +7,20 @@ import engine.scene.light.SceneLights;
 import engine.scene.view.*;
 import engine.sound.SoundListener;
 import engine.sound.SoundManager;
+import engine.telemetry.Telemetry;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Scene {
 
     private final Map<String, Model> modelMap;
+    // mirrors modelMap so per-frame walks index a list instead of allocating map iterators
+    private final List<Model> models;
     private final TextureCache textureCache;
+    private final boolean ownsTextureCache;
 
     private final Projection projection;
     private final Camera camera;
@@ -27,8 +33,15 @@ public class Scene {
     private SkyBox skyBox;
 
     public Scene(int width, int height) {
+        this(width, height, null);
+    }
+
+    // a shared cache outlives the scene, so textures released here can be reused by the next level without reloading
+    public Scene(int width, int height, TextureCache sharedTextureCache) {
         modelMap = new HashMap<>();
-        textureCache = new TextureCache();
+        models = new ArrayList<>();
+        ownsTextureCache = sharedTextureCache == null;
+        textureCache = ownsTextureCache ? new TextureCache() : sharedTextureCache;
         projection = new Projection(width, height);
         camera = new Camera();
         fog = new Fog();
@@ -44,10 +57,13 @@ public class Scene {
     }
 
     public void addModel(Model model) {
-        modelMap.put(model.getID(), model);
+        Model previous = modelMap.put(model.getID(), model);
+        if (previous != null) models.remove(previous);
+        models.add(model);
     }
 
     public Map<String, Model> getModelMap() { return modelMap; }
+    public List<Model> getModels() { return models; }
     public Model getModel(String id) { return modelMap.get(id); }
 
     public TextureCache getTextureCache() { return textureCache; }
@@ -68,16 +84,21 @@ public class Scene {
 
     public void cleanup() {
         modelMap.values().forEach(Model::cleanup);
+        if (skyBox != null) skyBox.getModel().cleanup();
+        if (ownsTextureCache) textureCache.cleanup();
         soundManager.cleanup();
     }
 
     public void update(float diffTimeMillis) {
-        for (Model model : modelMap.values()) {
-            for (Entity entity : model.getEntities()) {
-                entity.update();
+        for (int m = 0; m < models.size(); m++) {
+            List<Entity> entities = models.get(m).getEntities();
+            for (int i = 0; i < entities.size(); i++) {
+                entities.get(i).update();
             }
+            Telemetry.count(Telemetry.Counter.ENTITIES, entities.size());
         }
         soundManager.updateListenerPosition(camera);
+        soundManager.update(diffTimeMillis);
     }
 
 }
@@ -9,19 +9,23 @@ public class BillboardEntity extends Entity {
     private final Camera camera;
     private final boolean x;
     private final boolean y;
+    private final Vector3f direction;
+    private final Quaternionf billboardRotation;
 
     public BillboardEntity(Camera camera, String id, String modelID, boolean x, boolean y) {
         super(id, modelID);
         this.camera = camera;
         this.x = x;
         this.y = y;
+        direction = new Vector3f();
+        billboardRotation = new Quaternionf();
     }
 
     @Override
     public void update() {
-        Vector3f direction = new Vector3f(camera.getPosition()).sub(position).normalize();
+        direction.set(camera.getPosition()).sub(position).normalize();
 
-        Quaternionf rot = new Quaternionf().identity();
+        Quaternionf rot = billboardRotation.identity();
         if (x) rot.rotateX((float) -Math.atan2(direction.y, direction.z));
         if (y) rot.rotateY((float) -Math.atan2(-direction.x, direction.z));
         modelMatrix.translationRotateScale(position, rot, scale);
@@ -139,7 +139,7 @@ public class Entity {
         }
         public void setGain(float gain) { source.setGain(gain); }
 
-        private void updateSource() { this.source.setBuffer(getBuffer(activeBuffer).getBufferID()); }
+        private void updateSource() { this.source.setBuffer(getBuffer(activeBuffer)); }
 
         public boolean isPlaying() { return source.isPlaying(); }
         public void play() { source.play(); }
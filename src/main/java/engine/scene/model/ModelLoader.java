@@ -6,9 +6,12 @@ import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
 import org.lwjgl.system.MemoryStack;
 
+import engine.asset.Assets;
+import engine.asset.AssimpFileIO;
 import engine.graph.model.*;
 import engine.graph.texture.TextureCache;
 import engine.util.Util;
+import engine.telemetry.jfr.ModelLoadEvent;
 
 import java.io.File;
 import java.io.IOException;
@@ -32,14 +35,15 @@ public class ModelLoader {
     }
 
     public static Model loadModel(String modelID, String modelPath, TextureCache textureCache, int flags, boolean animation) throws IOException {
+        ModelLoadEvent event = new ModelLoadEvent();
+        event.begin();
         if (!animation) flags |= aiProcess_PreTransformVertices;
 
-        File modelFile = new File(modelPath);
-        if (!modelFile.exists()) throw new IOException("Failed to load model at path: \"" + modelPath + "\"");
+        if (!Assets.exists(modelPath)) throw new IOException("Failed to load model at path: \"" + modelPath + "\"");
 
-        String modelDir = modelFile.getParent();
+        String modelDir = new File(modelPath).getParent();
 
-        AIScene aiScene = aiImportFile(modelPath, flags);
+        AIScene aiScene = aiImportFileEx(modelPath, flags, AssimpFileIO.get());
         if (aiScene == null) throw new IOException("Failed to load model: \"" + modelPath + "\"");
 
         int numMaterials = aiScene.mNumMaterials();
@@ -66,16 +70,22 @@ public class ModelLoader {
 
         if (!defaultMaterial.getMeshes().isEmpty()) materials.add(defaultMaterial);
 
-        List<Model.Animation> animations = new ArrayList<>();
-        int numAnimations = aiScene.mNumAnimations();
-        if (numAnimations > 0) {
-            Node rootNode = buildNodesTree(aiScene.mRootNode(), null);
-            Matrix4f globalInverseTransform = toMatrix(aiScene.mRootNode().mTransformation()).invert();
-            animations = processAnimations(aiScene, bones, rootNode, globalInverseTransform);
-        }
+        List<Model.Animation> animations = bakeAnimations(aiScene, bones);
 
         aiReleaseImport(aiScene);
 
+        if (event.shouldCommit()) {
+            event.path = modelPath;
+            event.modelID = modelID;
+            event.bytes = Assets.size(modelPath);
+            event.meshes = numMeshes;
+            for (Material material : materials) {
+                for (Mesh mesh : material.getMeshes()) event.vertices += mesh.getNumVertices();
+            }
+            event.animations = animations.size();
+            event.commit();
+        }
+
         return new Model(modelID, materials, animations);
     }
 
@@ -223,6 +233,21 @@ public class ModelLoader {
         return new AnimMeshData(Util.listToFloatArray(weights), Util.listToIntArray(boneIDs));
     }
 
+    // bakes animations without uploading any meshes, so the cost can be measured on its own
+    static List<Model.Animation> bakeAnimations(AIScene aiScene) {
+        List<Bone> bones = new ArrayList<>();
+        PointerBuffer aiMeshes = aiScene.mMeshes();
+        for (int i = 0; i < aiScene.mNumMeshes(); i++) processBones(AIMesh.create(aiMeshes.get(i)), bones);
+        return bakeAnimations(aiScene, bones);
+    }
+
+    private static List<Model.Animation> bakeAnimations(AIScene aiScene, List<Bone> bones) {
+        if (aiScene.mNumAnimations() == 0) return new ArrayList<>();
+        Node rootNode = buildNodesTree(aiScene.mRootNode(), null);
+        Matrix4f globalInverseTransform = toMatrix(aiScene.mRootNode().mTransformation()).invert();
+        return processAnimations(aiScene, bones, rootNode, globalInverseTransform);
+    }
+
     private static List<Model.Animation> processAnimations(AIScene aiScene, List<Bone> bones, Node root, Matrix4f globalInverseTransform) {
         List<Model.Animation> animations = new ArrayList<>();
 
@@ -279,7 +304,6 @@ public class ModelLoader {
             String normalMapPath = aiNormalMapPath.dataString();
             if (normalMapPath.length() > 0) {
                 material.setNormalMapPath(modelDir + File.separator + new File(normalMapPath).getName());
-                textureCache.createTexture(material.getNormalMapPath());
                 material.setDiffuseColor(Material.DEFAULT_COLOR);
             }
 
@@ -290,9 +314,9 @@ public class ModelLoader {
             String texturePath = aiTexturePath.dataString();
             if (texturePath.length() > 0) {
                 material.setTexturePath(modelDir + File.separator + new File(texturePath).getName());
-                textureCache.createTexture(material.getTexturePath());
                 material.setDiffuseColor(Material.DEFAULT_COLOR);
             }
+            material.acquireTextures(textureCache);
 
             return material;
         }
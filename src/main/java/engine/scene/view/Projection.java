@@ -9,6 +9,7 @@ public class Projection {
     public static final float Z_FAR = 256.0f;
 
     private Matrix4f matrix;
+    private float pixelScale;
 
     public Projection(int width, int height) {
         matrix = new Matrix4f();
@@ -19,6 +20,10 @@ public class Projection {
 
     public void updateProjection(int width, int height) {
         matrix.setPerspective(FOV, (float) width / height, Z_NEAR, Z_FAR);
+        pixelScale = height / (2.0f * (float) Math.tan(FOV / 2.0f));
     }
 
+    // on-screen pixels covered by one world unit at distance one; divide by distance for anything further away
+    public float getPixelScale() { return pixelScale; }
+
 }
@@ -0,0 +1,89 @@
+package engine.sound;
+
+import engine.telemetry.Telemetry;
+
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.ALC10.alcProcessContext;
+import static org.lwjgl.openal.ALC10.alcSuspendContext;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+// one tick's worth of openal calls: the listener and the voices submit only what changed since their last submission, and the
+// context is suspended on the first change so the mixer applies the whole batch at once. a tick where nothing changed makes no calls.
+// the sound classes issue their openal calls through these wrappers, which count them like GLState does
+public class AudioBatch {
+
+    private final long context;
+    // the thread updating the sound manager; calls from the stream thread go straight through, uncounted and outside the batch
+    private final Thread owner;
+    private boolean open;
+    private boolean suspended;
+
+    private int issuedCalls;
+    private int skippedCalls;
+    private int lastIssuedCalls;
+    private int lastSkippedCalls;
+
+    AudioBatch(long context) {
+        this.context = context;
+        owner = Thread.currentThread();
+    }
+
+    void begin() {
+        open = true;
+    }
+
+    void end() {
+        if (suspended) {
+            alcProcessContext(context);
+            issuedCalls++;
+            suspended = false;
+        }
+        open = false;
+        Telemetry.count(Telemetry.Counter.AL_CALLS, issuedCalls);
+        lastIssuedCalls = issuedCalls;
+        lastSkippedCalls = skippedCalls;
+        issuedCalls = 0;
+        skippedCalls = 0;
+    }
+
+    // outside a batch, e.g. a source starting to play, changes apply at once
+    private void change() {
+        if (Thread.currentThread() != owner) return;
+        if (open && !suspended && context != NULL) {
+            alcSuspendContext(context);
+            issuedCalls++;
+            suspended = true;
+        }
+        issuedCalls++;
+    }
+
+    private void query() {
+        if (Thread.currentThread() == owner) issuedCalls++;
+    }
+
+    // a submission left out because the value did not change
+    void skip() { skippedCalls++; }
+
+    void sourcei(int source, int param, int value) { change(); alSourcei(source, param, value); }
+    void sourcef(int source, int param, float value) { change(); alSourcef(source, param, value); }
+    void source3f(int source, int param, float x, float y, float z) { change(); alSource3f(source, param, x, y, z); }
+    void sourcePlay(int source) { change(); alSourcePlay(source); }
+    void sourcePause(int source) { change(); alSourcePause(source); }
+    void sourceStop(int source) { change(); alSourceStop(source); }
+    void sourceRewind(int source) { change(); alSourceRewind(source); }
+    void sourceQueueBuffers(int source, int buffer) { change(); alSourceQueueBuffers(source, buffer); }
+    int sourceUnqueueBuffers(int source) { change(); return alSourceUnqueueBuffers(source); }
+    void bufferData(int buffer, int format, ShortBuffer data, int frequency) { change(); alBufferData(buffer, format, data, frequency); }
+    void listener3f(int param, float x, float y, float z) { change(); alListener3f(param, x, y, z); }
+    void listenerfv(int param, float[] values) { change(); alListenerfv(param, values); }
+
+    int getSourcei(int source, int param) { query(); return alGetSourcei(source, param); }
+    float getSourcef(int source, int param) { query(); return alGetSourcef(source, param); }
+
+    // calls made, and calls saved by an unchanged value, during the last tick
+    public int getLastIssuedCalls() { return lastIssuedCalls; }
+    public int getLastSkippedCalls() { return lastSkippedCalls; }
+
+}
@@ -1,5 +1,10 @@
 package engine.sound;
 
+import engine.Backends;
+import engine.asset.Asset;
+import engine.asset.Assets;
+import engine.telemetry.ResourceRegistry;
+import engine.telemetry.jfr.SoundDecodeEvent;
 import org.lwjgl.system.*;
 import org.lwjgl.stb.STBVorbisInfo;
 
@@ -30,28 +35,62 @@ public class SoundBuffer {
     private final int bufferID;
 
     private ShortBuffer pcm;
+    private long bytes;
+    private float duration;
+    private long resourceID;
+
+    // for subclasses that feed their sources themselves instead of holding one decoded buffer
+    protected SoundBuffer() {
+        bufferID = 0;
+    }
 
     public SoundBuffer(String filePath, FileType fileType) {
+        if (!Backends.hasAL()) {
+            bufferID = 0;
+            return;
+        }
         this.bufferID = alGenBuffers();
+        SoundDecodeEvent event = new SoundDecodeEvent();
+        event.begin();
         try (STBVorbisInfo info = STBVorbisInfo.malloc()) {
             switch (fileType) {
                 case OGG -> pcm = readVorbis(filePath, info);
             }
             alBufferData(bufferID, info.channels() == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16, pcm, info.sample_rate());
+            // the decoded samples stay allocated here and openal keeps its own copy, so both count as native memory
+            long pcmBytes = (long) pcm.remaining() * Short.BYTES;
+            bytes = pcmBytes * 2;
+            duration = (float) pcm.remaining() / info.channels() / info.sample_rate();
+            resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.SOUND, filePath, 0, bytes);
+
+            if (event.shouldCommit()) {
+                event.path = filePath;
+                event.bytes = (long) pcm.remaining() * Short.BYTES;
+                event.channels = info.channels();
+                event.sampleRate = info.sample_rate();
+                event.commit();
+            }
         }
     }
 
     public void cleanup() {
+        if (!Backends.hasAL()) return;
         alDeleteBuffers(this.bufferID);
         if (pcm != null) MemoryUtil.memFree(pcm);
+        ResourceRegistry.release(resourceID);
     }
 
     public int getBufferID() { return bufferID; }
+    // native memory held for the decoded samples, 0 without openal
+    public long getBytes() { return bytes; }
+    // seconds, 0 without openal
+    public float getDuration() { return duration; }
 
     private ShortBuffer readVorbis(String filePath, STBVorbisInfo info) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
+        // the decoder reads the encoded file in place, so it is closed before the asset
+        try (MemoryStack stack = MemoryStack.stackPush(); Asset asset = Assets.open(filePath)) {
             IntBuffer error = stack.mallocInt(1);
-            long decoder = stb_vorbis_open_filename(filePath, error, null);
+            long decoder = stb_vorbis_open_memory(asset.getData(), error, null);
             if (decoder == NULL) throw new RuntimeException("Failed to open Ogg Vorbis file: " + error.get(0));
 
             stb_vorbis_get_info(decoder, info);
@@ -1,7 +1,10 @@
 package engine.sound;
 
+import engine.Backends;
 import org.joml.Vector3f;
 
+import java.util.Arrays;
+
 import static org.lwjgl.openal.AL10.*;
 
 public class SoundListener {
@@ -13,6 +16,13 @@ public class SoundListener {
     private Vector3f position;
     private Vector3f velocity;
     private Orientation orientation;
+    private Orientation ownedOrientation;
+    private final float[] orientationData = new float[6];
+
+    // the values openal last received; NaN until the first submission so it always goes through
+    private final Vector3f submittedPosition = new Vector3f(Float.NaN);
+    private final Vector3f submittedVelocity = new Vector3f(Float.NaN);
+    private final float[] submittedOrientation = { Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN };
 
     public SoundListener(float x, float y, float z) {
         this(new Vector3f().set(x, y, z), new Vector3f(), DEFAULT_ORIENTATION);
@@ -54,24 +64,47 @@ public class SoundListener {
     public void setPosition(float x, float y, float z) { setPosition(new Vector3f().set(x, y, z)); }
     public void setPosition(Vector3f position) {
         this.position = position;
-        alListener3f(AL_POSITION, this.position.x, this.position.y, this.position.z);
     }
 
     public void setVelocity(float vx, float vy, float vz) { setVelocity(new Vector3f().set(vx, vy, vz)); }
     public void setVelocity(Vector3f velocity) {
         this.velocity = velocity;
-        alListener3f(AL_VELOCITY, this.velocity.x, this.velocity.y, this.velocity.z);
     }
 
     public void setOrientation(float fx, float fy, float fz, float ux, float uy, float uz) { setOrientation(new Vector3f().set(fx, fy, fz), new Vector3f().set(ux, uy, uz)); }
-    public void setOrientation(Vector3f forward, Vector3f up) { setOrientation(new Orientation(forward, up)); }
+    // copies into a listener-owned orientation so per-frame updates do not allocate
+    public void setOrientation(Vector3f forward, Vector3f up) {
+        if (ownedOrientation == null) ownedOrientation = new Orientation(new Vector3f(), new Vector3f());
+        ownedOrientation.forward().set(forward);
+        ownedOrientation.up().set(up);
+        setOrientation(ownedOrientation);
+    }
     public void setOrientation(Orientation orientation) {
         this.orientation = orientation;
-        float[] data =  {
-            this.orientation.forward.x, this.orientation.forward.y, this.orientation.forward.z,
-            this.orientation.up.x,      this.orientation.up.y,      this.orientation.up.z
-        };
-        alListenerfv(AL_ORIENTATION, data);
+        orientationData[0] = orientation.forward.x; orientationData[1] = orientation.forward.y; orientationData[2] = orientation.forward.z;
+        orientationData[3] = orientation.up.x;      orientationData[4] = orientation.up.y;      orientationData[5] = orientation.up.z;
+    }
+
+    // setters only record the new state; SoundManager.update sends what changed since the last tick
+    void submit(AudioBatch batch) {
+        if (!Backends.hasAL()) return;
+        if (submittedPosition.equals(position)) batch.skip();
+        else {
+            batch.listener3f(AL_POSITION, position.x, position.y, position.z);
+            submittedPosition.set(position);
+        }
+        if (submittedVelocity.equals(velocity)) batch.skip();
+        else {
+            batch.listener3f(AL_VELOCITY, velocity.x, velocity.y, velocity.z);
+            submittedVelocity.set(velocity);
+        }
+        // the orientation record may be shared, so its components are copied into orientationData again
+        setOrientation(orientation);
+        if (Arrays.equals(submittedOrientation, orientationData)) batch.skip();
+        else {
+            batch.listenerfv(AL_ORIENTATION, orientationData);
+            System.arraycopy(orientationData, 0, submittedOrientation, 0, orientationData.length);
+        }
     }
 
 }
@@ -3,10 +3,14 @@ package engine.sound;
 import org.joml.*;
 import org.lwjgl.openal.*;
 
+import engine.Backends;
 import engine.scene.view.Camera;
+import engine.util.ContentHash;
 
+import java.lang.Math;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.lwjgl.openal.AL10.AL_DISTANCE_MODEL;
 import static org.lwjgl.openal.AL10.alDistanceModel;
@@ -15,13 +19,27 @@ import static org.lwjgl.system.MemoryUtil.NULL;
 
 public class SoundManager {
 
+    // a stream's ring holds a few hundred milliseconds, far more than the refill interval
+    private static final long STREAM_REFILL_MILLIS = 10;
+    public static final int DEFAULT_VOICES = 32;
+
     private final List<SoundBuffer> soundBuffers;
+    private final List<SoundStream> soundStreams;
+    private Thread streamThread;
+    private final Map<String, SoundBuffer> buffersByPath;
+    private final Map<Long, SoundBuffer> buffersByHash;
+    private int sharedCount;
+    private long sharedBytes;
     private final Map<String, SoundSource> soundSources;
+    private final VoiceManager voiceManager;
+    private final AudioBatch batch;
 
     private long context;
     private long device;
 
     private SoundListener listener;
+    private final Vector3f listenerForward = new Vector3f();
+    private final Vector3f listenerUp = new Vector3f();
 
     private int attenuationModel;
 
@@ -30,8 +48,22 @@ public class SoundManager {
     }
 
     public SoundManager(int attenuationModel) {
+        this(attenuationModel, DEFAULT_VOICES);
+    }
+
+    // at most maxVoices sources play at once, fewer when the device offers fewer
+    public SoundManager(int attenuationModel, int maxVoices) {
         soundBuffers = new ArrayList<>();
+        soundStreams = new CopyOnWriteArrayList<>();
+        buffersByPath = new HashMap<>();
+        buffersByHash = new HashMap<>();
         soundSources = new HashMap<>();
+        this.attenuationModel = attenuationModel;
+        if (!Backends.hasAL()) {
+            batch = new AudioBatch(NULL);
+            voiceManager = new VoiceManager(0, batch);
+            return;
+        }
 
         device = alcOpenDevice((ByteBuffer) null);
         if (device == NULL) throw new IllegalStateException("Failed to open the default OpenAL device.");
@@ -44,21 +76,94 @@ public class SoundManager {
         AL.createCapabilities(deviceCapabilities);
 
         setAttenuationModel(attenuationModel);
+        batch = new AudioBatch(context);
+        voiceManager = new VoiceManager(Math.min(maxVoices, alcGetInteger(device, ALC11.ALC_MONO_SOURCES)), batch);
+    }
+
+    // advances virtual sources, hands the voices to the highest ranked playing sources and submits the listener and source parameters
+    // that changed, as one batch; call once per tick after the listener moved
+    public void update(float diffTimeMillis) {
+        batch.begin();
+        if (listener != null) {
+            listener.submit(batch);
+            voiceManager.update(listener, diffTimeMillis / 1000.0f);
+        }
+        batch.end();
     }
 
     public void cleanup() {
+        if (streamThread != null) {
+            streamThread.interrupt();
+            try { streamThread.join(); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            streamThread = null;
+        }
+        soundStreams.clear();
         soundSources.values().forEach(SoundSource::cleanup);
         soundSources.clear();
+        voiceManager.cleanup();
         soundBuffers.forEach(SoundBuffer::cleanup);
         soundBuffers.clear();
+        buffersByPath.clear();
+        buffersByHash.clear();
         if (context != NULL) alcDestroyContext(context);
         if (device != NULL) alcCloseDevice(device);
     }
 
     public void addSoundBuffer(SoundBuffer soundBuffer) { this.soundBuffers.add(soundBuffer); }
-    public void addSoundSource(String name, SoundSource soundSource) { this.soundSources.put(name, soundSource); }
 
-    public void removeSoundSource(String name) { this.soundSources.remove(name); }
+    // decodes a file once, sharing the buffer with later requests for the same path or for another file with identical content
+    public SoundBuffer getSoundBuffer(String filePath, SoundBuffer.FileType fileType) {
+        SoundBuffer soundBuffer = buffersByPath.get(filePath);
+        long hash = 0;
+        if (soundBuffer == null) {
+            hash = ContentHash.ofFile(filePath);
+            if (hash != 0) soundBuffer = buffersByHash.get(hash);
+        }
+        if (soundBuffer != null) {
+            sharedCount++;
+            sharedBytes += soundBuffer.getBytes();
+            buffersByPath.put(filePath, soundBuffer);
+            return soundBuffer;
+        }
+        soundBuffer = new SoundBuffer(filePath, fileType);
+        addSoundBuffer(soundBuffer);
+        buffersByPath.put(filePath, soundBuffer);
+        if (hash != 0) buffersByHash.put(hash, soundBuffer);
+        return soundBuffer;
+    }
+    // streams are never shared, since each keeps its own decode position
+    public SoundStream getSoundStream(String filePath, SoundBuffer.FileType fileType) {
+        SoundStream soundStream = new SoundStream(filePath, fileType);
+        addSoundBuffer(soundStream);
+        if (!Backends.hasAL()) return soundStream;
+        soundStreams.add(soundStream);
+        if (streamThread == null) {
+            streamThread = new Thread(this::refillStreams, "sound-stream");
+            streamThread.setDaemon(true);
+            streamThread.start();
+        }
+        return soundStream;
+    }
+
+    private void refillStreams() {
+        while (!Thread.currentThread().isInterrupted()) {
+            for (SoundStream soundStream : soundStreams) soundStream.refill();
+            try { Thread.sleep(STREAM_REFILL_MILLIS); }
+            catch (InterruptedException e) { return; }
+        }
+    }
+
+    public void addSoundSource(String name, SoundSource soundSource) {
+        SoundSource previous = this.soundSources.put(name, soundSource);
+        if (previous != null && previous != soundSource) voiceManager.remove(previous);
+        voiceManager.add(soundSource);
+    }
+
+    public void removeSoundSource(String name) {
+        SoundSource soundSource = this.soundSources.remove(name);
+        if (soundSource != null) voiceManager.remove(soundSource);
+    }
 
     public void playSoundSource(String name) {
         SoundSource soundSource = this.soundSources.get(name);
@@ -69,11 +174,16 @@ public class SoundManager {
     public SoundListener getListener() { return listener; }
     public SoundSource getSoundSource(String name) { return this.soundSources.get(name); }
     public int getAttenuationModel() { return attenuationModel; }
+    public VoiceManager getVoiceManager() { return voiceManager; }
+    public AudioBatch getBatch() { return batch; }
+    // requests served by an already decoded buffer, and the native memory their copies would have taken
+    public int getSharedCount() { return sharedCount; }
+    public long getSharedBytes() { return sharedBytes; }
 
     public void setListener(SoundListener listener) { this.listener = listener; }
     public void setAttenuationModel(int model) {
         this.attenuationModel = model;
-        alDistanceModel(this.attenuationModel);
+        if (Backends.hasAL()) alDistanceModel(this.attenuationModel);
     }
 
     public void updateListenerPosition(Camera camera) {
@@ -81,13 +191,10 @@ public class SoundManager {
 
         listener.setPosition(camera.getPosition());
 
-        Vector3f forward = new Vector3f();
-        viewMatrix.positiveZ(forward).negate();
-
-        Vector3f up = new Vector3f();
-        viewMatrix.positiveY(up);
+        viewMatrix.positiveZ(listenerForward).negate();
+        viewMatrix.positiveY(listenerUp);
 
-        listener.setOrientation(forward, up);
+        listener.setOrientation(listenerForward, listenerUp);
     }
 
 }
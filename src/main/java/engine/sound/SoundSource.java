@@ -2,13 +2,29 @@ package engine.sound;
 
 import org.joml.Vector3f;
 
-import static org.lwjgl.openal.AL10.*;
-
+// a logical sound; it only owns an openal source while the voice manager of the SoundManager it was added to gives it a voice,
+// and keeps its play position while virtual. a source never added to a SoundManager stays silent
 public class SoundSource {
 
-    private final int sourceID;
+    enum State { STOPPED, PLAYING, PAUSED }
+
+    private final boolean loop;
+    private final boolean relative;
     private Vector3f position;
     private float gain;
+    private int priority;
+    private SoundBuffer buffer;
+
+    // maintained by VoiceManager
+    VoiceManager voices;
+    State state = State.STOPPED;
+    float cursor;
+    int voice;
+    int voiceIndex = -1;
+    float audibility;
+    // the values the voice last received
+    final Vector3f submittedPosition = new Vector3f();
+    float submittedGain;
 
     public SoundSource(boolean loop, boolean relative) {
         this(loop, relative, new Vector3f(), 1.0f);
@@ -27,42 +43,62 @@ public class SoundSource {
     }
 
     public SoundSource(boolean loop, boolean relative, Vector3f position, float gain) {
-        sourceID = alGenSources();
-        alSourcei(sourceID, AL_LOOPING, loop ? AL_TRUE : AL_FALSE);
-        alSourcei(sourceID, AL_SOURCE_RELATIVE, relative ? AL_TRUE : AL_FALSE);
-        alSourcef(sourceID, AL_GAIN, gain);
+        this.loop = loop;
+        this.relative = relative;
         this.position = position;
         this.gain = gain;
     }
 
-    public void stop() { alSourceStop(sourceID); }
+    public void stop() {
+        state = State.STOPPED;
+        if (voice != 0) voices.release(this);
+        cursor = 0;
+    }
 
     public void cleanup() {
         stop();
-        alDeleteSources(sourceID);
+        if (voices != null) voices.remove(this);
     }
 
-    public boolean isPlaying() { return alGetSourcei(sourceID, AL_SOURCE_STATE) == AL_PLAYING; }
+    public boolean isPlaying() { return state == State.PLAYING; }
+
+    public void pause() {
+        if (state != State.PLAYING) return;
+        state = State.PAUSED;
+        if (voice != 0) voices.batch.sourcePause(voice);
+    }
 
-    public void pause() { alSourcePause(sourceID); }
-    public void play() { alSourcePlay(sourceID); }
+    // starts at once when a voice is free, otherwise plays virtually until the next voice update can give it one
+    public void play() {
+        if (buffer == null) return;
+        // like alSourcePlay, playing a playing source restarts it
+        if (state == State.PLAYING) stop();
+        state = State.PLAYING;
+        if (voice != 0) voices.batch.sourcePlay(voice);
+        else if (voices != null) voices.acquire(this);
+    }
 
-    public void setBuffer(int bufferID) {
+    public void setBuffer(SoundBuffer buffer) {
         stop();
-        alSourcei(sourceID, AL_BUFFER, bufferID);
+        this.buffer = buffer;
     }
 
     public float getGain() { return gain; }
-    public void setGain(float gain) { alSourcef(sourceID, AL_GAIN, gain); }
+    // parameter setters only record the new value; the voice manager sends what changed on the next update
+    public void setGain(float gain) { this.gain = gain; }
+
+    // higher priorities take voices first; audibility only decides between equal priorities
+    public int getPriority() { return priority; }
+    public void setPriority(int priority) { this.priority = priority; }
 
     public Vector3f getPosition() { return position; }
-    public void setPosition(Vector3f position) {
-        alSource3f(sourceID, AL_POSITION, position.x, position.y, position.z);
-        this.position = position;
-    }
-    public void setPosition(float x, float y, float z) {
-        alSource3f(sourceID, AL_POSITION, x, y, z);
-        this.position.set(x, y, z);
-    }
+    public void setPosition(Vector3f position) { this.position = position; }
+    public void setPosition(float x, float y, float z) { this.position.set(x, y, z); }
+
+    public SoundBuffer getBuffer() { return buffer; }
+    public boolean isLooping() { return loop; }
+    public boolean isRelative() { return relative; }
+    // whether the source currently plays on a real openal source
+    public boolean isAudible() { return voice != 0; }
 
 }
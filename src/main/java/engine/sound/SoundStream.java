@@ -0,0 +1,189 @@
+package engine.sound;
+
+import engine.Backends;
+import engine.asset.Asset;
+import engine.asset.Assets;
+import engine.telemetry.ResourceRegistry;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.AL11.AL_SAMPLE_OFFSET;
+import static org.lwjgl.stb.STBVorbis.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+// a long sound decoded a few thousand samples at a time into a small ring of buffers queued on the voice playing it; SoundManager's
+// stream thread refills the ring, so only the encoded file and the ring stay in memory. a stream plays on one source at a time, and its
+// calls go through the batch of the voice manager that attached it
+public class SoundStream extends SoundBuffer {
+
+    private static final int BUFFER_COUNT = 4;
+    private static final int BUFFER_FRAMES = 4096;
+
+    private final String filePath;
+    private final int[] buffers;
+    // the frame of the file each ring buffer starts at, to report the play cursor
+    private final long[] bufferStarts;
+    // ring indices in the order they are queued on the voice
+    private final int[] queue;
+    private Asset asset;
+    private long decoder;
+    private ShortBuffer pcm;
+    private int channels;
+    private int sampleRate;
+    private int format;
+    private long lengthFrames;
+    private long bytes;
+    private long resourceID;
+
+    // guarded by this, as the stream thread and the thread updating voices both use it
+    private AudioBatch batch;
+    private int sourceID;
+    private boolean loop;
+    private long decodeFrame;
+    private int queueHead;
+    private int queueCount;
+    private boolean ended;
+    private boolean finished;
+    private int underruns;
+
+    public SoundStream(String filePath, FileType fileType) {
+        this.filePath = filePath;
+        buffers = new int[BUFFER_COUNT];
+        bufferStarts = new long[BUFFER_COUNT];
+        queue = new int[BUFFER_COUNT];
+        if (!Backends.hasAL()) return;
+
+        // the decoder reads the encoded file in place, so the asset stays open for the life of the stream
+        asset = Assets.open(filePath);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            switch (fileType) {
+                case OGG -> decoder = stb_vorbis_open_memory(asset.getData(), error, null);
+            }
+            if (decoder == NULL) {
+                asset.close();
+                throw new RuntimeException("Failed to open Ogg Vorbis file \"" + filePath + "\": " + error.get(0));
+            }
+            STBVorbisInfo info = STBVorbisInfo.malloc(stack);
+            stb_vorbis_get_info(decoder, info);
+            channels = info.channels();
+            sampleRate = info.sample_rate();
+            lengthFrames = stb_vorbis_stream_length_in_samples(decoder);
+        }
+        format = channels == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16;
+        pcm = MemoryUtil.memAllocShort(BUFFER_FRAMES * channels);
+        alGenBuffers(buffers);
+        // the encoded file, the decode scratch and openal's copy of every ring buffer
+        long ringBytes = (long) BUFFER_FRAMES * channels * Short.BYTES;
+        bytes = asset.size() + ringBytes * (1 + BUFFER_COUNT);
+        resourceID = ResourceRegistry.register(this, ResourceRegistry.Type.SOUND, filePath + " (streamed)", 0, bytes);
+    }
+
+    // queues the ring on a voice from the given play position, ready to play; looping is done by rewinding the decoder,
+    // since a looping voice would replay its queue
+    synchronized void attach(AudioBatch batch, int sourceID, boolean loop, float seconds) {
+        if (this.sourceID != 0 && this.sourceID != sourceID) throw new IllegalStateException("Sound stream \"" + filePath + "\" already plays on another voice.");
+        this.batch = batch;
+        this.sourceID = sourceID;
+        this.loop = loop;
+        long frame = Math.min((long) (seconds * sampleRate), lengthFrames);
+        if (loop && lengthFrames > 0) frame %= lengthFrames;
+        stb_vorbis_seek(decoder, (int) frame);
+        decodeFrame = frame;
+        ended = false;
+        finished = false;
+
+        batch.sourceRewind(sourceID);
+        batch.sourcei(sourceID, AL_BUFFER, 0);
+        queueHead = 0;
+        queueCount = 0;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            if (!fill(i)) break;
+            batch.sourceQueueBuffers(sourceID, buffers[i]);
+            queue[queueCount++] = i;
+        }
+    }
+
+    synchronized void detach() {
+        if (sourceID == 0) return;
+        batch.sourceStop(sourceID);
+        batch.sourcei(sourceID, AL_BUFFER, 0);
+        sourceID = 0;
+    }
+
+    // seconds into the file the voice is playing
+    synchronized float getCursor() {
+        if (sourceID == 0 || queueCount == 0) return (float) decodeFrame / sampleRate;
+        return (float) (bufferStarts[queue[queueHead]] + batch.getSourcei(sourceID, AL_SAMPLE_OFFSET)) / sampleRate;
+    }
+
+    // the voice played to the end of a stream that does not loop
+    synchronized boolean isFinished() { return finished; }
+
+    // runs on the stream thread: requeues the buffers the voice finished with and restarts a voice that ran dry
+    synchronized void refill() {
+        if (sourceID == 0) return;
+        for (int processed = batch.getSourcei(sourceID, AL_BUFFERS_PROCESSED); processed > 0; processed--) {
+            batch.sourceUnqueueBuffers(sourceID);
+            int index = queue[queueHead];
+            queueHead = (queueHead + 1) % BUFFER_COUNT;
+            queueCount--;
+            if (fill(index)) {
+                batch.sourceQueueBuffers(sourceID, buffers[index]);
+                queue[(queueHead + queueCount++) % BUFFER_COUNT] = index;
+            }
+        }
+        if (batch.getSourcei(sourceID, AL_SOURCE_STATE) != AL_STOPPED) return;
+        if (queueCount > 0) {
+            // the ring emptied before it was refilled
+            underruns++;
+            batch.sourcePlay(sourceID);
+        }
+        else finished = true;
+    }
+
+    private boolean fill(int index) {
+        if (ended) return false;
+        long start = decodeFrame;
+        int frames = stb_vorbis_get_samples_short_interleaved(decoder, channels, pcm);
+        if (frames == 0 && loop) {
+            stb_vorbis_seek_start(decoder);
+            start = 0;
+            frames = stb_vorbis_get_samples_short_interleaved(decoder, channels, pcm);
+        }
+        if (frames == 0) {
+            ended = true;
+            return false;
+        }
+        bufferStarts[index] = start;
+        decodeFrame = start + frames;
+        pcm.limit(frames * channels);
+        batch.bufferData(buffers[index], format, pcm, sampleRate);
+        pcm.clear();
+        return true;
+    }
+
+    // expects the stream to be detached, so none of the ring is still queued
+    @Override
+    public synchronized void cleanup() {
+        if (!Backends.hasAL()) return;
+        sourceID = 0;
+        alDeleteBuffers(buffers);
+        stb_vorbis_close(decoder);
+        MemoryUtil.memFree(pcm);
+        asset.close();
+        ResourceRegistry.release(resourceID);
+    }
+
+    @Override
+    public long getBytes() { return bytes; }
+    @Override
+    public float getDuration() { return sampleRate > 0 ? (float) lengthFrames / sampleRate : 0; }
+    public int getUnderruns() { return underruns; }
+
+}
@@ -0,0 +1,202 @@
+package engine.sound;
+
+import engine.Backends;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.AL11.AL_SEC_OFFSET;
+
+// a fixed pool of openal sources shared by every logical SoundSource: each update the playing sources are ranked by priority, then by
+// gain over distance to the listener, and only the top ones hold a voice. the rest play virtually, their cursor advancing with time,
+// and resume from it once they win a voice back
+public class VoiceManager {
+
+    // a voice's current owner counts as this much louder, so two similar sounds do not trade the voice back and forth
+    private static final float HOLD_BIAS = 1.25f;
+
+    private static final Comparator<SoundSource> RANK = (a, b) -> a.getPriority() != b.getPriority() ? Integer.compare(b.getPriority(), a.getPriority()) : Float.compare(b.audibility, a.audibility);
+
+    private final int[] voices;
+    private final SoundSource[] owners;
+    private final List<SoundSource> sources;
+    private final List<SoundSource> playing;
+    private int steals;
+    final AudioBatch batch;
+
+    VoiceManager(int maxVoices, AudioBatch batch) {
+        this.batch = batch;
+        sources = new ArrayList<>();
+        playing = new ArrayList<>();
+        List<Integer> generated = new ArrayList<>();
+        if (Backends.hasAL()) alGetError();
+        // implementations may offer fewer sources than asked for
+        while (Backends.hasAL() && generated.size() < maxVoices) {
+            int source = alGenSources();
+            if (alGetError() != AL_NO_ERROR) break;
+            generated.add(source);
+        }
+        voices = new int[generated.size()];
+        for (int i = 0; i < voices.length; i++) voices[i] = generated.get(i);
+        owners = new SoundSource[voices.length];
+    }
+
+    void add(SoundSource source) {
+        if (source.voices == this) return;
+        if (source.voices != null) throw new IllegalStateException("Sound source already belongs to another sound manager.");
+        source.voices = this;
+        sources.add(source);
+        if (source.isPlaying()) acquire(source);
+    }
+
+    void remove(SoundSource source) {
+        if (source.voices != this) return;
+        if (source.voice != 0) release(source);
+        sources.remove(source);
+        source.voices = null;
+    }
+
+    // called by a source starting to play, so it is heard at once when a voice is free rather than from the next update
+    void acquire(SoundSource source) {
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] == null) {
+                bind(source, i);
+                return;
+            }
+        }
+    }
+
+    // stops the source's voice and frees it, keeping the play position
+    void release(SoundSource source) {
+        int voice = source.voice;
+        SoundBuffer buffer = source.getBuffer();
+        if (buffer instanceof SoundStream stream) {
+            source.cursor = stream.getCursor();
+            stream.detach();
+        }
+        else {
+            source.cursor = batch.getSourcef(voice, AL_SEC_OFFSET);
+            batch.sourceStop(voice);
+            batch.sourcei(voice, AL_BUFFER, 0);
+        }
+        owners[source.voiceIndex] = null;
+        source.voice = 0;
+        source.voiceIndex = -1;
+    }
+
+    private void bind(SoundSource source, int index) {
+        int voice = voices[index];
+        owners[index] = source;
+        source.voice = voice;
+        source.voiceIndex = index;
+        Vector3f position = source.getPosition();
+        // a voice carries its previous owner's parameters, so every one is set regardless of what was last submitted
+        batch.sourcei(voice, AL_SOURCE_RELATIVE, source.isRelative() ? AL_TRUE : AL_FALSE);
+        batch.sourcef(voice, AL_GAIN, source.getGain());
+        batch.source3f(voice, AL_POSITION, position.x, position.y, position.z);
+        source.submittedGain = source.getGain();
+        source.submittedPosition.set(position);
+        if (source.getBuffer() instanceof SoundStream stream) {
+            batch.sourcei(voice, AL_LOOPING, AL_FALSE);
+            stream.attach(batch, voice, source.isLooping(), source.cursor);
+        }
+        else {
+            batch.sourcei(voice, AL_LOOPING, source.isLooping() ? AL_TRUE : AL_FALSE);
+            batch.sourcei(voice, AL_BUFFER, source.getBuffer().getBufferID());
+            batch.sourcef(voice, AL_SEC_OFFSET, source.cursor);
+        }
+        batch.sourcePlay(voice);
+    }
+
+    // sends the parameters a voice's owner changed since they were last submitted
+    private void submit(SoundSource source) {
+        Vector3f position = source.getPosition();
+        if (source.submittedPosition.equals(position)) batch.skip();
+        else {
+            batch.source3f(source.voice, AL_POSITION, position.x, position.y, position.z);
+            source.submittedPosition.set(position);
+        }
+        if (source.submittedGain == source.getGain()) batch.skip();
+        else {
+            batch.sourcef(source.voice, AL_GAIN, source.getGain());
+            source.submittedGain = source.getGain();
+        }
+    }
+
+    // call once per tick after the listener moved
+    void update(SoundListener listener, float seconds) {
+        playing.clear();
+        for (int i = 0; i < sources.size(); i++) {
+            SoundSource source = sources.get(i);
+            if (source.voice != 0) {
+                // a voice that stopped by itself reached the end of a sound that does not loop; a looping buffer never does, so it is not asked
+                boolean ended;
+                if (source.getBuffer() instanceof SoundStream stream) ended = stream.isFinished();
+                else if (source.isLooping()) ended = false;
+                else ended = batch.getSourcei(source.voice, AL_SOURCE_STATE) == AL_STOPPED;
+                if (ended && source.state == SoundSource.State.PLAYING) source.stop();
+                // paused sources give their voice up and resume from their cursor
+                else if (source.state != SoundSource.State.PLAYING) release(source);
+            }
+            else if (source.state == SoundSource.State.PLAYING) advance(source, seconds);
+            if (source.state != SoundSource.State.PLAYING) continue;
+
+            Vector3f position = source.getPosition();
+            // the default exponent distance model with a reference distance and rolloff of 1 attenuates by 1 / distance
+            float distance = source.isRelative() ? position.length() : position.distance(listener.getPosition());
+            source.audibility = source.getGain() / Math.max(1.0f, distance);
+            if (source.voice != 0) source.audibility *= HOLD_BIAS;
+            playing.add(source);
+        }
+        playing.sort(RANK);
+
+        // losers free their voices before winners take them
+        for (int i = voices.length; i < playing.size(); i++) {
+            SoundSource source = playing.get(i);
+            if (source.voice == 0) continue;
+            release(source);
+            steals++;
+        }
+        int next = 0;
+        for (int i = 0; i < Math.min(voices.length, playing.size()); i++) {
+            SoundSource source = playing.get(i);
+            if (source.voice != 0) continue;
+            while (owners[next] != null) next++;
+            bind(source, next);
+        }
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] != null) submit(owners[i]);
+        }
+    }
+
+    private static void advance(SoundSource source, float seconds) {
+        float duration = source.getBuffer().getDuration();
+        source.cursor += seconds;
+        if (source.cursor < duration) return;
+        if (source.isLooping() && duration > 0) source.cursor %= duration;
+        else source.stop();
+    }
+
+    void cleanup() {
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] != null) release(owners[i]);
+        }
+        for (SoundSource source : sources) source.voices = null;
+        sources.clear();
+        if (voices.length > 0) alDeleteSources(voices);
+    }
+
+    public int getVoiceCount() { return voices.length; }
+    // sources playing without a voice
+    public int getVirtualCount() {
+        int bound = 0;
+        for (SoundSource owner : owners) if (owner != null) bound++;
+        return playing.size() - bound;
+    }
+    // voices taken from a playing source by a higher ranked one
+    public int getSteals() { return steals; }
+
+}
@@ -0,0 +1,88 @@
+package engine.telemetry;
+
+import engine.graph.render.GpuProfiler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class CsvExporter implements TelemetryExporter {
+
+    private final BufferedWriter writer;
+    private final StringBuilder sb;
+    private boolean headerWritten;
+    // batch scopes appear as materials are first drawn, so the columns cover the scopes registered by the first row
+    private int gpuScopes;
+
+    public CsvExporter(String path) {
+        try {
+            Path file = Paths.get(path);
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            writer = Files.newBufferedWriter(file);
+        }
+        catch (IOException e) { throw new RuntimeException("Failed to open telemetry file \"" + path + "\"", e); }
+        sb = new StringBuilder(1024);
+    }
+
+    // the header depends on whether allocations are tracked, so it is written with the first row
+    private void writeHeader(Telemetry telemetry) {
+        sb.append("frame");
+        for (Telemetry.Phase phase : Telemetry.Phase.VALUES) {
+            sb.append(',').append(phase.label).append("_p50_ns")
+              .append(',').append(phase.label).append("_p99_ns")
+              .append(',').append(phase.label).append("_max_ns");
+        }
+        for (Telemetry.Counter counter : Telemetry.Counter.VALUES) sb.append(',').append(counter.label);
+        if (telemetry.isTrackingAllocations()) {
+            sb.append(",alloc_frame_p50_b,alloc_frame_p99_b,alloc_frame_max_b");
+            for (Telemetry.Phase phase : Telemetry.Phase.VALUES) sb.append(',').append(phase.label).append("_alloc_max_b");
+        }
+        GpuProfiler gpuProfiler = telemetry.getGpuProfiler();
+        gpuScopes = gpuProfiler != null && gpuProfiler.isSupported() ? gpuProfiler.getScopeCount() : 0;
+        for (int scope = 0; scope < gpuScopes; scope++) {
+            String name = gpuProfiler.getName(scope);
+            sb.append(",gpu_").append(name).append("_avg_ms,gpu_").append(name).append("_p95_ms");
+        }
+        writeLine();
+        headerWritten = true;
+    }
+
+    public void export(Telemetry telemetry) {
+        if (!headerWritten) writeHeader(telemetry);
+        sb.append(telemetry.getFrame());
+        for (Telemetry.Phase phase : Telemetry.Phase.VALUES) {
+            Histogram h = telemetry.getHistogram(phase);
+            sb.append(',').append(h.getPercentile(0.5f))
+              .append(',').append(h.getPercentile(0.99f))
+              .append(',').append(h.getMax());
+        }
+        for (Telemetry.Counter counter : Telemetry.Counter.VALUES) sb.append(',').append(telemetry.getLastFrameCount(counter));
+        if (telemetry.isTrackingAllocations()) {
+            Histogram h = telemetry.getFrameAllocationHistogram();
+            sb.append(',').append(h.getPercentile(0.5f)).append(',').append(h.getPercentile(0.99f)).append(',').append(h.getMax());
+            for (Telemetry.Phase phase : Telemetry.Phase.VALUES) sb.append(',').append(telemetry.getAllocationHistogram(phase).getMax());
+        }
+        GpuProfiler gpuProfiler = telemetry.getGpuProfiler();
+        for (int scope = 0; scope < gpuScopes; scope++) {
+            sb.append(',').append(gpuProfiler.getAverageMillis(scope)).append(',').append(gpuProfiler.getPercentileMillis(scope, 0.95f));
+        }
+        writeLine();
+    }
+
+    public void close() {
+        try { writer.close(); }
+        catch (IOException e) { System.err.println("Failed to close telemetry file: " + e.getMessage()); }
+    }
+
+    private void writeLine() {
+        try {
+            writer.append(sb).append('\n');
+            writer.flush();
+        }
+        catch (IOException e) { System.err.println("Failed to write telemetry: " + e.getMessage()); }
+        sb.setLength(0);
+    }
+
+}
@@ -0,0 +1,80 @@
+package engine.telemetry;
+
+import java.util.Arrays;
+
+// fixed log-linear buckets over a rolling window of samples: four buckets per power of two, so any reported value is within 25%
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final int[] buckets;
+    private final long[] window;
+    private int head;
+    private int count;
+
+    public Histogram(int windowSize) {
+        buckets = new int[BUCKETS];
+        window = new long[windowSize];
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        if (count == window.length) buckets[bucket(window[head])]--;
+        else count++;
+        window[head] = value;
+        buckets[bucket(value)]++;
+        head = (head + 1) % window.length;
+    }
+
+    public void clear() {
+        Arrays.fill(buckets, 0);
+        head = 0;
+        count = 0;
+    }
+
+    public int getCount() { return count; }
+
+    public long getPercentile(float percentile) {
+        if (count == 0) return 0;
+        int rank = Math.max(1, (int) Math.ceil(percentile * count));
+        int seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[b];
+            if (seen >= rank) return bucketMidpoint(b);
+        }
+        return getMax();
+    }
+
+    // exact, scanned from the window rather than the buckets
+    public long getMax() {
+        long max = 0;
+        for (int i = 0; i < count; i++) max = Math.max(max, window[i]);
+        return max;
+    }
+
+    public long getMean() {
+        if (count == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i < count; i++) sum += window[i];
+        return sum / count;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int octave = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (octave - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketMidpoint(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int octave = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (octave - SUB_BUCKET_BITS);
+        long low = (1L << octave) + sub * width;
+        return low + width / 2;
+    }
+
+}
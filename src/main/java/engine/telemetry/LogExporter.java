@@ -0,0 +1,50 @@
+package engine.telemetry;
+
+import engine.graph.render.GpuProfiler;
+
+import java.io.PrintStream;
+
+public class LogExporter implements TelemetryExporter {
+
+    private final PrintStream out;
+    private final StringBuilder sb;
+
+    public LogExporter() {
+        this(System.out);
+    }
+
+    public LogExporter(PrintStream out) {
+        this.out = out;
+        sb = new StringBuilder(512);
+    }
+
+    public void export(Telemetry telemetry) {
+        sb.setLength(0);
+        sb.append("[telemetry] frame ").append(telemetry.getFrame());
+        for (Telemetry.Phase phase : Telemetry.Phase.VALUES) {
+            Histogram h = telemetry.getHistogram(phase);
+            if (h.getCount() == 0) continue;
+            sb.append(" | ").append(phase.label)
+              .append(" p50=").append(h.getPercentile(0.5f) / 1000)
+              .append(" p99=").append(h.getPercentile(0.99f) / 1000)
+              .append(" max=").append(h.getMax() / 1000).append("us");
+        }
+        for (Telemetry.Counter counter : Telemetry.Counter.VALUES) {
+            sb.append(" | ").append(counter.label).append('=').append(telemetry.getLastFrameCount(counter));
+        }
+        if (telemetry.isTrackingAllocations()) {
+            Histogram h = telemetry.getFrameAllocationHistogram();
+            sb.append(" | alloc/frame p50=").append(h.getPercentile(0.5f))
+              .append(" p99=").append(h.getPercentile(0.99f))
+              .append(" max=").append(h.getMax()).append('B');
+        }
+        out.println(sb);
+
+        GpuProfiler gpuProfiler = telemetry.getGpuProfiler();
+        if (gpuProfiler == null || !gpuProfiler.isSupported()) return;
+        sb.setLength(0);
+        gpuProfiler.appendReport(sb);
+        out.print(sb);
+    }
+
+}
@@ -0,0 +1,274 @@
+package engine.telemetry;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.util.*;
+
+// bytes held by every live gpu and native resource, by type and by the level that created it; anything never cleaned up is reported as a leak
+public class ResourceRegistry {
+
+    public enum Type {
+        MESH("mesh"),
+        TEXTURE("texture"),
+        RENDER_TARGET("renderTarget"),
+        SOUND("sound");
+
+        public static final Type[] VALUES = values();
+        public final String label;
+
+        Type(String label) { this.label = label; }
+    }
+
+    public static final String GLOBAL = "(global)";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    // notices owners collected without cleanup; registration happens at load time, so the extra phantom reference is cheap
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // resources are created by loaders and renderers that know nothing of each other, so the registry is static like the telemetry counters
+    private static final Map<Long, Entry> live = new HashMap<>();
+    private static final List<Entry> collected = new ArrayList<>();
+    private static final long[] gpuBytes = new long[Type.VALUES.length];
+    private static final long[] nativeBytes = new long[Type.VALUES.length];
+    private static final long[] peakGpuBytes = new long[Type.VALUES.length];
+    private static final long[] peakNativeBytes = new long[Type.VALUES.length];
+    private static long nextID = 1;
+    private static String level = GLOBAL;
+
+    // resources registered from here on are attributed to this level
+    public static synchronized void setLevel(String level) { ResourceRegistry.level = level != null ? level : GLOBAL; }
+    public static synchronized String getLevel() { return level; }
+
+    // returns the id to pass to resize and release; owner is only watched for collection, never kept alive
+    public static synchronized long register(Object owner, Type type, String name, long gpu, long nat) {
+        Entry entry = new Entry(nextID++, type, name, level, new Throwable("allocated here"));
+        entry.gpuBytes = gpu;
+        entry.nativeBytes = nat;
+        live.put(entry.id, entry);
+        add(type, gpu, nat);
+        entry.cleanable = CLEANER.register(owner, new Collected(entry.id));
+        return entry.id;
+    }
+
+    public static synchronized void resize(long id, long gpu, long nat) {
+        Entry entry = live.get(id);
+        if (entry == null) return;
+        add(entry.type, gpu - entry.gpuBytes, nat - entry.nativeBytes);
+        entry.gpuBytes = gpu;
+        entry.nativeBytes = nat;
+    }
+
+    public static void release(long id) {
+        Cleaner.Cleanable cleanable;
+        synchronized (ResourceRegistry.class) {
+            Entry entry = live.remove(id);
+            if (entry == null) return;
+            add(entry.type, -entry.gpuBytes, -entry.nativeBytes);
+            cleanable = entry.cleanable;
+        }
+        // drops the phantom reference now; the action sees the entry gone and does nothing
+        cleanable.clean();
+    }
+
+    private static void add(Type type, long gpu, long nat) {
+        int t = type.ordinal();
+        gpuBytes[t] += gpu;
+        nativeBytes[t] += nat;
+        peakGpuBytes[t] = Math.max(peakGpuBytes[t], gpuBytes[t]);
+        peakNativeBytes[t] = Math.max(peakNativeBytes[t], nativeBytes[t]);
+    }
+
+    public static synchronized long getGpuBytes(Type type) { return gpuBytes[type.ordinal()]; }
+    public static synchronized long getNativeBytes(Type type) { return nativeBytes[type.ordinal()]; }
+    public static synchronized int getLiveCount() { return live.size(); }
+
+    public static synchronized long getGpuBytes() {
+        long total = 0;
+        for (long bytes : gpuBytes) total += bytes;
+        return total;
+    }
+
+    public static synchronized long getNativeBytes() {
+        long total = 0;
+        for (long bytes : nativeBytes) total += bytes;
+        return total;
+    }
+
+    // gpu plus native bytes still held by resources the level created
+    public static synchronized long getLevelBytes(String level) {
+        long total = 0;
+        for (Entry entry : live.values()) {
+            if (entry.level.equals(level)) total += entry.gpuBytes + entry.nativeBytes;
+        }
+        return total;
+    }
+
+    public static synchronized Report report() {
+        Report report = new Report();
+        for (Type type : Type.VALUES) {
+            TypeReport t = new TypeReport();
+            t.gpuBytes = gpuBytes[type.ordinal()];
+            t.nativeBytes = nativeBytes[type.ordinal()];
+            t.peakGpuBytes = peakGpuBytes[type.ordinal()];
+            t.peakNativeBytes = peakNativeBytes[type.ordinal()];
+            report.types.put(type.label, t);
+            report.gpuBytes += t.gpuBytes;
+            report.nativeBytes += t.nativeBytes;
+        }
+
+        List<Entry> entries = new ArrayList<>(live.values());
+        entries.sort(Comparator.comparingLong((Entry e) -> e.gpuBytes + e.nativeBytes).reversed());
+        for (Entry entry : entries) {
+            TypeReport l = report.levels.computeIfAbsent(entry.level, k -> new TypeReport());
+            l.gpuBytes += entry.gpuBytes;
+            l.nativeBytes += entry.nativeBytes;
+            l.count++;
+            report.types.get(entry.type.label).count++;
+            report.resources.add(new ResourceReport(entry.type.label, entry.name, entry.level, entry.gpuBytes, entry.nativeBytes));
+        }
+        for (Entry entry : collected) report.collectedWithoutCleanup.add(new ResourceReport(entry.type.label, entry.name, entry.level, entry.gpuBytes, entry.nativeBytes));
+        return report;
+    }
+
+    public static void writeReport(String filePath) {
+        try {
+            File parent = new File(filePath).getAbsoluteFile().getParentFile();
+            if (parent != null) parent.mkdirs();
+            MAPPER.writeValue(new File(filePath), report());
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write resource report \"" + filePath + "\": " + e.getMessage());
+        }
+    }
+
+    // compares current usage against a budget file; returns the violations, empty when within budget
+    public static List<String> checkBudget(String budgetPath) {
+        Budget budget;
+        try {
+            budget = MAPPER.readValue(new File(budgetPath), Budget.class);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read resource budget \"" + budgetPath + "\".", e);
+        }
+
+        Report report = report();
+        List<String> violations = new ArrayList<>();
+        if (budget.gpuBytes >= 0 && report.gpuBytes > budget.gpuBytes) violations.add(String.format("gpu: %s over the %s budget", formatBytes(report.gpuBytes), formatBytes(budget.gpuBytes)));
+        if (budget.nativeBytes >= 0 && report.nativeBytes > budget.nativeBytes) violations.add(String.format("native: %s over the %s budget", formatBytes(report.nativeBytes), formatBytes(budget.nativeBytes)));
+        for (Map.Entry<String, Long> limit : budget.types.entrySet()) {
+            TypeReport t = report.types.get(limit.getKey());
+            if (t == null) throw new RuntimeException("Unknown resource type \"" + limit.getKey() + "\" in budget \"" + budgetPath + "\".");
+            if (t.gpuBytes + t.nativeBytes > limit.getValue()) violations.add(String.format("%s: %s over the %s budget", limit.getKey(), formatBytes(t.gpuBytes + t.nativeBytes), formatBytes(limit.getValue())));
+        }
+        return violations;
+    }
+
+    public static synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("resources: %d live, gpu %s, native %s", live.size(), formatBytes(getGpuBytes()), formatBytes(getNativeBytes())));
+        for (Type type : Type.VALUES) {
+            int t = type.ordinal();
+            if (gpuBytes[t] == 0 && nativeBytes[t] == 0) continue;
+            sb.append(String.format("%n  %-12s gpu %10s  native %10s", type.label, formatBytes(gpuBytes[t]), formatBytes(nativeBytes[t])));
+        }
+        return sb.toString();
+    }
+
+    // call once everything has been cleaned up; returns how many resources leaked
+    public static synchronized int reportLeaks() {
+        for (Entry entry : collected) {
+            System.err.printf("Leaked %s \"%s\" (%s, level %s): collected without cleanup%n", entry.type.label, entry.name, formatBytes(entry.gpuBytes + entry.nativeBytes), entry.level);
+        }
+        for (Entry entry : live.values()) {
+            System.err.printf("Leaked %s \"%s\" (%s, level %s): never cleaned up%n", entry.type.label, entry.name, formatBytes(entry.gpuBytes + entry.nativeBytes), entry.level);
+            StackTraceElement[] trace = entry.allocation.getStackTrace();
+            for (int i = 0; i < Math.min(trace.length, 6); i++) System.err.println("    at " + trace[i]);
+        }
+        return collected.size() + live.size();
+    }
+
+    static String formatBytes(long bytes) {
+        if (Math.abs(bytes) < 1024) return bytes + " B";
+        if (Math.abs(bytes) < 1024 * 1024) return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static final class Entry {
+        final long id;
+        final Type type;
+        final String name;
+        final String level;
+        final Throwable allocation;
+        long gpuBytes;
+        long nativeBytes;
+        Cleaner.Cleanable cleanable;
+
+        Entry(long id, Type type, String name, String level, Throwable allocation) {
+            this.id = id;
+            this.type = type;
+            this.name = name;
+            this.level = level;
+            this.allocation = allocation;
+        }
+    }
+
+    // must not reference the owner, or it would never become unreachable
+    private record Collected(long id) implements Runnable {
+        @Override
+        public void run() {
+            synchronized (ResourceRegistry.class) {
+                Entry entry = live.remove(id);
+                if (entry == null) return;
+                add(entry.type, -entry.gpuBytes, -entry.nativeBytes);
+                collected.add(entry);
+            }
+        }
+    }
+
+    // per-platform limits in bytes; -1 or a missing type leaves that part unchecked
+    public static class Budget {
+        @JsonProperty("gpuBytes")
+        public long gpuBytes = -1;
+        @JsonProperty("nativeBytes")
+        public long nativeBytes = -1;
+        @JsonProperty("types")
+        public Map<String, Long> types = new HashMap<>();
+    }
+
+    public static class Report {
+        @JsonProperty("gpuBytes")
+        public long gpuBytes;
+        @JsonProperty("nativeBytes")
+        public long nativeBytes;
+        @JsonProperty("types")
+        public Map<String, TypeReport> types = new LinkedHashMap<>();
+        @JsonProperty("levels")
+        public Map<String, TypeReport> levels = new TreeMap<>();
+        @JsonProperty("resources")
+        public List<ResourceReport> resources = new ArrayList<>();
+        @JsonProperty("collectedWithoutCleanup")
+        public List<ResourceReport> collectedWithoutCleanup = new ArrayList<>();
+    }
+
+    public static class TypeReport {
+        @JsonProperty("count")
+        public int count;
+        @JsonProperty("gpuBytes")
+        public long gpuBytes;
+        @JsonProperty("nativeBytes")
+        public long nativeBytes;
+        @JsonProperty("peakGpuBytes")
+        public long peakGpuBytes;
+        @JsonProperty("peakNativeBytes")
+        public long peakNativeBytes;
+    }
+
+    public record ResourceReport(@JsonProperty("type") String type, @JsonProperty("name") String name, @JsonProperty("level") String level,
+                                 @JsonProperty("gpuBytes") long gpuBytes, @JsonProperty("nativeBytes") long nativeBytes) {}
+
+}
@@ -0,0 +1,193 @@
+package engine.telemetry;
+
+import engine.graph.render.GpuProfiler;
+import engine.telemetry.jfr.LoopPhaseEvent;
+import jdk.jfr.EventType;
+
+import java.lang.management.ManagementFactory;
+
+public class Telemetry {
+
+    public enum Phase {
+        POLL_EVENTS("pollEvents"),
+        MOUSE_INPUT("mouseInput"),
+        APP_INPUT("appInput"),
+        SCENE_UPDATE("sceneUpdate"),
+        APP_UPDATE("appUpdate"),
+        RENDER("render"),
+        SWAP("swap");
+
+        public static final Phase[] VALUES = values();
+        public final String label;
+
+        Phase(String label) { this.label = label; }
+    }
+
+    public enum Counter {
+        DRAW_CALLS("drawCalls"),
+        UNIFORM_UPLOADS("uniformUploads"),
+        TEXTURE_BINDS("textureBinds"),
+        STATE_CALLS("stateCalls"),
+        STATE_CALLS_SKIPPED("stateCallsSkipped"),
+        ENTITIES("entities"),
+        AL_CALLS("alCalls");
+
+        public static final Counter[] VALUES = values();
+        public final String label;
+
+        Counter(String label) { this.label = label; }
+    }
+
+    // counters are bumped from deep inside the renderer and scene, so they live statically rather than being threaded through
+    private static boolean enabled;
+    private static final long[] counts = new long[Counter.VALUES.length];
+
+    // checked before allocating so phase events cost a volatile read while no recording asks for them
+    private static final EventType LOOP_PHASE_EVENT = EventType.getEventType(LoopPhaseEvent.class);
+    private final LoopPhaseEvent[] phaseEvents = new LoopPhaseEvent[Phase.VALUES.length];
+
+    private final Histogram[] phaseHistograms;
+    private final Histogram[] counterHistograms;
+    private final long[] lastFrameCounts;
+    private final TelemetryExporter exporter;
+    private final int exportInterval;
+    private long frame;
+    private GpuProfiler gpuProfiler;
+    private long frameWorkNanos;
+    private long lastFrameWorkNanos;
+
+    // thread allocation counters; the engine loop is single threaded so the current thread sees every frame allocation
+    private final com.sun.management.ThreadMXBean threadBean;
+    private boolean trackAllocations;
+    private long allocationBudget = -1;
+    private int budgetWarmupFrames;
+    private final Histogram[] allocationHistograms;
+    private final Histogram frameAllocationHistogram;
+    private final long[] phaseAllocationStart;
+    private final long[] lastPhaseAllocation;
+    private long frameAllocationStart;
+    private long lastFrameAllocation;
+
+    public Telemetry(boolean enabled, int windowSize, TelemetryExporter exporter, int exportInterval) {
+        Telemetry.enabled = enabled;
+        this.exporter = enabled ? exporter : null;
+        this.exportInterval = Math.max(1, exportInterval);
+
+        phaseHistograms = new Histogram[Phase.VALUES.length];
+        for (int i = 0; i < phaseHistograms.length; i++) phaseHistograms[i] = new Histogram(windowSize);
+        counterHistograms = new Histogram[Counter.VALUES.length];
+        for (int i = 0; i < counterHistograms.length; i++) counterHistograms[i] = new Histogram(windowSize);
+        lastFrameCounts = new long[Counter.VALUES.length];
+
+        threadBean = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean ? bean : null;
+        allocationHistograms = new Histogram[Phase.VALUES.length];
+        for (int i = 0; i < allocationHistograms.length; i++) allocationHistograms[i] = new Histogram(windowSize);
+        frameAllocationHistogram = new Histogram(windowSize);
+        phaseAllocationStart = new long[Phase.VALUES.length];
+        lastPhaseAllocation = new long[Phase.VALUES.length];
+    }
+
+    public void setAllocationTracking(boolean trackAllocations) {
+        this.trackAllocations = enabled && trackAllocations && threadBean != null && threadBean.isThreadAllocatedMemorySupported();
+        if (this.trackAllocations) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+            frameAllocationStart = threadBean.getCurrentThreadAllocatedBytes();
+        }
+    }
+
+    // fails the run once a steady-state frame allocates more than the budget; negative disables the check
+    public void setAllocationBudget(long bytes, int warmupFrames) {
+        allocationBudget = bytes;
+        budgetWarmupFrames = warmupFrames;
+    }
+
+    // the exporters report the profiler's pass timings next to the cpu phases
+    public void setGpuProfiler(GpuProfiler gpuProfiler) { this.gpuProfiler = gpuProfiler; }
+
+    public static boolean isEnabled() { return enabled; }
+
+    public static void count(Counter counter) {
+        if (enabled) counts[counter.ordinal()]++;
+    }
+
+    public static void count(Counter counter, int amount) {
+        if (enabled) counts[counter.ordinal()] += amount;
+    }
+
+    public long begin(Phase phase) {
+        if (LOOP_PHASE_EVENT.isEnabled()) {
+            LoopPhaseEvent event = new LoopPhaseEvent();
+            event.phase = phase.label;
+            event.begin();
+            phaseEvents[phase.ordinal()] = event;
+        }
+        if (trackAllocations) phaseAllocationStart[phase.ordinal()] = threadBean.getCurrentThreadAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    public void end(Phase phase, long start) {
+        LoopPhaseEvent event = phaseEvents[phase.ordinal()];
+        if (event != null) {
+            event.commit();
+            phaseEvents[phase.ordinal()] = null;
+        }
+        long nanos = System.nanoTime() - start;
+        // polling spins between frames and the swap waits on vsync, so neither counts as frame work
+        if (phase != Phase.POLL_EVENTS && phase != Phase.SWAP) frameWorkNanos += nanos;
+        if (!enabled) return;
+        phaseHistograms[phase.ordinal()].record(nanos);
+        if (trackAllocations) {
+            long bytes = threadBean.getCurrentThreadAllocatedBytes() - phaseAllocationStart[phase.ordinal()];
+            allocationHistograms[phase.ordinal()].record(bytes);
+            lastPhaseAllocation[phase.ordinal()] = bytes;
+        }
+    }
+
+    public void endFrame() {
+        lastFrameWorkNanos = frameWorkNanos;
+        frameWorkNanos = 0;
+        if (!enabled) return;
+        for (int i = 0; i < counts.length; i++) {
+            lastFrameCounts[i] = counts[i];
+            counterHistograms[i].record(counts[i]);
+            counts[i] = 0;
+        }
+        frame++;
+
+        if (trackAllocations) {
+            lastFrameAllocation = threadBean.getCurrentThreadAllocatedBytes() - frameAllocationStart;
+            frameAllocationHistogram.record(lastFrameAllocation);
+            if (allocationBudget >= 0 && frame > budgetWarmupFrames && lastFrameAllocation > allocationBudget) throw new IllegalStateException(budgetReport());
+        }
+
+        if (exporter != null && frame % exportInterval == 0) exporter.export(this);
+        // the exporter's own garbage is not charged to the next frame
+        if (trackAllocations) frameAllocationStart = threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private String budgetReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Frame ").append(frame).append(" allocated ").append(lastFrameAllocation)
+          .append(" bytes, over the budget of ").append(allocationBudget).append(" bytes:");
+        for (Phase phase : Phase.VALUES) sb.append(' ').append(phase.label).append('=').append(lastPhaseAllocation[phase.ordinal()]);
+        return sb.toString();
+    }
+
+    public void close() {
+        if (exporter != null) exporter.close();
+        enabled = false;
+    }
+
+    public long getFrame() { return frame; }
+    public GpuProfiler getGpuProfiler() { return gpuProfiler; }
+    public Histogram getHistogram(Phase phase) { return phaseHistograms[phase.ordinal()]; }
+    public Histogram getHistogram(Counter counter) { return counterHistograms[counter.ordinal()]; }
+    public long getLastFrameCount(Counter counter) { return lastFrameCounts[counter.ordinal()]; }
+    public boolean isTrackingAllocations() { return trackAllocations; }
+    public Histogram getAllocationHistogram(Phase phase) { return allocationHistograms[phase.ordinal()]; }
+    public Histogram getFrameAllocationHistogram() { return frameAllocationHistogram; }
+    public long getLastFrameAllocation() { return lastFrameAllocation; }
+    // cpu time of the last frame's input, update and render phases; measured even while telemetry is disabled
+    public float getLastFrameWorkMillis() { return lastFrameWorkNanos / 1_000_000.0f; }
+
+}
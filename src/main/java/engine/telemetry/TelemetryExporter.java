@@ -0,0 +1,9 @@
+package engine.telemetry;
+
+public interface TelemetryExporter {
+
+    void export(Telemetry telemetry);
+
+    default void close() {}
+
+}
@@ -0,0 +1,32 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.LevelLoad")
+@Label("Level Load")
+@Category({ "tont-doom", "Assets" })
+@Description("Level.load, including every model, texture and sound it references.")
+public class LevelLoadEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Models")
+    public int models;
+
+    @Label("Entities")
+    public int entities;
+
+    @Label("Shared Assets")
+    @Description("Textures and sounds that reused an already loaded file with identical content.")
+    public int sharedAssets;
+
+    @Label("Shared Bytes")
+    @DataAmount
+    public long sharedBytes;
+
+}
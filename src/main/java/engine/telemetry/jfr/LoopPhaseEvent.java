@@ -0,0 +1,14 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.LoopPhase")
+@Label("Loop Phase")
+@Category({ "tont-doom", "Main Loop" })
+@Description("One phase of an Engine.run iteration.")
+public class LoopPhaseEvent extends Event {
+
+    @Label("Phase")
+    public String phase;
+
+}
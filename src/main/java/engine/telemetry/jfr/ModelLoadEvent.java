@@ -0,0 +1,30 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.ModelLoad")
+@Label("Model Load")
+@Category({ "tont-doom", "Assets" })
+@Description("ModelLoader.loadModel import, including material textures.")
+public class ModelLoadEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Model ID")
+    public String modelID;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Meshes")
+    public int meshes;
+
+    @Label("Vertices")
+    public int vertices;
+
+    @Label("Animations")
+    public int animations;
+
+}
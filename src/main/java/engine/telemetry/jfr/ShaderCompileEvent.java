@@ -0,0 +1,21 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.ShaderCompile")
+@Label("Shader Compile")
+@Category({ "tont-doom", "GL" })
+@Description("Compilation of one shader module.")
+public class ShaderCompileEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Defines")
+    public String defines;
+
+    @Label("Source Size")
+    @DataAmount
+    public long bytes;
+
+}
@@ -0,0 +1,20 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.ShaderLink")
+@Label("Shader Link")
+@Category({ "tont-doom", "GL" })
+@Description("Link of a shader program, or its restore from the program binary cache.")
+public class ShaderLinkEvent extends Event {
+
+    @Label("Program ID")
+    public int programID;
+
+    @Label("Defines")
+    public String defines;
+
+    @Label("From Binary Cache")
+    public boolean cached;
+
+}
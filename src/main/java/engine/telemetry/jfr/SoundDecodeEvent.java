@@ -0,0 +1,24 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.SoundDecode")
+@Label("Sound Decode")
+@Category({ "tont-doom", "Assets" })
+@Description("Decode of a sound file into an OpenAL buffer.")
+public class SoundDecodeEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("PCM Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Channels")
+    public int channels;
+
+    @Label("Sample Rate")
+    public int sampleRate;
+
+}
@@ -0,0 +1,24 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.TextureLoad")
+@Label("Texture Decode")
+@Category({ "tont-doom", "Assets" })
+@Description("Image decode of a texture file.")
+public class TextureLoadEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+}
@@ -0,0 +1,24 @@
+package engine.telemetry.jfr;
+
+import jdk.jfr.*;
+
+@Name("engine.TextureUpload")
+@Label("Texture Upload")
+@Category({ "tont-doom", "GL" })
+@Description("glTexImage2D and mipmap generation for a texture.")
+public class TextureUploadEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Upload Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+}
@@ -0,0 +1,146 @@
+package engine.tools;
+
+import engine.asset.Asset;
+import engine.asset.AssetPack;
+import engine.asset.Assets;
+import engine.util.ContentHash;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.lwjgl.util.lz4.LZ4.LZ4_compressBound;
+import static org.lwjgl.util.lz4.LZ4HC.LZ4_compress_HC;
+import static org.lwjgl.util.lz4.LZ4HC.LZ4HC_CLEVEL_MAX;
+import static org.lwjgl.util.zstd.Zstd.*;
+
+// packs a directory into a single asset pack; entries are named as the game names them, so --dir is given relative to the working directory
+public class AssetPacker {
+
+    // entries compressing worse than this are stored, which leaves png, ogg and ktx2 files readable in place from the mapping
+    private static final double MAX_RATIO = 0.95;
+
+    private record Packed(String name, byte codec, long offset, long packedSize, long size, long hash) {}
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = RenderBenchmark.parseArgs(args);
+        Path dir = Path.of(options.getOrDefault("dir", "resources"));
+        Path out = Path.of(options.getOrDefault("out", "resources.pack"));
+        byte codec = switch (options.getOrDefault("codec", "lz4").toLowerCase()) {
+            case "lz4" -> AssetPack.LZ4;
+            case "zstd" -> AssetPack.ZSTD;
+            default -> throw new IllegalArgumentException("Unknown codec \"" + options.get("codec") + "\", expected lz4 or zstd.");
+        };
+        // decompression speed barely depends on the level, so both default to their slowest, smallest setting
+        int level = Integer.parseInt(options.getOrDefault("level", String.valueOf(codec == AssetPack.LZ4 ? LZ4HC_CLEVEL_MAX : ZSTD_maxCLevel())));
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).filter(p -> !p.toAbsolutePath().equals(out.toAbsolutePath())).sorted().toList();
+        }
+        if (files.isEmpty()) throw new RuntimeException("No files found under \"" + dir + "\".");
+
+        List<String> names = new ArrayList<>(files.size());
+        int indexBytes = 0;
+        for (Path file : files) {
+            String name = Assets.normalize(file.toString());
+            int length = name.getBytes(StandardCharsets.UTF_8).length;
+            if (length > 0xFFFF) throw new RuntimeException("Asset path \"" + name + "\" is too long to pack.");
+            names.add(name);
+            indexBytes += 2 + length + 1 + 4 * Long.BYTES;
+        }
+
+        long start = System.nanoTime();
+        List<Packed> packed = new ArrayList<>(files.size());
+        long rawBytes = 0;
+        int compressed = 0;
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = align(AssetPack.HEADER_BYTES + indexBytes);
+            for (int i = 0; i < files.size(); i++) {
+                try (Asset asset = Assets.open(files.get(i).toString())) {
+                    ByteBuffer data = asset.getData();
+                    long hash = ContentHash.of(data);
+                    ByteBuffer compressedData = compress(data, codec, level);
+                    boolean store = compressedData == null || compressedData.remaining() > data.remaining() * MAX_RATIO;
+                    ByteBuffer payload = store ? data : compressedData;
+                    packed.add(new Packed(names.get(i), store ? AssetPack.STORED : codec, offset, payload.remaining(), data.remaining(), hash));
+                    write(channel, payload, offset);
+                    offset = align(offset + payload.remaining());
+                    rawBytes += data.remaining();
+                    if (!store) compressed++;
+                    if (compressedData != null) MemoryUtil.memFree(compressedData);
+                }
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(AssetPack.HEADER_BYTES + indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(AssetPack.MAGIC).putInt(AssetPack.VERSION).putInt(packed.size()).putInt(indexBytes);
+            for (Packed entry : packed) {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                index.putShort((short) name.length).put(name).put(entry.codec);
+                index.putLong(entry.offset).putLong(entry.packedSize).putLong(entry.size).putLong(entry.hash);
+            }
+            write(channel, index.flip(), 0);
+        }
+
+        long packBytes = Files.size(out);
+        System.out.printf("%s: %d files (%d compressed), %d KiB -> %d KiB (%.1f%%) in %.0f ms%n", out, packed.size(), compressed, rawBytes / 1024, packBytes / 1024,
+                rawBytes == 0 ? 100.0 : 100.0 * packBytes / rawBytes, (System.nanoTime() - start) / 1_000_000.0);
+        if (options.containsKey("verify")) verify(out, files, names);
+    }
+
+    private static ByteBuffer compress(ByteBuffer data, byte codec, int level) {
+        if (data.remaining() == 0) return null;
+        if (codec == AssetPack.LZ4) {
+            ByteBuffer dst = MemoryUtil.memAlloc(LZ4_compressBound(data.remaining()));
+            int size = LZ4_compress_HC(data, dst, level);
+            if (size <= 0) {
+                MemoryUtil.memFree(dst);
+                return null;
+            }
+            return dst.limit(size);
+        }
+        ByteBuffer dst = MemoryUtil.memAlloc((int) ZSTD_compressBound(data.remaining()));
+        long size = ZSTD_compress(dst, data, level);
+        if (ZSTD_isError(size)) {
+            MemoryUtil.memFree(dst);
+            throw new RuntimeException("zstd compression failed: " + ZSTD_getErrorName(size));
+        }
+        return dst.limit((int) size);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        ByteBuffer view = data.duplicate();
+        while (view.hasRemaining()) position += channel.write(view, position);
+    }
+
+    private static long align(long offset) {
+        return (offset + AssetPack.ALIGNMENT - 1) & -AssetPack.ALIGNMENT;
+    }
+
+    // reads every entry back through the mounted pack and compares it with the loose file
+    private static void verify(Path out, List<Path> files, List<String> names) {
+        Assets.mount(out.toString());
+        for (int i = 0; i < files.size(); i++) {
+            try (Asset packed = Assets.open(names.get(i))) {
+                byte[] expected;
+                try { expected = Files.readAllBytes(files.get(i)); }
+                catch (IOException e) { throw new RuntimeException("Failed to read \"" + files.get(i) + "\".", e); }
+                ByteBuffer data = packed.getData();
+                if (data.remaining() != expected.length || !data.equals(ByteBuffer.wrap(expected))) throw new IllegalStateException("Packed \"" + names.get(i) + "\" does not match the file.");
+            }
+        }
+        Assets.unmountAll();
+        System.out.println("verified " + files.size() + " entries");
+    }
+
+}
@@ -0,0 +1,79 @@
+package engine.tools;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import engine.scene.view.Camera;
+import engine.util.Util;
+
+import java.io.IOException;
+
+// scripted camera flight; frames advance by a fixed step so every run sees the same views regardless of speed
+public class CameraPath {
+
+    private final PathData data;
+    private final int frameCount;
+
+    public CameraPath(String filePath) {
+        try {
+            data = new ObjectMapper().readValue(Util.readFile(filePath), PathData.class);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to parse camera path at \"" + filePath + "\".", e);
+        }
+        if (data.keyframes == null || data.keyframes.length == 0) throw new RuntimeException("Camera path \"" + filePath + "\" has no keyframes.");
+        if (data.captures == null) data.captures = new int[0];
+        double duration = data.keyframes[data.keyframes.length - 1].time;
+        frameCount = (int) Math.floor(duration * 1000.0 / data.frameMillis) + 1;
+    }
+
+    public void apply(Camera camera, int frame) {
+        double time = frame * data.frameMillis / 1000.0;
+        Keyframe[] keyframes = data.keyframes;
+
+        int next = 0;
+        while (next < keyframes.length - 1 && keyframes[next].time < time) next++;
+        Keyframe b = keyframes[next];
+        Keyframe a = keyframes[Math.max(0, next - 1)];
+        double span = b.time - a.time;
+        float t = span > 0 ? (float) Math.min(1.0, Math.max(0.0, (time - a.time) / span)) : 1.0f;
+
+        camera.setPosition(lerp(a.position[0], b.position[0], t), lerp(a.position[1], b.position[1], t), lerp(a.position[2], b.position[2], t));
+        camera.setRotation(lerp(a.rotation[0], b.rotation[0], t), lerp(a.rotation[1], b.rotation[1], t));
+    }
+
+    public boolean isCapture(int frame) {
+        for (int capture : data.captures) {
+            if (capture == frame) return true;
+        }
+        return false;
+    }
+
+    public String getLevel() { return data.level; }
+    public float getFrameMillis() { return (float) data.frameMillis; }
+    public int getFrameCount() { return frameCount; }
+
+    private static float lerp(double a, double b, float t) {
+        return (float) (a + (b - a) * t);
+    }
+
+    private static class Keyframe {
+        @JsonProperty("time")
+        public double time;
+        @JsonProperty("position")
+        public double[] position;
+        @JsonProperty("rotation")
+        public double[] rotation;
+    }
+
+    private static class PathData {
+        @JsonProperty("level")
+        public String level;
+        @JsonProperty("frameMillis")
+        public double frameMillis = 1000.0 / 60.0;
+        @JsonProperty("captures")
+        public int[] captures;
+        @JsonProperty("keyframes")
+        public Keyframe[] keyframes;
+    }
+
+}
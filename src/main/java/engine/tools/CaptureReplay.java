@@ -0,0 +1,65 @@
+package engine.tools;
+
+import engine.OffscreenContext;
+import engine.graph.render.capture.CapturePlayer;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.glFinish;
+
+// replays a frame capture on an offscreen context with no engine, scene or assets involved, so driver cost can be measured in isolation
+public class CaptureReplay {
+
+    public static void main(String[] args) {
+        Map<String, String> options = RenderBenchmark.parseArgs(args);
+        String capturePath = options.get("capture");
+        if (capturePath == null) throw new IllegalArgumentException("Missing --capture <file>.");
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "500"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "50"));
+
+        // the context has to exist before the player builds its resources, so the size comes from the header alone
+        int[] size = CapturePlayer.readSize(capturePath);
+        OffscreenContext context = new OffscreenContext(size[0], size[1]);
+        CapturePlayer player = new CapturePlayer(capturePath);
+
+        for (int i = 0; i < warmup; i++) player.play();
+        glFinish();
+
+        // submit time is the cpu side of the driver; the finished time includes the gpu work
+        float[] submitTimes = new float[iterations];
+        float[] frameTimes = new float[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            player.play();
+            long submitted = System.nanoTime();
+            glFinish();
+            long finished = System.nanoTime();
+            submitTimes[i] = (submitted - start) / 1_000_000.0f;
+            frameTimes[i] = (finished - start) / 1_000_000.0f;
+        }
+
+        System.out.printf("%s on %s, %dx%d, %d commands, %d draws, %d iterations%n", capturePath, context.getRenderer(),
+                player.getWidth(), player.getHeight(), player.getCommandCount(), player.getDrawCount(), iterations);
+        report("submit ms", submitTimes);
+        report("frame ms", frameTimes);
+
+        player.cleanup();
+        context.cleanup();
+    }
+
+    private static void report(String label, float[] times) {
+        float[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (float time : times) sum += time;
+        System.out.printf("%s: avg=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f%n", label, sum / times.length,
+                percentile(sorted, 0.5f), percentile(sorted, 0.95f), percentile(sorted, 0.99f), sorted[sorted.length - 1]);
+    }
+
+    private static float percentile(float[] sorted, float percentile) {
+        int index = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1));
+        return sorted[index];
+    }
+
+}
@@ -0,0 +1,76 @@
+package engine.tools;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageWrite.*;
+
+// compares rendered frames against reference pngs; small per-channel differences are tolerated so driver rounding does not fail a run
+public class GoldenImage {
+
+    private final int channelTolerance;
+    private final float maxMismatchRatio;
+
+    public GoldenImage(int channelTolerance, float maxMismatchRatio) {
+        this.channelTolerance = channelTolerance;
+        this.maxMismatchRatio = maxMismatchRatio;
+    }
+
+    // pixels are bottom-up rgba as read back from gl
+    public static void write(String path, int width, int height, ByteBuffer pixels) {
+        File parent = new File(path).getParentFile();
+        if (parent != null) parent.mkdirs();
+        // the flag is global to stb, so it is reset for any later write in the process
+        stbi_flip_vertically_on_write(true);
+        try {
+            if (!stbi_write_png(path, width, height, 4, pixels, width * 4)) throw new RuntimeException("Failed to write image \"" + path + "\".");
+        }
+        finally {
+            stbi_flip_vertically_on_write(false);
+        }
+    }
+
+    // returns the fraction of mismatched pixels, writes a diff image next to the actual frame when over the limit
+    public Result compare(String goldenPath, String diffPath, int width, int height, ByteBuffer pixels) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+            stbi_set_flip_vertically_on_load(true);
+            ByteBuffer golden = stbi_load(goldenPath, w, h, channels, 4);
+            if (golden == null) throw new RuntimeException("Golden image \"" + goldenPath + "\" failed to load: " + stbi_failure_reason());
+
+            try {
+                if (w.get(0) != width || h.get(0) != height) return new Result(1.0f, false, "size " + w.get(0) + "x" + h.get(0) + " != " + width + "x" + height);
+
+                ByteBuffer diff = ByteBuffer.allocateDirect(width * height * 4);
+                int mismatched = 0;
+                int maxDelta = 0;
+                for (int i = 0; i < width * height * 4; i += 4) {
+                    int delta = 0;
+                    for (int c = 0; c < 3; c++) delta = Math.max(delta, Math.abs((pixels.get(i + c) & 0xFF) - (golden.get(i + c) & 0xFF)));
+                    maxDelta = Math.max(maxDelta, delta);
+                    boolean bad = delta > channelTolerance;
+                    if (bad) mismatched++;
+                    diff.put(i, (byte) (bad ? 0xFF : 0)).put(i + 1, (byte) Math.min(255, delta * 8)).put(i + 2, (byte) 0).put(i + 3, (byte) 0xFF);
+                }
+
+                float ratio = (float) mismatched / (width * height);
+                boolean passed = ratio <= maxMismatchRatio;
+                if (!passed && diffPath != null) write(diffPath, width, height, diff);
+                return new Result(ratio, passed, "max channel delta " + maxDelta);
+            }
+            finally {
+                stbi_image_free(golden);
+                stbi_set_flip_vertically_on_load(false);
+            }
+        }
+    }
+
+    public record Result(float mismatchRatio, boolean passed, String detail) {}
+
+}
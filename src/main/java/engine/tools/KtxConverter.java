@@ -0,0 +1,218 @@
+package engine.tools;
+
+import engine.graph.texture.Texture;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.ktx.ktxBasisParams;
+import org.lwjgl.util.ktx.ktxTexture;
+import org.lwjgl.util.ktx.ktxTexture2;
+import org.lwjgl.util.ktx.ktxTextureCreateInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageResize.stbir_resize_uint8;
+import static org.lwjgl.util.ktx.KTX.*;
+
+// converts a level's pngs into basis-compressed .ktx2 files beside them, and compares load time and vram against the png path
+public class KtxConverter {
+
+    private static final int VK_FORMAT_R8G8B8_UNORM = 23;
+    private static final int VK_FORMAT_R8G8B8A8_UNORM = 37;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = RenderBenchmark.parseArgs(args);
+        Path dir = Path.of(options.getOrDefault("dir", "resources/levels/level1"));
+        boolean uastc = options.containsKey("uastc");
+        int quality = Integer.parseInt(options.getOrDefault("quality", "128"));
+        boolean force = options.containsKey("force");
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        int target = switch (options.getOrDefault("target", "bc7").toLowerCase()) {
+            case "bc7" -> KTX_TTF_BC7_RGBA;
+            case "bc3" -> KTX_TTF_BC3_RGBA;
+            case "etc2" -> KTX_TTF_ETC2_RGBA;
+            case "astc" -> KTX_TTF_ASTC_4x4_RGBA;
+            default -> throw new IllegalArgumentException("Unknown target \"" + options.get("target") + "\", expected bc7, bc3, etc2 or astc.");
+        };
+
+        List<Path> pngs;
+        try (Stream<Path> files = Files.walk(dir)) {
+            pngs = files.filter(p -> p.toString().toLowerCase().endsWith(".png")).sorted().toList();
+        }
+        if (pngs.isEmpty()) throw new RuntimeException("No pngs found under \"" + dir + "\".");
+
+        if (!options.containsKey("compare-only")) {
+            for (Path png : pngs) {
+                Path ktx = ktxPath(png);
+                if (!force && Files.exists(ktx) && Files.getLastModifiedTime(ktx).compareTo(Files.getLastModifiedTime(png)) >= 0) continue;
+                long start = System.nanoTime();
+                convert(png.toString(), ktx.toString(), uastc, quality);
+                System.out.printf("%s -> %s (%d KiB -> %d KiB, %.0f ms)%n", png, ktx.getFileName(), Files.size(png) / 1024, Files.size(ktx) / 1024, (System.nanoTime() - start) / 1_000_000.0);
+            }
+        }
+        compare(pngs, target, iterations);
+    }
+
+    private static Path ktxPath(Path png) {
+        String name = png.getFileName().toString();
+        return png.resolveSibling(name.substring(0, name.lastIndexOf('.')) + ".ktx2");
+    }
+
+    private static void convert(String pngPath, String ktxPath, boolean uastc, int quality) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+            ByteBuffer rgba = stbi_load(pngPath, w, h, channels, 4);
+            if (rgba == null) throw new RuntimeException("Texture file \"" + pngPath + "\" failed to load: " + stbi_failure_reason());
+            int width = w.get(0), height = h.get(0);
+
+            // the loader treats four components as transparent, so images the png loader would call opaque drop their alpha channel
+            boolean alpha = Texture.hasTransparentPixels(width, height, rgba);
+            int components = alpha ? 4 : 3;
+            int levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+
+            ktxTextureCreateInfo info = ktxTextureCreateInfo.calloc(stack)
+                    .vkFormat(alpha ? VK_FORMAT_R8G8B8A8_UNORM : VK_FORMAT_R8G8B8_UNORM)
+                    .baseWidth(width)
+                    .baseHeight(height)
+                    .baseDepth(1)
+                    .numDimensions(2)
+                    .numLevels(levels)
+                    .numLayers(1)
+                    .numFaces(1)
+                    .isArray(false)
+                    .generateMipmaps(false);
+            PointerBuffer pp = stack.mallocPointer(1);
+            check(ktxTexture2_Create(info, KTX_TEXTURE_CREATE_ALLOC_STORAGE, pp), pngPath);
+            ktxTexture2 texture = ktxTexture2.create(pp.get(0));
+            ktxTexture base = ktxTexture.create(texture.address());
+
+            try {
+                // compressed textures cannot be mipmapped at load time, so the chain is baked here
+                ByteBuffer level = rgba;
+                int lw = width, lh = height;
+                for (int l = 0; l < levels; l++) {
+                    if (l > 0) {
+                        int nw = Math.max(1, lw / 2), nh = Math.max(1, lh / 2);
+                        ByteBuffer next = MemoryUtil.memAlloc(nw * nh * 4);
+                        if (!stbir_resize_uint8(level, lw, lh, 0, next, nw, nh, 0, 4)) throw new RuntimeException("Failed to build mip " + l + " of \"" + pngPath + "\".");
+                        if (level != rgba) MemoryUtil.memFree(level);
+                        level = next;
+                        lw = nw;
+                        lh = nh;
+                    }
+                    ByteBuffer packed = pack(level, lw * lh, components);
+                    check(ktxTexture_SetImageFromMemory(base, l, 0, 0, packed), pngPath);
+                    if (packed != level) MemoryUtil.memFree(packed);
+                }
+                if (level != rgba) MemoryUtil.memFree(level);
+
+                ktxBasisParams params = ktxBasisParams.calloc(stack)
+                        .structSize(ktxBasisParams.SIZEOF)
+                        .uastc(uastc)
+                        .threadCount(Runtime.getRuntime().availableProcessors())
+                        .qualityLevel(quality)
+                        .compressionLevel(2)
+                        .normalMap(pngPath.toLowerCase().contains("normal"));
+                check(ktxTexture2_CompressBasisEx(texture, params), pngPath);
+                // etc1s is already supercompressed; uastc needs zstd on top to be smaller than the png
+                if (uastc) check(ktxTexture2_DeflateZstd(texture, 18), pngPath);
+                check(ktxWriteToNamedFile(base, ktxPath), ktxPath);
+            }
+            finally {
+                ktxTexture_Destroy(base);
+                stbi_image_free(rgba);
+            }
+        }
+    }
+
+    private static ByteBuffer pack(ByteBuffer rgba, int pixels, int components) {
+        if (components == 4) return rgba;
+        ByteBuffer rgb = MemoryUtil.memAlloc(pixels * 3);
+        for (int i = 0; i < pixels; i++) {
+            rgb.put(i * 3, rgba.get(i * 4));
+            rgb.put(i * 3 + 1, rgba.get(i * 4 + 1));
+            rgb.put(i * 3 + 2, rgba.get(i * 4 + 2));
+        }
+        return rgb;
+    }
+
+    // cpu side of both load paths, and the bytes each leaves on the gpu: rgba8 plus generated mips versus the transcoded levels
+    private static void compare(List<Path> pngs, int target, int iterations) {
+        System.out.printf("%-48s %10s %10s %12s %12s%n", "texture", "png ms", "ktx2 ms", "png vram", "ktx2 vram");
+        double pngMillis = 0, ktxMillis = 0;
+        long pngBytes = 0, ktxBytes = 0;
+        for (Path png : pngs) {
+            Path ktx = ktxPath(png);
+            if (!Files.exists(ktx)) continue;
+
+            double pm = 0, km = 0;
+            long pv = 0, kv = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                pv = loadPng(png.toString());
+                pm += (System.nanoTime() - start) / 1_000_000.0;
+                start = System.nanoTime();
+                kv = loadKtx(ktx.toString(), target);
+                km += (System.nanoTime() - start) / 1_000_000.0;
+            }
+            pm /= iterations;
+            km /= iterations;
+            System.out.printf("%-48s %10.2f %10.2f %11dK %11dK%n", dirRelative(png), pm, km, pv / 1024, kv / 1024);
+            pngMillis += pm;
+            ktxMillis += km;
+            pngBytes += pv;
+            ktxBytes += kv;
+        }
+        System.out.printf("%-48s %10.2f %10.2f %11dK %11dK%n", "total", pngMillis, ktxMillis, pngBytes / 1024, ktxBytes / 1024);
+        if (pngBytes > 0) System.out.printf("ktx2 (%s) uses %.1f%% of the png vram%n", ktxTranscodeFormatString(target), 100.0 * ktxBytes / pngBytes);
+    }
+
+    private static long loadPng(String path) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1), h = stack.mallocInt(1), channels = stack.mallocInt(1);
+            ByteBuffer rgba = stbi_load(path, w, h, channels, 4);
+            if (rgba == null) throw new RuntimeException("Texture file \"" + path + "\" failed to load: " + stbi_failure_reason());
+            stbi_image_free(rgba);
+            return (long) w.get(0) * h.get(0) * 4 * 4 / 3;
+        }
+    }
+
+    private static long loadKtx(String path, int target) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer pp = stack.mallocPointer(1);
+            check(ktxTexture2_CreateFromNamedFile(path, KTX_TEXTURE_CREATE_LOAD_IMAGE_DATA_BIT, pp), path);
+            ktxTexture2 texture = ktxTexture2.create(pp.get(0));
+            ktxTexture base = ktxTexture.create(texture.address());
+            try {
+                if (ktxTexture2_NeedsTranscoding(texture)) check(ktxTexture2_TranscodeBasis(texture, target, 0), path);
+                long bytes = 0;
+                for (int level = 0; level < texture.numLevels(); level++) bytes += ktxTexture_GetImageSize(base, level);
+                return bytes;
+            }
+            finally {
+                ktxTexture_Destroy(base);
+            }
+        }
+    }
+
+    private static String dirRelative(Path path) {
+        String s = path.toString().replace(File.separatorChar, '/');
+        return s.length() > 48 ? "..." + s.substring(s.length() - 45) : s;
+    }
+
+    private static void check(int result, String what) {
+        if (result != KTX_SUCCESS) throw new RuntimeException("KTX2 \"" + what + "\" failed: " + ktxErrorString(result));
+    }
+
+}
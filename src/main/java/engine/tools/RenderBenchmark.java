@@ -0,0 +1,196 @@
+package engine.tools;
+
+import engine.Backends;
+import engine.OffscreenContext;
+import engine.Window;
+import engine.asset.Assets;
+import engine.graph.render.IRenderer;
+import engine.graph.render.Render;
+import engine.graph.render.deferred.DeferredRender;
+import engine.level.Level;
+import engine.scene.Scene;
+import engine.telemetry.Telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.glFinish;
+
+// flies a scripted camera through a level on an offscreen context, reports frame times and draw stats and checks captured frames against golden images
+public class RenderBenchmark {
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseArgs(args);
+        String pathFile = options.getOrDefault("path", "resources/benchmarks/level1_path.json");
+        Window.RendererType rendererType = Window.RendererType.valueOf(options.getOrDefault("renderer", "FORWARD").toUpperCase());
+        int width = Integer.parseInt(options.getOrDefault("width", "1280"));
+        int height = Integer.parseInt(options.getOrDefault("height", "720"));
+        int warmupFrames = Integer.parseInt(options.getOrDefault("warmup", "30"));
+        String goldenDir = options.getOrDefault("golden", "resources/benchmarks/golden/" + rendererType.name().toLowerCase());
+        String outDir = options.getOrDefault("out", "build/render-benchmark/" + rendererType.name().toLowerCase());
+        boolean updateGolden = options.containsKey("update-golden");
+        GoldenImage goldenImage = new GoldenImage(Integer.parseInt(options.getOrDefault("tolerance", "8")), Float.parseFloat(options.getOrDefault("max-mismatch", "0.001")));
+
+        // --pack <file> reads assets from a pack built by AssetPacker instead of the loose files
+        if (options.containsKey("pack")) Assets.mount(options.get("pack"));
+        CameraPath path = new CameraPath(pathFile);
+        // ci boxes rarely have an audio device and the benchmark does not need one
+        Backends.setAL(false);
+        OffscreenContext context = new OffscreenContext(width, height);
+
+        Window.WindowOptions opts = new Window.WindowOptions(width, height);
+        opts.antiAliasing = false;
+        opts.shaderCacheDir = null;
+        opts.renderer = rendererType;
+        // --fragment-stats counts the samples the forward passes shade, to compare overdraw between builds
+        opts.fragmentStats = options.containsKey("fragment-stats");
+        IRenderer render = rendererType == Window.RendererType.DEFERRED ? new DeferredRender(opts) : new Render(opts);
+
+        Level level = new Level(path.getLevel());
+        level.load(width, height, null, options.containsKey("texture-arrays"));
+        Scene scene = level.getScene();
+        render.resize(width, height);
+        render.warmUp(scene);
+
+        float frameMillis = path.getFrameMillis();
+        for (int i = 0; i < warmupFrames; i++) {
+            path.apply(scene.getCamera(), 0);
+            scene.update(frameMillis);
+            render.update(frameMillis, width, height);
+            render.render(scene);
+        }
+        glFinish();
+
+        int frameCount = path.getFrameCount();
+        Telemetry telemetry = new Telemetry(true, frameCount, null, 1);
+        float[] frameTimes = new float[frameCount];
+        long[] drawCalls = new long[frameCount];
+        long[] textureBinds = new long[frameCount];
+        long[] stateCalls = new long[frameCount];
+        long[] skippedStateCalls = new long[frameCount];
+        long shadedSamples = 0;
+        int sampledFrames = 0;
+        int failures = 0;
+        int missing = 0;
+
+        for (int frame = 0; frame < frameCount; frame++) {
+            path.apply(scene.getCamera(), frame);
+            long phase = telemetry.begin(Telemetry.Phase.SCENE_UPDATE);
+            scene.update(frameMillis);
+            telemetry.end(Telemetry.Phase.SCENE_UPDATE, phase);
+
+            // the finish keeps the gpu inside the measured time; without it frames only measure submission
+            phase = telemetry.begin(Telemetry.Phase.RENDER);
+            render.update(frameMillis, width, height);
+            render.render(scene);
+            glFinish();
+            telemetry.end(Telemetry.Phase.RENDER, phase);
+            frameTimes[frame] = (System.nanoTime() - phase) / 1_000_000.0f;
+            telemetry.endFrame();
+            drawCalls[frame] = telemetry.getLastFrameCount(Telemetry.Counter.DRAW_CALLS);
+            textureBinds[frame] = telemetry.getLastFrameCount(Telemetry.Counter.TEXTURE_BINDS);
+            stateCalls[frame] = telemetry.getLastFrameCount(Telemetry.Counter.STATE_CALLS);
+            skippedStateCalls[frame] = telemetry.getLastFrameCount(Telemetry.Counter.STATE_CALLS_SKIPPED);
+            // query results arrive a few frames late, so the first frames have none
+            long samples = render instanceof Render forward ? forward.getShadedSamples() : -1;
+            if (samples >= 0) {
+                shadedSamples += samples;
+                sampledFrames++;
+            }
+
+            if (!path.isCapture(frame)) continue;
+            ByteBuffer pixels = context.readPixels();
+            String name = String.format("frame_%04d.png", frame);
+            GoldenImage.write(outDir + "/" + name, width, height, pixels);
+            String goldenPath = goldenDir + "/" + name;
+            if (updateGolden) {
+                GoldenImage.write(goldenPath, width, height, pixels);
+                continue;
+            }
+            if (!new File(goldenPath).exists()) {
+                System.err.println("No golden image at \"" + goldenPath + "\", run with --update-golden on the reference machine (software gl on ci) to create it.");
+                missing++;
+                continue;
+            }
+            GoldenImage.Result result = goldenImage.compare(goldenPath, outDir + "/diff_" + name, width, height, pixels);
+            System.out.printf("%s: %.4f%% mismatched (%s) %s%n", name, result.mismatchRatio() * 100.0f, result.detail(), result.passed() ? "ok" : "FAILED");
+            if (!result.passed()) failures++;
+        }
+
+        writeFrameTimes(outDir + "/frametimes.csv", frameTimes, drawCalls);
+        report(context.getRenderer(), rendererType, width, height, frameTimes, drawCalls, textureBinds, stateCalls, skippedStateCalls);
+        if (sampledFrames > 0) System.out.printf("shaded samples: avg=%d per frame (%.2f per pixel)%n", shadedSamples / sampledFrames, (double) shadedSamples / sampledFrames / ((long) width * height));
+
+        render.cleanup();
+        scene.cleanup();
+        context.cleanup();
+
+        if (failures > 0) {
+            System.err.println(failures + " frame(s) differ from the golden images, see " + outDir);
+            System.exit(1);
+        }
+        if (missing > 0 && options.containsKey("require-golden")) System.exit(1);
+    }
+
+    private static void report(String glRenderer, Window.RendererType rendererType, int width, int height, float[] frameTimes, long[] drawCalls, long[] textureBinds, long[] stateCalls, long[] skippedStateCalls) {
+        float[] sorted = frameTimes.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (float time : frameTimes) sum += time;
+        long draws = 0, maxDraws = 0;
+        for (long count : drawCalls) {
+            draws += count;
+            maxDraws = Math.max(maxDraws, count);
+        }
+
+        System.out.printf("%s on %s, %dx%d, %d frames%n", rendererType, glRenderer, width, height, frameTimes.length);
+        System.out.printf("frame ms: avg=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f%n", sum / frameTimes.length,
+                percentile(sorted, 0.5f), percentile(sorted, 0.95f), percentile(sorted, 0.99f), sorted[sorted.length - 1]);
+        System.out.printf("draw calls: avg=%.1f max=%d%n", (double) draws / drawCalls.length, maxDraws);
+        long binds = 0;
+        for (long count : textureBinds) binds += count;
+        System.out.printf("texture binds: avg=%.1f%n", (double) binds / textureBinds.length);
+        long issued = 0, skipped = 0;
+        for (int i = 0; i < stateCalls.length; i++) {
+            issued += stateCalls[i];
+            skipped += skippedStateCalls[i];
+        }
+        // calls GLState found already in effect and did not send
+        System.out.printf("state calls: avg=%.1f issued, %.1f skipped (%.1f%% redundant)%n", (double) issued / stateCalls.length, (double) skipped / stateCalls.length,
+                issued + skipped == 0 ? 0.0 : 100.0 * skipped / (issued + skipped));
+    }
+
+    private static float percentile(float[] sorted, float percentile) {
+        int index = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1));
+        return sorted[index];
+    }
+
+    private static void writeFrameTimes(String path, float[] frameTimes, long[] drawCalls) {
+        new File(path).getParentFile().mkdirs();
+        try (PrintWriter out = new PrintWriter(path)) {
+            out.println("frame,millis,draw_calls");
+            for (int i = 0; i < frameTimes.length; i++) out.println(i + "," + frameTimes[i] + "," + drawCalls[i]);
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write frame times to \"" + path + "\": " + e.getMessage());
+        }
+    }
+
+    // --key value pairs; a key without a value is a flag
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument \"" + args[i] + "\".");
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) options.put(key, args[++i]);
+            else options.put(key, "");
+        }
+        return options;
+    }
+
+}
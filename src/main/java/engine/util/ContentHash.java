@@ -0,0 +1,57 @@
+package engine.util;
+
+import engine.asset.Asset;
+import engine.asset.Assets;
+import org.lwjgl.util.xxhash.XXH3State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.lwjgl.util.xxhash.XXHash.*;
+
+// xxh3 hashes of assets for load-time deduplication
+public class ContentHash {
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+
+    // packed assets carry the hash computed when they were packed; 0 when the file cannot be read, which callers treat as unique
+    public static long ofFile(String filePath) {
+        long packed = Assets.packedHash(filePath);
+        if (packed != 0) return packed;
+        if (!Assets.exists(filePath)) return 0;
+        try (Asset asset = Assets.open(filePath)) {
+            return of(asset.getData());
+        }
+        catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // png files hash only their critical chunks, so copies re-saved with another timestamp or metadata still match
+    public static long of(ByteBuffer data) {
+        // png is big endian, while native buffers default to the platform's order
+        ByteBuffer bytes = data.slice().order(ByteOrder.BIG_ENDIAN);
+        return bytes.remaining() >= 8 && bytes.getLong(0) == PNG_SIGNATURE ? ofPng(bytes) : XXH3_64bits(bytes);
+    }
+
+    private static long ofPng(ByteBuffer data) {
+        XXH3State state = XXH3_createState();
+        if (state == null) throw new IllegalStateException("Failed to allocate an XXH3 state.");
+        try {
+            XXH3_64bits_reset(state);
+            int offset = 8;
+            while (offset + 12 <= data.limit()) {
+                int length = data.getInt(offset);
+                if (length < 0 || offset + 12L + length > data.limit()) break;
+                // ancillary chunk types start with a lowercase letter
+                if ((data.get(offset + 4) & 0x20) == 0) XXH3_64bits_update(state, data.slice(offset + 4, 4 + length));
+                offset += 12 + length;
+            }
+            return XXH3_64bits_digest(state);
+        }
+        finally {
+            XXH3_freeState(state);
+        }
+    }
+
+}
@@ -1,20 +1,14 @@
 package engine.util;
 
-import java.io.*;
-import java.nio.file.*;
+import engine.asset.Assets;
+
 import java.util.*;
 
 public class Util {
 
+    // read through Assets, so the file may come from a mounted pack
     public static String readFile(String filePath) {
-        String str;
-        try {
-            str = new String(Files.readAllBytes(Paths.get(filePath)));
-        }
-        catch (IOException e) {
-            throw new RuntimeException("Failed to read file: \"" + filePath + "\"", e);
-        }
-        return str;
+        return Assets.readString(filePath);
     }
 
     public static float[] listToFloatArray(List<Float> list) {
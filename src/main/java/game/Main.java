@@ -1,27 +1,54 @@
 package game;
 
+import engine.asset.Assets;
 import engine.level.Level;
 
 import engine.*;
-import engine.graph.render.Render;
+import engine.graph.render.IRenderer;
 import engine.input.*;
 import engine.scene.*;
 import engine.scene.view.*;
 import engine.scene.model.*;
 
+import java.io.File;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_F12;
+
 public class Main implements IAppLogic {
 
     public static Main Instance;
     public static CameraInput cameraInput;
 
     private static final Level level1 = new Level("resources/levels/level1/level1.poop");
+    // built by ./gradlew assetPack; loose files under resources/ are only read for assets it lacks
+    private static final String ASSET_PACK = "resources.pack";
     private Entity bobEntity;
+    private IRenderer render;
+    private boolean captureKeyDown;
 
     public static void main(String[] args) {
         Instance = new Main();
+        if (new File(ASSET_PACK).isFile()) Assets.mount(ASSET_PACK);
+
+        // --headless [ticks] simulates level1 without a window or audio device and reports the tick rate
+        if (args.length > 0 && args[0].equals("--headless")) {
+            long ticks = args.length > 1 ? Long.parseLong(args[1]) : 3000;
+            HeadlessEngine engine = new HeadlessEngine(new HeadlessEngine.HeadlessOptions(Engine.TARGET_UPS, false, ticks), Instance, level1);
+            engine.start();
+            System.out.printf("%d ticks, %.1f ticks/s%n", engine.getTicks(), engine.getTicksPerSecond());
+            return;
+        }
 
         Window.WindowOptions opts = new Window.WindowOptions(1280, 720);
         opts.antiAliasing = true;
+        // --record <file> captures this session's input, --replay <file> plays one back and reports frame times
+        if (args.length > 1 && args[0].equals("--record")) opts.inputRecordPath = args[1];
+        if (args.length > 1 && args[0].equals("--replay")) opts.inputReplayPath = args[1];
+        // --resources <file> [budget] dumps resource usage after loading and optionally checks it against a budget file
+        if (args.length > 1 && args[0].equals("--resources")) {
+            opts.resourceReportPath = args[1];
+            if (args.length > 2) opts.resourceBudgetPath = args[2];
+        }
 
         Engine engine = new Engine("tont-doom", opts, Instance, level1);
         engine.start();
@@ -31,7 +58,8 @@ public class Main implements IAppLogic {
     public void cleanup() {}
 
     @Override
-    public void init(Window window, Scene scene, Render render) {
+    public void init(Window window, Scene scene, IRenderer render) {
+        this.render = render;
         Camera camera = scene.getCamera();
         camera.moveUp(1.0f);
 
@@ -43,6 +71,11 @@ public class Main implements IAppLogic {
 
     @Override
     public void input(Window window, Scene scene, long diffTimeMillis, boolean inputConsumed) {
+        // f12 writes the next rendered frame to captures/ for replay with ./gradlew captureReplay
+        boolean captureKey = window.isKeyPressed(GLFW_KEY_F12);
+        if (captureKey && !captureKeyDown && render != null) render.captureNextFrame("captures/frame-" + System.currentTimeMillis() + ".tdrc");
+        captureKeyDown = captureKey;
+
         if (inputConsumed) return;
         cameraInput.input(window, diffTimeMillis);
     }
@@ -0,0 +1,62 @@
+package engine;
+
+import engine.graph.render.IRenderer;
+import engine.graph.render.scene.LightUniforms;
+import engine.graph.shader.Uniforms;
+import engine.level.Level;
+import engine.scene.Scene;
+import engine.telemetry.Telemetry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// runs level1 headless past a warm-up and fails when a steady-state tick allocates more than the budget
+class AllocationBudgetTest {
+
+    private static final long BUDGET_BYTES = 0;
+    private static final int WARMUP_TICKS = 300;
+    private static final int MEASURED_TICKS = 600;
+
+    @Test
+    void steadyStateTicksStayWithinBudget() {
+        HeadlessEngine.HeadlessOptions opts = new HeadlessEngine.HeadlessOptions(Engine.TARGET_UPS, false, WARMUP_TICKS + MEASURED_TICKS);
+        opts.telemetryWindow = MEASURED_TICKS;
+        opts.allocationBudgetBytes = BUDGET_BYTES;
+        opts.allocationWarmupFrames = WARMUP_TICKS;
+
+        // the engine throws from the tick that goes over, naming the phases that allocated
+        HeadlessEngine engine = new HeadlessEngine(opts, new FlyThrough(), new Level("resources/levels/level1/level1.poop"));
+        engine.start();
+
+        Telemetry telemetry = engine.getTelemetry();
+        assertTrue(telemetry.isTrackingAllocations(), "this jvm cannot count thread allocations");
+        assertEquals(WARMUP_TICKS + MEASURED_TICKS, engine.getTicks());
+        assertTrue(telemetry.getFrameAllocationHistogram().getMax() <= BUDGET_BYTES,
+                "a steady-state tick allocated " + telemetry.getFrameAllocationHistogram().getMax() + " bytes");
+    }
+
+    // moves and turns the camera every tick, so billboards and the sound listener see new values, and uploads the forward lights
+    // through headless uniforms the way the scene renderer does each frame
+    private static class FlyThrough implements IAppLogic {
+
+        private final LightUniforms lights = new LightUniforms();
+        private Uniforms uniforms;
+
+        public void cleanup() {}
+
+        public void init(Window window, Scene scene, IRenderer render) {
+            uniforms = new Uniforms(0);
+            LightUniforms.create(uniforms);
+        }
+
+        public void input(Window window, Scene scene, long diffTimeMillis, boolean inputConsumed) {}
+
+        public void update(Window window, Scene scene, long diffTimeMillis) {
+            scene.getCamera().moveForward(0.01f * diffTimeMillis);
+            scene.getCamera().addRotation(0.0f, 0.001f * diffTimeMillis);
+            lights.upload(scene.getSceneLights(), scene.getCamera().getViewMatrix(), uniforms);
+        }
+
+    }
+
+}
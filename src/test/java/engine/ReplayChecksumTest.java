@@ -0,0 +1,54 @@
+package engine;
+
+import engine.graph.render.IRenderer;
+import engine.input.InputReplay;
+import engine.level.Level;
+import engine.scene.Scene;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the replay checksum only proves a build replayed identically if fixed steps make it independent of how fast the ticks ran
+class ReplayChecksumTest {
+
+    private static final int UPS = 300;
+    private static final int TICKS = 150;
+
+    @Test
+    void fixedStepRunsMatchWhateverThePacing() {
+        long paced = run(UPS, true);
+        long backToBack = run(UPS, false);
+        assertEquals(paced, backToBack);
+    }
+
+    @Test
+    void checksumSeesADifferentStep() {
+        assertNotEquals(run(UPS, false), run(UPS / 2, false));
+    }
+
+    private static long run(int ups, boolean fixedRate) {
+        Walk walk = new Walk();
+        new HeadlessEngine(new HeadlessEngine.HeadlessOptions(ups, fixedRate, TICKS), walk, new Level("resources/levels/level1/level1.poop")).start();
+        return walk.checksum;
+    }
+
+    // moves the camera by the step, then hashes the state the way the replay report does
+    private static class Walk implements IAppLogic {
+
+        private long checksum;
+
+        public void cleanup() {}
+
+        public void init(Window window, Scene scene, IRenderer render) {}
+
+        public void input(Window window, Scene scene, long diffTimeMillis, boolean inputConsumed) {}
+
+        public void update(Window window, Scene scene, long diffTimeMillis) {
+            scene.getCamera().moveForward(0.01f * diffTimeMillis);
+            scene.getCamera().addRotation(0.0f, 0.001f * diffTimeMillis);
+            checksum = InputReplay.stateChecksum(scene);
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+package engine.graph.render;
+
+import engine.scene.model.Entity;
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderQueueTest {
+
+    @Test
+    void stateFirstKeysOrderByProgramThenTexturesThenVaoThenDepth() {
+        int maxProgram = RenderQueue.MAX_PROGRAMS - 1, maxTexture = RenderQueue.MAX_TEXTURES - 1, maxVao = RenderQueue.MAX_VAOS - 1;
+        assertSortsAfter(RenderQueue.makeKey(1, 0, 0, 0, 0.0f), RenderQueue.makeKey(0, maxTexture, maxTexture, maxVao, 1.0f));
+        assertSortsAfter(RenderQueue.makeKey(0, 1, 0, 0, 0.0f), RenderQueue.makeKey(0, 0, maxTexture, maxVao, 1.0f));
+        assertSortsAfter(RenderQueue.makeKey(0, 0, 1, 0, 0.0f), RenderQueue.makeKey(0, 0, 0, maxVao, 1.0f));
+        assertSortsAfter(RenderQueue.makeKey(0, 0, 0, 1, 0.0f), RenderQueue.makeKey(0, 0, 0, 0, 1.0f));
+        assertSortsAfter(RenderQueue.makeKey(0, 0, 0, 0, 0.5f), RenderQueue.makeKey(0, 0, 0, 0, 0.25f));
+        // the top field reaches the sign bit; the radix sort orders keys as unsigned
+        assertSortsAfter(RenderQueue.makeKey(maxProgram, 0, 0, 0, 0.0f), RenderQueue.makeKey(maxProgram - 1, maxTexture, maxTexture, maxVao, 1.0f));
+    }
+
+    @Test
+    void depthFirstKeysOrderByDepthBeforeState() {
+        int maxProgram = RenderQueue.MAX_PROGRAMS - 1, maxTexture = RenderQueue.MAX_TEXTURES - 1, maxVao = RenderQueue.MAX_VAOS - 1;
+        assertSortsAfter(RenderQueue.makeDepthFirstKey(0, 0, 0, 0, 0.5f, false), RenderQueue.makeDepthFirstKey(maxProgram, maxTexture, maxTexture, maxVao, 0.25f, false));
+        assertSortsAfter(RenderQueue.makeDepthFirstKey(1, 0, 0, 0, 0.5f, false), RenderQueue.makeDepthFirstKey(0, maxTexture, maxTexture, maxVao, 0.5f, false));
+        assertSortsAfter(RenderQueue.makeDepthFirstKey(0, 0, 0, 0, 0.25f, true), RenderQueue.makeDepthFirstKey(0, 0, 0, 0, 0.5f, true));
+        assertEquals(RenderQueue.makeDepthFirstKey(0, 0, 0, 0, 0.0f, false), RenderQueue.makeDepthFirstKey(0, 0, 0, 0, -3.0f, false));
+        assertEquals(RenderQueue.makeDepthFirstKey(0, 0, 0, 0, 1.0f, false), RenderQueue.makeDepthFirstKey(0, 0, 0, 0, 7.0f, false));
+    }
+
+    @Test
+    void indicesPastTheirFieldSaturateInsteadOfWrapping() {
+        assertEquals(RenderQueue.makeKey(RenderQueue.MAX_PROGRAMS - 1, 0, 0, 0, 0.0f), RenderQueue.makeKey(RenderQueue.MAX_PROGRAMS + 5, 0, 0, 0, 0.0f));
+        assertEquals(RenderQueue.makeKey(0, RenderQueue.MAX_TEXTURES - 1, 0, 0, 0.0f), RenderQueue.makeKey(0, RenderQueue.MAX_TEXTURES, 0, 0, 0.0f));
+        assertEquals(RenderQueue.makeDepthFirstKey(0, 0, 0, RenderQueue.MAX_VAOS - 1, 0.0f, false), RenderQueue.makeDepthFirstKey(0, 0, 0, 1 << 20, 0.0f, false));
+        // a wrapped index would sort below its neighbours
+        assertSortsAfter(RenderQueue.makeKey(RenderQueue.MAX_PROGRAMS, 0, 0, 0, 0.0f), RenderQueue.makeKey(1, 0, 0, 0, 0.0f));
+        assertThrows(IllegalArgumentException.class, () -> RenderQueue.makeKey(-1, 0, 0, 0, 0.0f));
+    }
+
+    @Test
+    void sortOrdersKeysAsUnsignedAndKeepsEntriesWithTheirKeys() {
+        RenderQueue queue = new RenderQueue(4);
+        Map<Entity, Long> expected = new IdentityHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long key = RenderQueue.makeKey(random.nextInt(RenderQueue.MAX_PROGRAMS), random.nextInt(RenderQueue.MAX_TEXTURES), random.nextInt(RenderQueue.MAX_TEXTURES), random.nextInt(RenderQueue.MAX_VAOS), random.nextFloat());
+            Entity entity = new Entity("e" + i, "m");
+            expected.put(entity, key);
+            queue.add(key, null, null, entity);
+        }
+
+        queue.sort();
+        assertEquals(1000, queue.size());
+        for (int i = 0; i < queue.size(); i++) {
+            assertEquals(expected.get(queue.getEntity(i)), queue.getKey(i));
+            if (i > 0) assertTrue(Long.compareUnsigned(queue.getKey(i - 1), queue.getKey(i)) <= 0, "keys out of order at " + i);
+        }
+    }
+
+    @Test
+    void sortIsStableForEqualKeys() {
+        RenderQueue queue = new RenderQueue();
+        Entity[] entities = new Entity[8];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new Entity("e" + i, "m");
+            queue.add(RenderQueue.makeKey(i % 2, 0, 0, 0, 0.5f), null, null, entities[i]);
+        }
+
+        queue.sort();
+        for (int i = 0; i < 4; i++) {
+            assertSame(entities[i * 2], queue.getEntity(i));
+            assertSame(entities[i * 2 + 1], queue.getEntity(i + 4));
+        }
+    }
+
+    @Test
+    void keyIndexHandsOutDenseIndicesInFirstSeenOrder() {
+        RenderQueue.KeyIndex index = new RenderQueue.KeyIndex(16);
+        assertEquals(0, index.index(70001));
+        assertEquals(1, index.index(3));
+        assertEquals(0, index.index(70001));
+        assertEquals(2, index.index(0));
+
+        // growing past the initial table keeps earlier indices
+        for (int name = 100; name < 1100; name++) assertEquals(name - 97, index.index(name));
+        assertEquals(1, index.index(3));
+        assertEquals(1003, index.size());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.index(3));
+        assertEquals(1, index.index(70001));
+    }
+
+    private static void assertSortsAfter(long key, long other) {
+        assertTrue(Long.compareUnsigned(key, other) > 0, Long.toHexString(key) + " does not sort after " + Long.toHexString(other));
+    }
+
+}
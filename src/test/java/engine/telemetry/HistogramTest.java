@@ -0,0 +1,64 @@
+package engine.telemetry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void percentilesStayWithinABucketOfTheExactValue() {
+        Histogram histogram = new Histogram(1000);
+        for (int value = 1; value <= 1000; value++) histogram.record(value * 1000L);
+
+        assertEquals(1000, histogram.getCount());
+        assertWithinBucket(500_000, histogram.getPercentile(0.5f));
+        assertWithinBucket(950_000, histogram.getPercentile(0.95f));
+        assertWithinBucket(990_000, histogram.getPercentile(0.99f));
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500, histogram.getMean());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        Histogram histogram = new Histogram(8);
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        assertEquals(0, histogram.getPercentile(0.25f));
+        assertEquals(1, histogram.getPercentile(0.5f));
+        assertEquals(3, histogram.getPercentile(1.0f));
+    }
+
+    @Test
+    void onlyTheRollingWindowIsReported() {
+        Histogram histogram = new Histogram(10);
+        for (int i = 0; i < 10; i++) histogram.record(1_000_000);
+        for (int i = 0; i < 10; i++) histogram.record(2);
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(2, histogram.getPercentile(0.99f));
+        assertEquals(2, histogram.getMax());
+        assertEquals(2, histogram.getMean());
+    }
+
+    @Test
+    void emptyAndNegativeSamples() {
+        Histogram histogram = new Histogram(4);
+        assertEquals(0, histogram.getPercentile(0.5f));
+        assertEquals(0, histogram.getMean());
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+
+        histogram.record(100);
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5f));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 4, actual + " is not within 25% of " + expected);
+    }
+
+}